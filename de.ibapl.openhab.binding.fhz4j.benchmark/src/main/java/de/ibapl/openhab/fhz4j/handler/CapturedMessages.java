@@ -0,0 +1,230 @@
+/*
+ * ESH-IBAPL  - OpenHAB bindings for various IB APL drivers, https://github.com/aploese/esh-ibapl/
+ * Copyright (C) 2024-2025, Arne Plöse and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package de.ibapl.openhab.fhz4j.handler;
+
+import de.ibapl.fhz4j.api.Protocol;
+import de.ibapl.fhz4j.cul.CulMessage;
+import de.ibapl.fhz4j.cul.CulMessageListener;
+import de.ibapl.fhz4j.protocol.em.EmMessage;
+import de.ibapl.fhz4j.protocol.evohome.EvoHomeMessage;
+import de.ibapl.fhz4j.protocol.fht.Fht80TfMessage;
+import de.ibapl.fhz4j.protocol.fht.FhtMessage;
+import de.ibapl.fhz4j.protocol.fs20.FS20Message;
+import de.ibapl.fhz4j.protocol.hms.HmsMessage;
+import de.ibapl.fhz4j.protocol.lacrosse.tx2.LaCrosseTx2Message;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * The {@link CapturedMessages} records the callbacks of a
+ * {@link de.ibapl.fhz4j.cul.CulAdapter}, so they can be dispatched again and
+ * again without parsing.
+ *
+ * @author aploese@gmx.de - Initial contribution
+ */
+class CapturedMessages implements CulMessageListener {
+
+    enum Kind {
+        EM,
+        FAILED,
+        FHT,
+        FHT80_TF,
+        FHT_PARTIAL,
+        FS20,
+        HMS,
+        LA_CROSSE_TX,
+        CUL,
+        EVO_HOME,
+        SIGNAL_STRENGTH,
+        RECEIVE_ENABLED,
+        HELP;
+    }
+
+    private Kind[] kinds = new Kind[1024];
+    private Object[] payloads = new Object[1024];
+    private float[] values = new float[1024];
+    private int size;
+
+    private void add(Kind kind, Object payload, float value) {
+        if (size == kinds.length) {
+            kinds = Arrays.copyOf(kinds, size * 2);
+            payloads = Arrays.copyOf(payloads, size * 2);
+            values = Arrays.copyOf(values, size * 2);
+        }
+        kinds[size] = kind;
+        payloads[size] = payload;
+        values[size] = value;
+        size++;
+    }
+
+    int size() {
+        return size;
+    }
+
+    Kind getKind(int index) {
+        return kinds[index];
+    }
+
+    Object getPayload(int index) {
+        return payloads[index];
+    }
+
+    int count(Kind kind) {
+        int result = 0;
+        for (int i = 0; i < size; i++) {
+            if (kinds[i] == kind) {
+                result++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return a copy with only the messages of the given kinds.
+     */
+    CapturedMessages filter(Kind... keep) {
+        final CapturedMessages result = new CapturedMessages();
+        for (int i = 0; i < size; i++) {
+            for (Kind k : keep) {
+                if (kinds[i] == k) {
+                    result.add(kinds[i], payloads[i], values[i]);
+                    break;
+                }
+            }
+        }
+        return result;
+    }
+
+    void dispatch(int index, CulMessageListener target) {
+        switch (kinds[index]) {
+            case EM ->
+                target.emDataParsed((EmMessage) payloads[index]);
+            case FAILED ->
+                target.failed((Throwable) payloads[index]);
+            case FHT ->
+                target.fhtDataParsed((FhtMessage) payloads[index]);
+            case FHT80_TF ->
+                target.fht80TfDataParsed((Fht80TfMessage) payloads[index]);
+            case FHT_PARTIAL ->
+                target.fhtPartialDataParsed((FhtMessage) payloads[index]);
+            case FS20 ->
+                target.fs20DataParsed((FS20Message) payloads[index]);
+            case HMS ->
+                target.hmsDataParsed((HmsMessage) payloads[index]);
+            case LA_CROSSE_TX ->
+                target.laCrosseTxParsed((LaCrosseTx2Message) payloads[index]);
+            case CUL ->
+                target.culMessageParsed((CulMessage) payloads[index]);
+            case EVO_HOME ->
+                target.evoHomeParsed((EvoHomeMessage) payloads[index]);
+            case SIGNAL_STRENGTH ->
+                target.signalStrength(values[index]);
+            case RECEIVE_ENABLED ->
+                target.receiveEnabled((Protocol) payloads[index]);
+            case HELP ->
+                target.helpParsed((String) payloads[index]);
+        }
+    }
+
+    @Override
+    public synchronized void emDataParsed(EmMessage emMsg) {
+        add(Kind.EM, emMsg, Float.NaN);
+    }
+
+    @Override
+    public synchronized void failed(Throwable t) {
+        add(Kind.FAILED, t, Float.NaN);
+    }
+
+    @Override
+    public synchronized void fhtDataParsed(FhtMessage fhtMsg) {
+        add(Kind.FHT, fhtMsg, Float.NaN);
+    }
+
+    @Override
+    public synchronized void fht80TfDataParsed(Fht80TfMessage fht80TfMsg) {
+        add(Kind.FHT80_TF, fht80TfMsg, Float.NaN);
+    }
+
+    @Override
+    public synchronized void fhtPartialDataParsed(FhtMessage fhtMsg) {
+        add(Kind.FHT_PARTIAL, fhtMsg, Float.NaN);
+    }
+
+    @Override
+    public synchronized void fs20DataParsed(FS20Message fs20Msg) {
+        add(Kind.FS20, fs20Msg, Float.NaN);
+    }
+
+    @Override
+    public synchronized void hmsDataParsed(HmsMessage hmsMsg) {
+        add(Kind.HMS, hmsMsg, Float.NaN);
+    }
+
+    @Override
+    public synchronized void laCrosseTxParsed(LaCrosseTx2Message msg) {
+        add(Kind.LA_CROSSE_TX, msg, Float.NaN);
+    }
+
+    @Override
+    public synchronized void culMessageParsed(CulMessage msg) {
+        add(Kind.CUL, msg, Float.NaN);
+    }
+
+    @Override
+    public synchronized void evoHomeParsed(EvoHomeMessage evoHomeMsg) {
+        add(Kind.EVO_HOME, evoHomeMsg, Float.NaN);
+    }
+
+    @Override
+    public synchronized void signalStrength(float signalStrength) {
+        add(Kind.SIGNAL_STRENGTH, null, signalStrength);
+    }
+
+    @Override
+    public synchronized void receiveEnabled(Protocol protocol) {
+        add(Kind.RECEIVE_ENABLED, protocol, Float.NaN);
+    }
+
+    @Override
+    public synchronized void helpParsed(String helpMessages) {
+        add(Kind.HELP, helpMessages, Float.NaN);
+    }
+
+    @Override
+    public void onIOException(IOException ioe) {
+        //no-op the replay ends with an IOException
+    }
+
+    @Override
+    public synchronized String toString() {
+        final StringBuilder sb = new StringBuilder("messages: ").append(size);
+        for (Kind kind : Kind.values()) {
+            final int count = count(kind);
+            if (count > 0) {
+                sb.append(", ").append(kind).append(": ").append(count);
+            }
+        }
+        return sb.toString();
+    }
+
+}
@@ -0,0 +1,304 @@
+/*
+ * ESH-IBAPL  - OpenHAB bindings for various IB APL drivers, https://github.com/aploese/esh-ibapl/
+ * Copyright (C) 2024-2025, Arne Plöse and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package de.ibapl.openhab.fhz4j.handler;
+
+import de.ibapl.fhz4j.cul.CulMessageListener;
+import de.ibapl.fhz4j.protocol.em.EmMessage;
+import de.ibapl.fhz4j.protocol.evohome.EvoHomeDeviceMessage;
+import de.ibapl.fhz4j.protocol.fht.Fht80TfMessage;
+import de.ibapl.fhz4j.protocol.fht.FhtMessage;
+import de.ibapl.fhz4j.protocol.hms.HmsMessage;
+import de.ibapl.openhab.fhz4j.FHZ4JBindingConstants;
+import de.ibapl.spsw.api.Speed;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+import org.openhab.core.OpenHAB;
+import org.openhab.core.config.core.Configuration;
+import org.openhab.core.scheduler.CronScheduler;
+import org.openhab.core.thing.Bridge;
+import org.openhab.core.thing.Thing;
+import org.openhab.core.thing.ThingStatus;
+import org.openhab.core.thing.ThingStatusDetail;
+import org.openhab.core.thing.ThingStatusInfo;
+import org.openhab.core.thing.ThingUID;
+import org.openhab.core.thing.binding.BaseThingHandler;
+import org.openhab.core.thing.binding.ThingHandlerCallback;
+import org.openhab.core.thing.binding.builder.BridgeBuilder;
+import org.openhab.core.thing.binding.builder.ThingBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The {@link ListenerDispatchBenchmark} pushes parsed CUL messages through the
+ * listener of the {@link SpswBridgeHandler} into real thing handlers. The
+ * callbacks of openHAB (state and status updates) are no-ops, so only the
+ * binding itself is measured.
+ *
+ * The messages come from a recording of the {@link CulFrameRecorder}
+ * (-p recording=/path/to/segment-or-directory) or from the synthetic lines in
+ * synthetic.cul. They are parsed once in the setup, the benchmark dispatches
+ * one message per operation.
+ *
+ * Run with -prof gc to get the allocation rate. The files the handlers write,
+ * like the EM checkpoints, go to a temporary userdata directory, which is
+ * deleted after the trial.
+ *
+ * @author aploese@gmx.de - Initial contribution
+ */
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 2, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 2, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+public class ListenerDispatchBenchmark {
+
+    private final static Logger LOGGER = Logger.getLogger("d.i.o.f.h.ListenerDispatchBenchmark");
+
+    @Param({""})
+    public String recording;
+
+    @Param({"ALL", "FHT", "HMS", "EM", "EVO_HOME"})
+    public String protocol;
+
+    private final List<BaseThingHandler> handlers = new ArrayList<>();
+    private SpswBridgeHandler bridgeHandler;
+    private CulMessageListener listener;
+    private CapturedMessages messages;
+    private int next;
+    private Path tempDirectory;
+    private String previousUserData;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        tempDirectory = Files.createTempDirectory("fhz4j-benchmark");
+        final Path userData = Files.createDirectory(tempDirectory.resolve("userdata"));
+        previousUserData = System.setProperty(OpenHAB.USERDATA_DIR_PROG_ARGUMENT, userData.toString());
+        final CapturedMessages captured = capture();
+        messages = switch (protocol) {
+            case "ALL" ->
+                captured;
+            case "FHT" ->
+                captured.filter(CapturedMessages.Kind.FHT, CapturedMessages.Kind.FHT_PARTIAL, CapturedMessages.Kind.FHT80_TF);
+            case "HMS" ->
+                captured.filter(CapturedMessages.Kind.HMS);
+            case "EM" ->
+                captured.filter(CapturedMessages.Kind.EM);
+            case "EVO_HOME" ->
+                captured.filter(CapturedMessages.Kind.EVO_HOME);
+            default ->
+                throw new IllegalArgumentException("Unknown protocol: " + protocol);
+        };
+        LOGGER.info(() -> "Captured " + captured);
+        if (messages.size() == 0) {
+            throw new IllegalStateException("No " + protocol + " messages in the stream");
+        }
+
+        final ThingUID bridgeUID = new ThingUID(FHZ4JBindingConstants.ThingTypes.BRIDGE_RS232.thingTypeUID, "benchmark");
+        final Bridge bridge = BridgeBuilder.create(FHZ4JBindingConstants.ThingTypes.BRIDGE_RS232.thingTypeUID, bridgeUID).build();
+        bridge.setStatusInfo(new ThingStatusInfo(ThingStatus.ONLINE, ThingStatusDetail.NONE, null));
+        //The bridge is not initialized, so no serial port is needed
+        bridgeHandler = new SpswBridgeHandler(bridge, List.of(), noOp(CronScheduler.class));
+        bridge.setHandler(bridgeHandler);
+        listener = bridgeHandler.createListener();
+
+        final ThingHandlerCallback callback = (ThingHandlerCallback) Proxy.newProxyInstance(ThingHandlerCallback.class.getClassLoader(),
+                new Class<?>[]{ThingHandlerCallback.class}, (proxy, method, args) -> {
+                    if ("getBridge".equals(method.getName())) {
+                        return bridge;
+                    }
+                    return null;
+                });
+
+        final Set<String> registered = new HashSet<>();
+        for (int i = 0; i < messages.size(); i++) {
+            final Object payload = messages.getPayload(i);
+            switch (messages.getKind(i)) {
+                case FHT -> {
+                    final short housecode = ((FhtMessage) payload).housecode;
+                    if (registered.add("fht" + housecode)) {
+                        final Thing thing = thing(bridgeUID, FHZ4JBindingConstants.ThingTypes.RADIATOR_FHT80B, "housecode",
+                                BigDecimal.valueOf(housecode & 0xffff));
+                        addHandler(new RadiatorFht80bHandler(thing), thing, callback);
+                    }
+                }
+                case FHT80_TF -> {
+                    final int address = ((Fht80TfMessage) payload).address;
+                    if (registered.add("fht80tf" + address)) {
+                        final Thing thing = thing(bridgeUID, FHZ4JBindingConstants.ThingTypes.FHT80_TF, "address",
+                                Integer.toHexString(address));
+                        addHandler(new Fht80TfHandler(thing), thing, callback);
+                    }
+                }
+                case HMS -> {
+                    final short housecode = ((HmsMessage) payload).housecode;
+                    if (registered.add("hms" + housecode)) {
+                        final Thing thing = thing(bridgeUID, FHZ4JBindingConstants.ThingTypes.HMS_100_TF, "housecode",
+                                BigDecimal.valueOf(housecode & 0xffff));
+                        addHandler(new Hms100TfHandler(thing), thing, callback);
+                    }
+                }
+                case EM -> {
+                    final short address = ((EmMessage) payload).address;
+                    if (registered.add("em" + address)) {
+                        final Thing thing = thing(bridgeUID, FHZ4JBindingConstants.ThingTypes.EM_1000_EM, "address",
+                                BigDecimal.valueOf(address & 0xffff));
+                        addHandler(new Em1000EmHandler(thing), thing, callback);
+                    }
+                }
+                case EVO_HOME -> {
+                    if (payload instanceof EvoHomeDeviceMessage edm && registered.add("evohome" + edm.deviceId1.id)) {
+                        final Thing thing = thing(bridgeUID, FHZ4JBindingConstants.ThingTypes.RADIATOR_EVO_HOME, "deviceId",
+                                BigDecimal.valueOf(edm.deviceId1.id));
+                        addHandler(new EvoHomeHandler(thing), thing, callback);
+                    }
+                }
+                default -> {
+                }
+            }
+        }
+        LOGGER.info(() -> "Registered " + handlers.size() + " thing handlers, dispatching " + messages);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        for (BaseThingHandler handler : handlers) {
+            handler.dispose();
+        }
+        handlers.clear();
+        if (previousUserData == null) {
+            System.clearProperty(OpenHAB.USERDATA_DIR_PROG_ARGUMENT);
+        } else {
+            System.setProperty(OpenHAB.USERDATA_DIR_PROG_ARGUMENT, previousUserData);
+        }
+        if (tempDirectory != null) {
+            try (Stream<Path> paths = Files.walk(tempDirectory)) {
+                for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                    Files.delete(path);
+                }
+            }
+            tempDirectory = null;
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public void throughput() {
+        dispatchNext();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public void latency() {
+        dispatchNext();
+    }
+
+    private void dispatchNext() {
+        messages.dispatch(next, listener);
+        if (++next == messages.size()) {
+            next = 0;
+        }
+    }
+
+    private void addHandler(BaseThingHandler handler, Thing thing, ThingHandlerCallback callback) {
+        thing.setHandler(handler);
+        handler.setCallback(callback);
+        handler.initialize();
+        bridgeHandler.childHandlerInitialized(handler, thing);
+        handlers.add(handler);
+    }
+
+    private static Thing thing(ThingUID bridgeUID, FHZ4JBindingConstants.ThingTypes type, String key, Object value) {
+        final ThingUID uid = new ThingUID(type.thingTypeUID, bridgeUID, key + "_" + value);
+        return ThingBuilder.create(type.thingTypeUID, uid)
+                .withBridge(bridgeUID)
+                .withConfiguration(new Configuration(Map.of(key, value)))
+                .build();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T noOp(Class<T> type) {
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> null);
+    }
+
+    /**
+     * Parse the recording or the synthetic lines with a real CulAdapter.
+     */
+    private CapturedMessages capture() throws Exception {
+        final Path source;
+        if (recording.isEmpty()) {
+            source = Files.createDirectory(tempDirectory.resolve("synthetic"));
+            try (CulFrameRecorder recorder = new CulFrameRecorder(source, "synthetic", 1024 * 1024, 1)) {
+                for (String line : syntheticLines()) {
+                    final byte[] frame = (line + "\r\n").getBytes(StandardCharsets.US_ASCII);
+                    recorder.record(CulFrameRecorder.RX, frame, 0, frame.length);
+                }
+            }
+        } else {
+            source = Path.of(recording);
+        }
+        final CapturedMessages result = new CapturedMessages();
+        new CulReplay(source, 0, result, Speed._9600_BPS).start().get(1, TimeUnit.MINUTES);
+        return result;
+    }
+
+    private static List<String> syntheticLines() throws IOException {
+        final List<String> result = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                ListenerDispatchBenchmark.class.getResourceAsStream("synthetic.cul"), StandardCharsets.US_ASCII))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.isBlank() && !line.startsWith("#")) {
+                    result.add(line.trim());
+                }
+            }
+        }
+        return result;
+    }
+
+}
@@ -125,8 +125,19 @@ public class FHZ4JBindingConstants {
     public static final String CHANNEL_FRIDAY = "fridaySwitchTimes";
     public static final String CHANNEL_SATURDAY = "saturdaySwitchTimes";
     public static final String CHANNEL_SUNDAY = "sundaySwitchTimes";
+    public static final String CHANNEL_WEEK_PROGRAM = "weekProgram";
+    public static final String CHANNEL_WEEK_PROGRAM_STATUS = "weekProgramStatus";
 
     public static final String CHANNEL_ENERGY_TOTAL = "energyTotal";
     public static final String CHANNEL_POWER_5MINUTES = "power5Minutes";
     public static final String CHANNEL_MAX_POWER_5MINUTES = "maxPower5Minutes";
+    public static final String CHANNEL_ENERGY_5MINUTES = "energy5Minutes";
+    public static final String CHANNEL_ENERGY_HOUR = "energyHour";
+    public static final String CHANNEL_ENERGY_DAY = "energyDay";
+    public static final String CHANNEL_MAX_POWER_DAY = "maxPowerDay";
+
+    public static final String CHANNEL_RSSI = "rssi";
+    public static final String CHANNEL_MESSAGE_INTERVAL = "messageInterval";
+    public static final String CHANNEL_MESSAGE_RATE = "messageRate";
+    public static final String CHANNEL_LATENCY_P99 = "latencyP99";
 }
@@ -22,14 +22,19 @@
 package de.ibapl.openhab.fhz4j.console;
 
 import de.ibapl.fhz4j.api.Response;
-import de.ibapl.fhz4j.cul.CulFhtDeviceOutBufferContentRequest;
-import de.ibapl.fhz4j.cul.CulGetFirmwareVersionRequest;
-import de.ibapl.fhz4j.cul.CulGetHardwareVersionRequest;
-import de.ibapl.fhz4j.cul.CulGetSlowRfSettingsRequest;
 import de.ibapl.fhz4j.cul.CulRemainingFhtDeviceOutBufferSizeRequest;
+import de.ibapl.openhab.fhz4j.handler.CulDiagnostics;
+import de.ibapl.openhab.fhz4j.handler.CulStatus;
+import de.ibapl.openhab.fhz4j.handler.Em1000EmHandler;
+import de.ibapl.openhab.fhz4j.handler.FhtMaintenance;
+import de.ibapl.openhab.fhz4j.handler.FhzThingHandler;
 import de.ibapl.openhab.fhz4j.handler.SpswBridgeHandler;
+import de.ibapl.openhab.fhz4j.internal.discovery.FHZ4JDiscoveryService;
 import java.io.IOException;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
@@ -60,6 +65,11 @@ public class Fhz4JThingConsoleCommandExtension extends AbstractConsoleCommandExt
     private static final String SUBCMD_LIST = "list";
     private static final String SUBCMD_TX_SHOW = "txshow";
     private static final String SUBCMD_TX_CLEAR = "txclear";
+    private static final String SUBCMD_STATS = "stats";
+    private static final String SUBCMD_DIAG = "diag";
+    private static final String SUBCMD_REPLAY = "replay";
+    private static final String SUBCMD_DISCOVERY = "discovery";
+    private static final long CUL_STATUS_TIMEOUT_NS = TimeUnit.SECONDS.toNanos(2);
 
     private final ThingRegistry thingRegistry;
     private final ThingStatusInfoI18nLocalizationService thingStatusInfoI18nLocalizationService;
@@ -100,6 +110,37 @@ public class Fhz4JThingConsoleCommandExtension extends AbstractConsoleCommandExt
                     }
                     return;
                 }
+                case SUBCMD_REPLAY -> {
+                    if (args.length > 2) {
+                        ThingUID thingUID = new ThingUID(args[1]);
+                        replay(console, thingUID, Path.of(args[2]), args.length > 3 ? Double.parseDouble(args[3]) : 1.0);
+                    } else {
+                        console.println("Specify fhz4j thing id and recording: fhz4j replay <thingUID> <file|directory> [speedFactor]");
+                    }
+                    return;
+                }
+                case SUBCMD_DIAG -> {
+                    if (args.length > 1) {
+                        ThingUID thingUID = new ThingUID(args[1]);
+                        printDiagnostics(console, thingUID);
+                    } else {
+                        console.println("Specify fhz4j thing id to show the diagnostics: fhz4j diag <thingUID> (e.g. \"fhz4j:rs232-bridge-cul:CUL0\")");
+                    }
+                    return;
+                }
+                case SUBCMD_DISCOVERY -> {
+                    if (args.length > 1) {
+                        ThingUID thingUID = new ThingUID(args[1]);
+                        printSeenDevices(console, thingUID);
+                    } else {
+                        console.println("Specify fhz4j thing id to show the devices seen by the scan: fhz4j discovery <thingUID> (e.g. \"fhz4j:rs232-bridge-cul:CUL0\")");
+                    }
+                    return;
+                }
+                case SUBCMD_STATS -> {
+                    printStatistics(console);
+                    return;
+                }
                 default -> {
                 }
             }
@@ -145,43 +186,125 @@ public class Fhz4JThingConsoleCommandExtension extends AbstractConsoleCommandExt
     public List<String> getUsages() {
         return List.of(buildCommandUsage(SUBCMD_LIST, "lists all things"),
                 buildCommandUsage(SUBCMD_TX_SHOW + " <thingUID>", "show tx buffer of a fhz4j thing"),
-                buildCommandUsage(SUBCMD_TX_CLEAR + " <thingUID>", "clear tx buffer of a fhz4j thing"));
+                buildCommandUsage(SUBCMD_TX_CLEAR + " <thingUID>", "clear tx buffer of a fhz4j thing"),
+                buildCommandUsage(SUBCMD_STATS, "show statistics of all fhz4j bridges and things"),
+                buildCommandUsage(SUBCMD_DIAG + " <thingUID>", "show the CUL snapshots of a fhz4j bridge"),
+                buildCommandUsage(SUBCMD_DISCOVERY + " <thingUID>", "show the devices seen by the running discovery scan of a fhz4j bridge"),
+                buildCommandUsage(SUBCMD_REPLAY + " <thingUID> <file|directory> [speedFactor]", "replay a CUL recording into a fhz4j bridge, speedFactor 0 is as fast as possible"));
     }
 
-    private void printThings(Console console) {
+    private void replay(Console console, ThingUID thingUID, Path recording, double speedFactor) {
+        final ThingHandler thingHandler = thingRegistry.get(thingUID).getHandler();
+        if (thingHandler instanceof SpswBridgeHandler handler) {
+            try {
+                handler.replay(recording, speedFactor);
+                console.println("Replay of " + recording + " started, the CUL is detached until it is done");
+            } catch (IOException ioe) {
+                console.println("Could not replay " + recording + ": " + ioe);
+            }
+        } else {
+            console.println("Could not replay into thing \"" + thingUID + "\". handler: " + thingHandler);
+        }
+    }
 
+    private void printDiagnostics(Console console, ThingUID thingUID) {
+        final ThingHandler thingHandler = thingRegistry.get(thingUID).getHandler();
+        if (thingHandler instanceof SpswBridgeHandler handler) {
+            final CulDiagnostics diagnostics = handler.getDiagnostics();
+            if (diagnostics == null) {
+                console.println("Diagnostics are disabled for thing \"" + thingUID + "\".");
+                return;
+            }
+            for (CulDiagnostics.Snapshot snapshot : diagnostics.getSnapshots()) {
+                console.println(String.format("%s %s", snapshot.timestamp(), snapshot.trigger()));
+                console.println("\tSlowRfSettings: " + snapshot.slowRfSettings());
+                console.println("\tRemainingFhtDeviceOutBufferSize: " + snapshot.remainingFhtDeviceOutBufferSize());
+                console.println("\tFhtDeviceOutBufferContent: " + snapshot.fhtDeviceOutBufferContent());
+            }
+        } else {
+            console.println("Could not show diagnostics of thing \"" + thingUID + "\". handler: " + thingHandler);
+        }
+    }
+
+    private void printSeenDevices(Console console, ThingUID thingUID) {
+        final ThingHandler thingHandler = thingRegistry.get(thingUID).getHandler();
+        if (thingHandler instanceof SpswBridgeHandler handler) {
+            final Object discovery = handler.getDiscoveryListener() != null ? handler.getDiscoveryListener() : handler.getBackgroundDiscovery();
+            if (discovery instanceof FHZ4JDiscoveryService discoveryService) {
+                for (String seen : discoveryService.getSeenDevices()) {
+                    console.println(seen);
+                }
+            } else {
+                console.println("No discovery is running for thing \"" + thingUID + "\".");
+            }
+        } else {
+            console.println("Could not show discovery of thing \"" + thingUID + "\". handler: " + thingHandler);
+        }
+    }
+
+    private void printStatistics(Console console) {
         for (Thing thing : thingRegistry.getAll()) {
             if (thing.getHandler() instanceof SpswBridgeHandler handler) {
-                ThingStatusInfo status = thingStatusInfoI18nLocalizationService.getLocalizedThingStatusInfo(thing, null);
-                String label = thing.getLabel();
-                String id = thing.getUID().toString();
-                console.println(String.format("%s (Type=Bridge, Status=%s, Label=%s)", id, status, label));
-                try {
-                    Future<Response> future;
-                    Response response;
-
-                    future = handler.sendRequest(new CulGetSlowRfSettingsRequest());
-                    response = future.get(1, TimeUnit.SECONDS);
-                    console.println("SlowRfSettings: " + response);
-
-                    future = handler.sendRequest(new CulFhtDeviceOutBufferContentRequest());
-                    response = future.get(1, TimeUnit.SECONDS);
-                    console.println("FhtDeviceOutBufferContent: " + response);
-
-                    future = handler.sendRequest(new CulRemainingFhtDeviceOutBufferSizeRequest());
-                    response = future.get(1, TimeUnit.SECONDS);
-                    console.println("RemainingFhtDeviceOutBufferSize: " + response);
-
-                    future = handler.sendRequest(new CulGetFirmwareVersionRequest());
-                    response = future.get(1, TimeUnit.SECONDS);
-                    console.println("RemainingFhtDeviceOutBufferSize: " + response);
-
-                    future = handler.sendRequest(new CulGetHardwareVersionRequest());
-                    response = future.get(1, TimeUnit.SECONDS);
-                    console.println("RemainingFhtDeviceOutBufferSize: " + response);
-                } catch (IOException | InterruptedException | ExecutionException | TimeoutException e) {
-                    console.println("Could not tx show thing " + handler + "." + e);
+                console.println(thing.getUID().toString());
+                console.println("\tTX queue: " + handler.getTxQueue());
+                console.println("\tReconnect: " + handler.getReconnectSupervisor());
+                console.println("\tFHT delivery: " + handler.getFhtDelivery());
+                console.println("\tFHT transmit windows: " + handler.getFhtTransmitWindows());
+                console.println("\tFHT maintenance: " + handler.getFhtMaintenance());
+                for (Map.Entry<Short, FhtMaintenance.Status> e : handler.getFhtMaintenance().getStatus().entrySet()) {
+                    console.println("\t\t" + e.getKey() + ": " + e.getValue());
+                }
+                final StringBuilder latency = new StringBuilder("\tLatency:\n");
+                handler.getLatency().formatTo(latency, "\t\t");
+                console.println(latency.toString());
+                if (handler.getRecorder() != null) {
+                    console.println("\tRecorder: " + handler.getRecorder());
+                }
+                if (handler.getReceiveQueue() != null) {
+                    console.println("\tRX queue: " + handler.getReceiveQueue());
                 }
+                if (handler.getEvoHomeDiagnostics() != null) {
+                    console.println("\tEvoHome diagnostics: " + handler.getEvoHomeDiagnostics());
+                }
+                if (handler.getReceiveFilter() != null) {
+                    console.println("\tReceive filter: " + handler.getReceiveFilter());
+                }
+                if (handler.getStateSnapshot() != null) {
+                    console.println("\tState snapshot: " + handler.getStateSnapshot());
+                }
+                if (handler.getFederation() != null) {
+                    console.println("\tFederation: " + handler.getFederation());
+                }
+            } else if (thing.getHandler() instanceof FhzThingHandler handler) {
+                console.println(thing.getUID().toString());
+                console.println("\tLink quality: " + handler.getLinkQuality());
+                if (handler.getSuppressedUpdates() > 0) {
+                    console.println("\tSuppressed updates: " + handler.getSuppressedUpdates());
+                }
+                if (handler instanceof Em1000EmHandler emHandler && emHandler.getAggregation() != null) {
+                    console.println("\tEnergy: " + emHandler.getAggregation());
+                }
+            }
+        }
+    }
+
+    private void printThings(Console console) {
+        //Send the requests to all bridges first, then wait for the responses
+        final Map<Thing, CulStatus> status = new LinkedHashMap<>();
+        for (Thing thing : thingRegistry.getAll()) {
+            if (thing.getHandler() instanceof SpswBridgeHandler handler) {
+                status.put(thing, handler.requestCulStatus());
+            }
+        }
+        final long deadline = System.nanoTime() + CUL_STATUS_TIMEOUT_NS;
+        for (Map.Entry<Thing, CulStatus> e : status.entrySet()) {
+            final Thing thing = e.getKey();
+            ThingStatusInfo statusInfo = thingStatusInfoI18nLocalizationService.getLocalizedThingStatusInfo(thing, null);
+            String label = thing.getLabel();
+            String id = thing.getUID().toString();
+            console.println(String.format("%s (Type=Bridge, Status=%s, Label=%s)", id, statusInfo, label));
+            for (String line : e.getValue().format(deadline)) {
+                console.println(line);
             }
         }
     }
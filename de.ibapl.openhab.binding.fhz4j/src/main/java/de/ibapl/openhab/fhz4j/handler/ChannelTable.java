@@ -0,0 +1,84 @@
+/*
+ * ESH-IBAPL  - OpenHAB bindings for various IB APL drivers, https://github.com/aploese/esh-ibapl/
+ * Copyright (C) 2024-2025, Arne Plöse and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package de.ibapl.openhab.fhz4j.handler;
+
+import static de.ibapl.openhab.fhz4j.FHZ4JBindingConstants._XX_TEMPLATE;
+import org.openhab.core.thing.ChannelUID;
+import org.openhab.core.thing.ThingUID;
+
+/**
+ * The {@link ChannelTable} holds the {@link ChannelUID}s of one thing, so the
+ * handlers do not need to create them (and format the zone channel ids) for
+ * every received message.
+ *
+ * @author aploese@gmx.de - Initial contribution
+ */
+final class ChannelTable {
+
+    /**
+     * The zones _00 to _12 of an EvoHome multi zone controller.
+     */
+    static final int EVO_HOME_ZONES = 13;
+
+    private final ThingUID thingUID;
+    private final ChannelUID[] channels;
+    private final ChannelUID[][] zoneChannels;
+
+    /**
+     * @param thingUID the thing.
+     * @param zones the number of zones or 0 if the thing has no zoned
+     * channels.
+     */
+    ChannelTable(ThingUID thingUID, int zones) {
+        this.thingUID = thingUID;
+        final FhzChannel[] values = FhzChannel.values();
+        channels = new ChannelUID[values.length];
+        zoneChannels = new ChannelUID[values.length][];
+        for (FhzChannel channel : values) {
+            channels[channel.ordinal()] = new ChannelUID(thingUID, channel.id);
+            if (channel.zoned && zones > 0) {
+                final ChannelUID[] z = new ChannelUID[zones];
+                for (int i = 0; i < zones; i++) {
+                    z[i] = new ChannelUID(thingUID, String.format(_XX_TEMPLATE, channel.id, i));
+                }
+                zoneChannels[channel.ordinal()] = z;
+            }
+        }
+    }
+
+    ChannelUID get(FhzChannel channel) {
+        return channels[channel.ordinal()];
+    }
+
+    /**
+     * @return the channel of the zone, only for zones out of range a new
+     * {@link ChannelUID} is created.
+     */
+    ChannelUID get(FhzChannel channel, int zone) {
+        final ChannelUID[] z = zoneChannels[channel.ordinal()];
+        if (z != null && zone >= 0 && zone < z.length) {
+            return z[zone];
+        }
+        return new ChannelUID(thingUID, String.format(_XX_TEMPLATE, channel.id, zone));
+    }
+
+}
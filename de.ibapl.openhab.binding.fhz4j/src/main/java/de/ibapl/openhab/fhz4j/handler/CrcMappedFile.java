@@ -0,0 +1,207 @@
+/*
+ * ESH-IBAPL  - OpenHAB bindings for various IB APL drivers, https://github.com/aploese/esh-ibapl/
+ * Copyright (C) 2024-2025, Arne Plöse and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package de.ibapl.openhab.fhz4j.handler;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * The {@link CrcMappedFile} is a memory mapped file of fixed size records,
+ * which are rewritten in place. A record is invalidated first, then its
+ * content is written and at last it is committed with the CRC32 of the
+ * content. So a record torn by a crash is read as empty and the other records
+ * stay valid.
+ *
+ * The mapped pages survive a crash of openHAB, but not a power loss, so the
+ * owner calls {@link #force()} from time to time, and not on the receive
+ * thread.
+ *
+ * File layout, big endian: int magic, short version, short record size,
+ * followed by the records: int crc of the content (0 for an empty record),
+ * short length and the content.
+ *
+ * Not thread safe, the owner synchronizes the access.
+ *
+ * @author aploese@gmx.de - Initial contribution
+ */
+class CrcMappedFile implements Closeable {
+
+    static final int HEADER_SIZE = 4 + 2 + 2;
+    static final int RECORD_HEADER_SIZE = 4 + 2;
+
+    private final static Logger LOGGER = Logger.getLogger("d.i.o.f.h.CrcMappedFile");
+
+    private final Path file;
+    private final int recordSize;
+    private final int records;
+    private final CRC32 crc = new CRC32();
+    private final boolean created;
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    //a record was written and not forced yet
+    private boolean dirty;
+
+    /**
+     * Open or create the file. If the header does not match, the file is
+     * new or of an unknown format and all records are cleared.
+     *
+     * @param file the file.
+     * @param magic the magic of the owner.
+     * @param version the version of the content.
+     * @param recordSize the size of a record including its header.
+     * @param records the number of records.
+     */
+    CrcMappedFile(Path file, int magic, short version, int recordSize, int records) throws IOException {
+        this.file = file;
+        this.recordSize = recordSize;
+        this.records = records;
+        Files.createDirectories(file.getParent());
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) records * recordSize);
+        } catch (IOException ioe) {
+            channel.close();
+            throw ioe;
+        }
+        created = !(buffer.getInt(0) == magic && buffer.getShort(4) == version && buffer.getShort(6) == (short) recordSize);
+        if (created) {
+            for (int i = 0; i < records; i++) {
+                buffer.putInt(position(i), 0);
+            }
+            buffer.putInt(0, magic);
+            buffer.putShort(4, version);
+            buffer.putShort(6, (short) recordSize);
+        }
+    }
+
+    private int position(int record) {
+        return HEADER_SIZE + record * recordSize;
+    }
+
+    /**
+     * @return true if the file was new or of an unknown format.
+     */
+    boolean isCreated() {
+        return created;
+    }
+
+    int getRecords() {
+        return records;
+    }
+
+    /**
+     * @return the maximal length of the content of a record.
+     */
+    int getMaxLength() {
+        return recordSize - RECORD_HEADER_SIZE;
+    }
+
+    /**
+     * @return the crc of the content, never 0 as this marks an empty record.
+     */
+    private int crc(byte[] content, int length) {
+        crc.reset();
+        crc.update(content, 0, length);
+        final int result = (int) crc.getValue();
+        return result == 0 ? 1 : result;
+    }
+
+    /**
+     * @param record the record.
+     * @param content receives the content, at least {@link #getMaxLength()}
+     * long.
+     * @return the length of the content or -1 if the record is empty or
+     * torn.
+     */
+    int read(int record, byte[] content) {
+        final int pos = position(record);
+        final int storedCrc = buffer.getInt(pos);
+        if (storedCrc == 0) {
+            return -1;
+        }
+        final int length = buffer.getShort(pos + 4) & 0xffff;
+        if (length > getMaxLength()) {
+            LOGGER.log(Level.WARNING, "Skip torn record {0} of {1}", new Object[]{record, file});
+            return -1;
+        }
+        buffer.get(pos + RECORD_HEADER_SIZE, content, 0, length);
+        if (crc(content, length) != storedCrc) {
+            LOGGER.log(Level.WARNING, "Skip torn record {0} of {1}", new Object[]{record, file});
+            return -1;
+        }
+        return length;
+    }
+
+    /**
+     * Rewrite the record in place.
+     *
+     * @param record the record.
+     * @param content the content.
+     * @param length the length of the content, at most
+     * {@link #getMaxLength()}.
+     */
+    void write(int record, byte[] content, int length) {
+        if (length > getMaxLength()) {
+            throw new IllegalArgumentException("Content of " + length + " bytes does not fit in a record");
+        }
+        final int pos = position(record);
+        //invalidate, write the content, then commit with the crc
+        buffer.putInt(pos, 0);
+        buffer.putShort(pos + 4, (short) length);
+        buffer.put(pos + RECORD_HEADER_SIZE, content, 0, length);
+        buffer.putInt(pos, crc(content, length));
+        dirty = true;
+    }
+
+    /**
+     * Write the changed pages to the disk, if a record was written since the
+     * last call.
+     */
+    void force() {
+        if (buffer != null && dirty) {
+            buffer.force();
+            dirty = false;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        force();
+        buffer = null;
+        if (channel != null) {
+            try {
+                channel.close();
+            } finally {
+                channel = null;
+            }
+        }
+    }
+
+}
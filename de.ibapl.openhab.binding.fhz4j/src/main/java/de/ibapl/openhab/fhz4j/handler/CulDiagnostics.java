@@ -0,0 +1,165 @@
+/*
+ * ESH-IBAPL  - OpenHAB bindings for various IB APL drivers, https://github.com/aploese/esh-ibapl/
+ * Copyright (C) 2024-2025, Arne Plöse and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package de.ibapl.openhab.fhz4j.handler;
+
+import de.ibapl.fhz4j.api.Request;
+import de.ibapl.fhz4j.api.Response;
+import de.ibapl.fhz4j.cul.CulFhtDeviceOutBufferContentRequest;
+import de.ibapl.fhz4j.cul.CulGetSlowRfSettingsRequest;
+import de.ibapl.fhz4j.cul.CulRemainingFhtDeviceOutBufferSizeRequest;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The {@link CulDiagnostics} takes snapshots of the CUL state off the write
+ * path. Snapshots are sampled at a fixed interval or when the CUL reports an
+ * anomaly (LOVF or EOB) and kept in a ring buffer.
+ *
+ * @author aploese@gmx.de - Initial contribution
+ */
+public class CulDiagnostics {
+
+    public enum Trigger {
+        SCHEDULED,
+        LOVF,
+        EOB;
+    }
+
+    public record Snapshot(Instant timestamp, Trigger trigger, String slowRfSettings, String remainingFhtDeviceOutBufferSize,
+            String fhtDeviceOutBufferContent) {
+
+    }
+
+    @FunctionalInterface
+    interface RequestSender {
+
+        Future<Response> sendRequest(Request request) throws IOException;
+    }
+
+    private final static Logger LOGGER = Logger.getLogger("d.i.o.f.h.CulDiagnostics");
+    private final static long RESPONSE_TIMEOUT_MS = 1000;
+    /**
+     * LOVF comes in bursts, so do not take more than one anomaly snapshot in
+     * this time.
+     */
+    private final static long MIN_ANOMALY_SPACING_NS = TimeUnit.SECONDS.toNanos(10);
+
+    private final RequestSender requestSender;
+    private final ScheduledExecutorService scheduler;
+    private final Snapshot[] ring;
+    private final AtomicBoolean anomalySnapshotPending = new AtomicBoolean();
+    private long lastAnomalySnapshotNanos;
+    private int next;
+    private int size;
+    private ScheduledFuture<?> samplingJob;
+
+    CulDiagnostics(RequestSender requestSender, ScheduledExecutorService scheduler, int capacity) {
+        this.requestSender = requestSender;
+        this.scheduler = scheduler;
+        this.ring = new Snapshot[capacity];
+    }
+
+    synchronized void start(long intervalMinutes) {
+        if (samplingJob == null && intervalMinutes > 0) {
+            samplingJob = scheduler.scheduleWithFixedDelay(() -> takeSnapshot(Trigger.SCHEDULED), intervalMinutes, intervalMinutes,
+                    TimeUnit.MINUTES);
+        }
+    }
+
+    synchronized void stop() {
+        if (samplingJob != null) {
+            samplingJob.cancel(false);
+            samplingJob = null;
+        }
+    }
+
+    /**
+     * Called from the receive thread, the snapshot itself is taken on the
+     * scheduler.
+     */
+    void anomaly(Trigger trigger) {
+        final long now = System.nanoTime();
+        if (now - lastAnomalySnapshotNanos < MIN_ANOMALY_SPACING_NS) {
+            return;
+        }
+        if (anomalySnapshotPending.compareAndSet(false, true)) {
+            lastAnomalySnapshotNanos = now;
+            scheduler.execute(() -> {
+                try {
+                    takeSnapshot(trigger);
+                } finally {
+                    anomalySnapshotPending.set(false);
+                }
+            });
+        }
+    }
+
+    private void takeSnapshot(Trigger trigger) {
+        final Snapshot snapshot = new Snapshot(Instant.now(), trigger,
+                request(new CulGetSlowRfSettingsRequest()),
+                request(new CulRemainingFhtDeviceOutBufferSizeRequest()),
+                request(new CulFhtDeviceOutBufferContentRequest()));
+        synchronized (this) {
+            ring[next] = snapshot;
+            next = (next + 1) % ring.length;
+            if (size < ring.length) {
+                size++;
+            }
+        }
+        LOGGER.log(Level.FINE, "CUL snapshot taken: {0}", snapshot);
+    }
+
+    private String request(Request request) {
+        try {
+            final Future<Response> future = requestSender.sendRequest(request);
+            return String.valueOf(future.get(RESPONSE_TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        } catch (IOException | ExecutionException | TimeoutException e) {
+            return "n/a (" + e + ")";
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            return "n/a (interrupted)";
+        }
+    }
+
+    /**
+     * @return the snapshots, oldest first.
+     */
+    public synchronized List<Snapshot> getSnapshots() {
+        final List<Snapshot> result = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            result.add(ring[(next - size + i + ring.length) % ring.length]);
+        }
+        return result;
+    }
+
+}
@@ -0,0 +1,348 @@
+/*
+ * ESH-IBAPL  - OpenHAB bindings for various IB APL drivers, https://github.com/aploese/esh-ibapl/
+ * Copyright (C) 2024-2025, Arne Plöse and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package de.ibapl.openhab.fhz4j.handler;
+
+import de.ibapl.fhz4j.protocol.fht.FhtMessage;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import org.openhab.core.thing.ThingStatus;
+
+/**
+ * The {@link CulFederation} joins several CUL bridges, which hear the same
+ * devices. A frame received by more than one bridge within a short window is
+ * dispatched only once, by the bridge which received it first. The thing
+ * handler of a device is looked up in all bridges of the federation. Commands
+ * to a device are sent by the online bridge which heard it with the best RSSI
+ * recently.
+ *
+ * @author aploese@gmx.de - Initial contribution
+ */
+public class CulFederation {
+
+    public enum Kind {
+        FHT(0xffff),
+        FHT80_TF(0xffffff),
+        HMS(0xffff),
+        EM(0xffff),
+        EVO_HOME(0xffffff);
+
+        /**
+         * The significant bits of the housecode, address or device id.
+         */
+        public final int addressMask;
+
+        private Kind(int addressMask) {
+            this.addressMask = addressMask;
+        }
+
+        /**
+         * @param address the housecode, address or device id.
+         * @return a key unique over all kinds, never 0: the ordinal + 1 in
+         * the upper 8 bits and the address in the lower 24 bits.
+         */
+        public int key(int address) {
+            return ((ordinal() + 1) << 24) | (address & addressMask);
+        }
+    }
+
+    /**
+     * The signal strength of one device as heard by each member, indexed by
+     * the slot of the member. A slot is only written by the receive thread of
+     * its member.
+     */
+    private static class Route {
+
+        final float[] signalStrength = new float[MAX_MEMBERS];
+        final long[] heardNanos = new long[MAX_MEMBERS];
+    }
+
+    static final int MAX_MEMBERS = 8;
+    /**
+     * Copies of one frame received by different sticks arrive within this
+     * window.
+     */
+    private final static long DEDUP_WINDOW_NS = TimeUnit.SECONDS.toNanos(1);
+    private final static int DEDUP_CAPACITY = 64;
+    /**
+     * A member which did not hear a device for this long is not used to send
+     * to it.
+     */
+    private final static long ROUTE_MAX_AGE_NS = TimeUnit.HOURS.toNanos(1);
+    /**
+     * Weight of a new RSSI value in the moving average.
+     */
+    private final static float RSSI_ALPHA = 0.25f;
+
+    private final static Map<String, CulFederation> FEDERATIONS = new HashMap<>();
+
+    private final String name;
+    /**
+     * Copy on write, so the receive threads find their slot without locking.
+     * Replaced under the lock of this.
+     */
+    private volatile SpswBridgeHandler[] members = new SpswBridgeHandler[MAX_MEMBERS];
+    private final IntCopyOnWriteMap<Route> routes = new IntCopyOnWriteMap<>();
+    //The last frames, guarded by this
+    private final long[] dedupKeys = new long[DEDUP_CAPACITY];
+    private final long[] dedupNanos = new long[DEDUP_CAPACITY];
+    private int dedupNext;
+    private final LongAdder duplicates = new LongAdder();
+    private final LongAdder rerouted = new LongAdder();
+
+    private CulFederation(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Join the federation with the name, it is created if needed.
+     *
+     * @return the federation.
+     */
+    static CulFederation join(String name, SpswBridgeHandler member) {
+        synchronized (FEDERATIONS) {
+            final CulFederation federation = FEDERATIONS.computeIfAbsent(name, CulFederation::new);
+            synchronized (federation) {
+                for (int i = 0; i < MAX_MEMBERS; i++) {
+                    if (federation.members[i] == null) {
+                        final SpswBridgeHandler[] m = federation.members.clone();
+                        m[i] = member;
+                        federation.members = m;
+                        return federation;
+                    }
+                }
+            }
+            throw new IllegalStateException("Federation " + name + " has already " + MAX_MEMBERS + " members");
+        }
+    }
+
+    void leave(SpswBridgeHandler member) {
+        synchronized (FEDERATIONS) {
+            boolean empty = true;
+            synchronized (this) {
+                final SpswBridgeHandler[] m = members.clone();
+                for (int i = 0; i < MAX_MEMBERS; i++) {
+                    if (m[i] == member) {
+                        m[i] = null;
+                        for (int key : routes.keys()) {
+                            routes.get(key).heardNanos[i] = 0;
+                        }
+                    } else if (m[i] != null) {
+                        empty = false;
+                    }
+                }
+                members = m;
+            }
+            if (empty) {
+                FEDERATIONS.remove(name);
+            }
+        }
+    }
+
+    private int slotOf(SpswBridgeHandler member) {
+        final SpswBridgeHandler[] m = members;
+        for (int i = 0; i < MAX_MEMBERS; i++) {
+            if (m[i] == member) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the current members, the array must not be modified.
+     */
+    private SpswBridgeHandler[] getMembers() {
+        return members;
+    }
+
+    private static int addressKey(Kind kind, int address) {
+        return kind.key(address);
+    }
+
+    /**
+     * Called by the receive thread of a member for each frame of a device.
+     *
+     * @param member the bridge, which received the frame.
+     * @param kind the kind of the device.
+     * @param address the housecode, address or device id.
+     * @param frameHash the hash of the received line, see
+     * {@link CulFrameHash}.
+     * @param signalStrength the RSSI in dBm or NaN.
+     * @return true if the frame must be dispatched, false if another member
+     * already dispatched it.
+     */
+    boolean accept(SpswBridgeHandler member, Kind kind, int address, int frameHash, float signalStrength) {
+        final long now = System.nanoTime();
+        final int addressKey = addressKey(kind, address);
+        final int slot = slotOf(member);
+        if (slot >= 0) {
+            Route route = routes.get(addressKey);
+            if (route == null) {
+                //only the first frame of a device
+                route = routes.putIfAbsent(addressKey, new Route());
+            }
+            final float old = route.signalStrength[slot];
+            if (Float.isNaN(signalStrength)) {
+                //keep the last value
+            } else if (route.heardNanos[slot] == 0 || Float.isNaN(old)) {
+                route.signalStrength[slot] = signalStrength;
+            } else {
+                route.signalStrength[slot] = old + RSSI_ALPHA * (signalStrength - old);
+            }
+            route.heardNanos[slot] = now;
+        }
+        final long key = ((long) addressKey << 32) | (frameHash & 0xffffffffL);
+        synchronized (this) {
+            for (int i = 0; i < DEDUP_CAPACITY; i++) {
+                if (dedupKeys[i] == key && now - dedupNanos[i] < DEDUP_WINDOW_NS) {
+                    duplicates.increment();
+                    return false;
+                }
+            }
+            dedupKeys[dedupNext] = key;
+            dedupNanos[dedupNext] = now;
+            dedupNext = (dedupNext + 1) % DEDUP_CAPACITY;
+        }
+        return true;
+    }
+
+    /**
+     * @return the online member, which heard the device best recently, or
+     * the requesting member if no member heard the device.
+     */
+    SpswBridgeHandler route(Kind kind, int address, SpswBridgeHandler requester) {
+        final Route route = routes.get(addressKey(kind, address));
+        final SpswBridgeHandler[] current = getMembers();
+        final long now = System.nanoTime();
+        SpswBridgeHandler best = null;
+        float bestSignalStrength = Float.NEGATIVE_INFINITY;
+        if (route != null) {
+            for (int i = 0; i < MAX_MEMBERS; i++) {
+                final SpswBridgeHandler m = current[i];
+                if (m == null || route.heardNanos[i] == 0 || now - route.heardNanos[i] > ROUTE_MAX_AGE_NS
+                        || m.getThing().getStatus() != ThingStatus.ONLINE) {
+                    continue;
+                }
+                final float s = Float.isNaN(route.signalStrength[i]) ? -Float.MAX_VALUE : route.signalStrength[i];
+                if (best == null || s > bestSignalStrength) {
+                    best = m;
+                    bestSignalStrength = s;
+                }
+            }
+        }
+        if (best == null) {
+            //failover, if the requester is offline any online member will do
+            if (requester.getThing().getStatus() == ThingStatus.ONLINE) {
+                return requester;
+            }
+            for (SpswBridgeHandler m : current) {
+                if (m != null && m.getThing().getStatus() == ThingStatus.ONLINE) {
+                    best = m;
+                    break;
+                }
+            }
+            if (best == null) {
+                return requester;
+            }
+        }
+        if (best != requester) {
+            rerouted.increment();
+        }
+        return best;
+    }
+
+    /**
+     * A message from a FHT80b. The write it confirms may have been sent by
+     * any member and all members schedule their writes to the device.
+     */
+    void fhtReceived(FhtMessage fhtMsg, long receivedNanos) {
+        for (SpswBridgeHandler m : getMembers()) {
+            if (m != null) {
+                m.fhtReceived(fhtMsg, receivedNanos);
+            }
+        }
+    }
+
+    RadiatorFht80bHandler getFhtHandler(int housecode) {
+        for (SpswBridgeHandler m : getMembers()) {
+            final RadiatorFht80bHandler h = m == null ? null : m.getFhtHandler(housecode);
+            if (h != null) {
+                return h;
+            }
+        }
+        return null;
+    }
+
+    Fht80TfHandler getFht80TfHandler(int address) {
+        for (SpswBridgeHandler m : getMembers()) {
+            final Fht80TfHandler h = m == null ? null : m.getFht80TfHandler(address);
+            if (h != null) {
+                return h;
+            }
+        }
+        return null;
+    }
+
+    Hms100TfHandler getHmsHandler(int housecode) {
+        for (SpswBridgeHandler m : getMembers()) {
+            final Hms100TfHandler h = m == null ? null : m.getHmsHandler(housecode);
+            if (h != null) {
+                return h;
+            }
+        }
+        return null;
+    }
+
+    Em1000EmHandler getEmHandler(int address) {
+        for (SpswBridgeHandler m : getMembers()) {
+            final Em1000EmHandler h = m == null ? null : m.getEmHandler(address);
+            if (h != null) {
+                return h;
+            }
+        }
+        return null;
+    }
+
+    EvoHomeHandler getEvoHomeHandler(int deviceId) {
+        for (SpswBridgeHandler m : getMembers()) {
+            final EvoHomeHandler h = m == null ? null : m.getEvoHomeHandler(deviceId);
+            if (h != null) {
+                return h;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public String toString() {
+        int count = 0;
+        for (SpswBridgeHandler m : getMembers()) {
+            if (m != null) {
+                count++;
+            }
+        }
+        return String.format("%s, members: %d, devices: %d, duplicates dropped: %d, commands rerouted: %d", name, count, routes.size(),
+                duplicates.sum(), rerouted.sum());
+    }
+}
@@ -0,0 +1,213 @@
+/*
+ * ESH-IBAPL  - OpenHAB bindings for various IB APL drivers, https://github.com/aploese/esh-ibapl/
+ * Copyright (C) 2024-2025, Arne Plöse and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package de.ibapl.openhab.fhz4j.handler;
+
+import de.ibapl.spsw.api.SerialPortSocket;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+
+/**
+ * The {@link CulFrameHash} hashes each line the CulAdapter reads, so the
+ * {@link CulFederation} can tell the copies of one frame, received by several
+ * sticks, from different frames of the same device. The RSSI, which culfw
+ * appends to a received frame, differs between the sticks and is not hashed.
+ *
+ * The wrapped stream hands out at most one line per read, so the line parsed
+ * by the adapter is always the line hashed last. The hash of that line is read
+ * on the reader thread, or passed by the {@link CulReceiveQueue} with the
+ * message to its dispatcher thread.
+ *
+ * @author aploese@gmx.de - Initial contribution
+ */
+class CulFrameHash {
+
+    private final static int MAX_LINE_SIZE = 256;
+    private final static int READ_BUFFER_SIZE = 256;
+    //FNV-1a
+    private final static int OFFSET_BASIS = 0x811C9DC5;
+    private final static int PRIME = 0x01000193;
+    //the two hex digits of the RSSI
+    private final static int RSSI_LENGTH = 2;
+
+    private final boolean withRssi;
+    //written and read by the reader thread
+    private int lineHash;
+    //written and read by the dispatcher thread of the CulReceiveQueue
+    private int queuedHash;
+    private boolean queued;
+
+    /**
+     * @param withRssi true if culfw appends the RSSI to the received frames.
+     */
+    CulFrameHash(boolean withRssi) {
+        this.withRssi = withRssi;
+    }
+
+    /**
+     * Wrap the socket, so that the lines read are hashed.
+     */
+    SerialPortSocket wrap(SerialPortSocket serialPortSocket) {
+        return (SerialPortSocket) Proxy.newProxyInstance(SerialPortSocket.class.getClassLoader(), new Class<?>[]{SerialPortSocket.class},
+                (proxy, method, args) -> {
+                    try {
+                        if ("getInputStream".equals(method.getName()) && method.getParameterCount() == 0) {
+                            return wrap(serialPortSocket.getInputStream());
+                        }
+                        return method.invoke(serialPortSocket, args);
+                    } catch (InvocationTargetException ite) {
+                        throw ite.getCause();
+                    }
+                });
+    }
+
+    InputStream wrap(InputStream in) {
+        return new LineInputStream(in);
+    }
+
+    /**
+     * @param line the line including the line end.
+     * @param length the length of the line.
+     * @return the hash of the line without the line end and the RSSI.
+     */
+    int hash(byte[] line, int length) {
+        int end = length;
+        while (end > 0 && (line[end - 1] == '\n' || line[end - 1] == '\r')) {
+            end--;
+        }
+        if (withRssi && end > RSSI_LENGTH) {
+            end -= RSSI_LENGTH;
+        }
+        int result = OFFSET_BASIS;
+        for (int i = 0; i < end; i++) {
+            result = (result ^ (line[i] & 0xff)) * PRIME;
+        }
+        return result;
+    }
+
+    /**
+     * Called on the reader thread.
+     *
+     * @return the hash of the last line read.
+     */
+    int getLineHash() {
+        return lineHash;
+    }
+
+    /**
+     * Called by the dispatcher thread of the {@link CulReceiveQueue} with the
+     * hash of the line of the next message.
+     */
+    void queued(int hash) {
+        queuedHash = hash;
+        queued = true;
+    }
+
+    /**
+     * Called on the dispatching thread.
+     *
+     * @return the hash of the line of the message being dispatched.
+     */
+    int get() {
+        return queued ? queuedHash : lineHash;
+    }
+
+    /**
+     * Hands out the bytes up to the end of the next line and hashes the line.
+     */
+    private class LineInputStream extends FilterInputStream {
+
+        private final byte[] raw = new byte[READ_BUFFER_SIZE];
+        private int rawPos;
+        private int rawLength;
+        private final byte[] line = new byte[MAX_LINE_SIZE];
+        private int lineLength;
+        private final byte[] single = new byte[1];
+
+        LineInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            final int n = read(single, 0, 1);
+            return n <= 0 ? -1 : single[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (rawPos == rawLength) {
+                final int n = in.read(raw, 0, raw.length);
+                if (n <= 0) {
+                    return n;
+                }
+                rawPos = 0;
+                rawLength = n;
+            }
+            int result = 0;
+            while (result < len && rawPos < rawLength) {
+                final byte c = raw[rawPos++];
+                b[off + result++] = c;
+                if (lineLength < line.length) {
+                    line[lineLength++] = c;
+                }
+                if (c == '\n') {
+                    lineHash = hash(line, lineLength);
+                    lineLength = 0;
+                    break;
+                }
+            }
+            return result;
+        }
+
+        /**
+         * @return the bytes up to the end of the current line, so a buffered
+         * reader does not take the next line with it.
+         */
+        @Override
+        public int available() {
+            for (int i = rawPos; i < rawLength; i++) {
+                if (raw[i] == '\n') {
+                    return i + 1 - rawPos;
+                }
+            }
+            return rawLength - rawPos;
+        }
+
+        @Override
+        public long skip(long n) {
+            final int skipped = (int) Math.min(n, rawLength - rawPos);
+            rawPos += skipped;
+            return skipped;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+    }
+}
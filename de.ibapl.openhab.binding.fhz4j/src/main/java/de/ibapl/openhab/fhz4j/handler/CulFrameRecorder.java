@@ -0,0 +1,287 @@
+/*
+ * ESH-IBAPL  - OpenHAB bindings for various IB APL drivers, https://github.com/aploese/esh-ibapl/
+ * Copyright (C) 2024-2025, Arne Plöse and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package de.ibapl.openhab.fhz4j.handler;
+
+import de.ibapl.spsw.api.SerialPortSocket;
+import java.io.Closeable;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * The {@link CulFrameRecorder} records the raw bytes from and to the CUL in a
+ * compact binary format. Each line (frame) is appended with a timestamp to a
+ * memory mapped segment file. If a segment is full, the next one is started and
+ * the oldest segments are deleted.
+ *
+ * Segment layout, big endian: int magic "CULR", short version, followed by the
+ * records: long epoch millis, byte direction, short length, the bytes of the
+ * frame. A timestamp of 0 marks the end of the segment.
+ *
+ * @author aploese@gmx.de - Initial contribution
+ */
+public class CulFrameRecorder implements Closeable {
+
+    static final int MAGIC = 0x43554c52;
+    static final short VERSION = 1;
+    static final byte RX = 0;
+    static final byte TX = 1;
+    static final String SUFFIX = ".culrec";
+    static final int SEGMENT_HEADER_SIZE = 4 + 2;
+    static final int RECORD_HEADER_SIZE = 8 + 1 + 2;
+    /**
+     * Longer lines (which the CUL does not send) are split.
+     */
+    static final int MAX_FRAME_SIZE = 1024;
+
+    private final static Logger LOGGER = Logger.getLogger("d.i.o.f.h.CulFrameRecorder");
+    private final static DateTimeFormatter SEGMENT_TIMESTAMP = DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmss.SSS").withZone(ZoneOffset.UTC);
+
+    private final Path directory;
+    private final String prefix;
+    private final int segmentSize;
+    private final int maxSegments;
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    private long frames;
+    private long bytes;
+    private long segments;
+
+    /**
+     * @param directory where to put the segments.
+     * @param prefix the prefix of the segment file names.
+     * @param segmentSize the size of a segment in bytes.
+     * @param maxSegments the number of segments to keep.
+     */
+    CulFrameRecorder(Path directory, String prefix, int segmentSize, int maxSegments) throws IOException {
+        if (segmentSize < SEGMENT_HEADER_SIZE + RECORD_HEADER_SIZE + MAX_FRAME_SIZE + 8) {
+            throw new IllegalArgumentException("segmentSize too small: " + segmentSize);
+        }
+        this.directory = directory;
+        this.prefix = prefix;
+        this.segmentSize = segmentSize;
+        this.maxSegments = Math.max(1, maxSegments);
+        Files.createDirectories(directory);
+    }
+
+    /**
+     * Append a frame, the current segment is created or rotated as needed.
+     */
+    synchronized void record(byte direction, byte[] frame, int off, int len) {
+        try {
+            //keep 8 bytes for the end marker
+            if (buffer == null || buffer.remaining() < RECORD_HEADER_SIZE + len + 8) {
+                rotate();
+            }
+            buffer.putLong(System.currentTimeMillis());
+            buffer.put(direction);
+            buffer.putShort((short) len);
+            buffer.put(frame, off, len);
+            frames++;
+            bytes += len;
+        } catch (IOException ioe) {
+            LOGGER.log(Level.SEVERE, "Could not record CUL frame", ioe);
+            closeSegment();
+        }
+    }
+
+    private void rotate() throws IOException {
+        closeSegment();
+        //the counter keeps the names unique and sorted, if segments fill up within a millisecond
+        final Path segment = directory.resolve(String.format("%s-%s-%04d%s", prefix, SEGMENT_TIMESTAMP.format(Instant.now()), segments % 10000, SUFFIX));
+        channel = FileChannel.open(segment, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        buffer.putInt(MAGIC);
+        buffer.putShort(VERSION);
+        segments++;
+        deleteOldSegments();
+    }
+
+    private void closeSegment() {
+        if (buffer != null) {
+            buffer.force();
+            buffer = null;
+        }
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException ioe) {
+                LOGGER.log(Level.WARNING, "Could not close CUL recording segment", ioe);
+            }
+            channel = null;
+        }
+    }
+
+    private void deleteOldSegments() throws IOException {
+        final List<Path> existing = listSegments(directory, prefix);
+        for (int i = 0; i < existing.size() - maxSegments; i++) {
+            Files.deleteIfExists(existing.get(i));
+        }
+    }
+
+    /**
+     * @return the segments of the recording, oldest first.
+     */
+    static List<Path> listSegments(Path directory, String prefix) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(p -> {
+                final String name = p.getFileName().toString();
+                return name.endsWith(SUFFIX) && (prefix == null || name.startsWith(prefix + "-"));
+            }).sorted().toList();
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        closeSegment();
+    }
+
+    /**
+     * Wrap the socket, so that all bytes read and written are recorded.
+     */
+    SerialPortSocket wrap(SerialPortSocket serialPortSocket) {
+        final FrameCollector rx = new FrameCollector(RX);
+        final FrameCollector tx = new FrameCollector(TX);
+        return (SerialPortSocket) Proxy.newProxyInstance(SerialPortSocket.class.getClassLoader(), new Class<?>[]{SerialPortSocket.class},
+                (proxy, method, args) -> {
+                    try {
+                        switch (method.getName()) {
+                            case "getInputStream":
+                                if (method.getParameterCount() == 0) {
+                                    return new RecordingInputStream(serialPortSocket.getInputStream(), rx);
+                                }
+                                break;
+                            case "getOutputStream":
+                                if (method.getParameterCount() == 0) {
+                                    return new RecordingOutputStream(serialPortSocket.getOutputStream(), tx);
+                                }
+                                break;
+                            default:
+                        }
+                        return method.invoke(serialPortSocket, args);
+                    } catch (InvocationTargetException ite) {
+                        throw ite.getCause();
+                    }
+                });
+    }
+
+    /**
+     * Collects the bytes of one direction until a line is complete.
+     */
+    private class FrameCollector {
+
+        private final byte direction;
+        private final byte[] frame = new byte[MAX_FRAME_SIZE];
+        private int length;
+
+        FrameCollector(byte direction) {
+            this.direction = direction;
+        }
+
+        synchronized void collect(int b) {
+            frame[length++] = (byte) b;
+            if (b == '\n' || length == frame.length) {
+                record(direction, frame, 0, length);
+                length = 0;
+            }
+        }
+
+        synchronized void collect(byte[] b, int off, int len) {
+            for (int i = off; i < off + len; i++) {
+                collect(b[i]);
+            }
+        }
+    }
+
+    private static class RecordingInputStream extends FilterInputStream {
+
+        private final FrameCollector collector;
+
+        RecordingInputStream(InputStream in, FrameCollector collector) {
+            super(in);
+            this.collector = collector;
+        }
+
+        @Override
+        public int read() throws IOException {
+            final int result = super.read();
+            if (result >= 0) {
+                collector.collect(result);
+            }
+            return result;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            final int result = super.read(b, off, len);
+            if (result > 0) {
+                collector.collect(b, off, result);
+            }
+            return result;
+        }
+    }
+
+    private static class RecordingOutputStream extends FilterOutputStream {
+
+        private final FrameCollector collector;
+
+        RecordingOutputStream(OutputStream out, FrameCollector collector) {
+            super(out);
+            this.collector = collector;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            collector.collect(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            collector.collect(b, off, len);
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("directory: %s, segments: %d, frames: %d, bytes: %d", directory, segments, frames, bytes);
+    }
+
+}
@@ -0,0 +1,205 @@
+/*
+ * ESH-IBAPL  - OpenHAB bindings for various IB APL drivers, https://github.com/aploese/esh-ibapl/
+ * Copyright (C) 2024-2025, Arne Plöse and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package de.ibapl.openhab.fhz4j.handler;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The {@link CulLatency} measures for each message type the time a message
+ * waits from the serial port reader until it is dispatched and the time the
+ * thing handler needs to update its states.
+ *
+ * The times are collected in histograms with power of two buckets, so
+ * recording a message costs two {@link System#nanoTime()} calls and a few
+ * array increments. Only the dispatching thread writes, readers may see
+ * slightly stale values.
+ *
+ * @author aploese@gmx.de - Initial contribution
+ */
+public class CulLatency {
+
+    enum Type {
+        EM,
+        FHT,
+        FHT80_TF,
+        HMS,
+        EVO_HOME;
+    }
+
+    /**
+     * Bucket i holds the times from 2^(i-1) to 2^i - 1 ns, the last bucket
+     * (about 9 min) holds all longer times.
+     */
+    private final static int BUCKETS = 40;
+    private final static int TYPES = Type.values().length;
+
+    private final long[] queued = new long[TYPES * BUCKETS];
+    private final long[] handled = new long[TYPES * BUCKETS];
+    private final long[] counts = new long[TYPES];
+    private final long[] maxQueuedNanos = new long[TYPES];
+    private final long[] maxHandledNanos = new long[TYPES];
+    private final long startNanos = System.nanoTime();
+    /**
+     * Set by the {@link CulReceiveQueue} before a queued message is
+     * dispatched.
+     */
+    private long queuedReceivedNanos;
+    private long receivedNanos;
+    private long dispatchedNanos;
+
+    private static int bucket(long nanos) {
+        return Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(Math.max(0, nanos)));
+    }
+
+    /**
+     * Called by the dispatcher thread of the {@link CulReceiveQueue} with the
+     * time the reader thread received the next message.
+     */
+    void received(long nanos) {
+        queuedReceivedNanos = nanos;
+    }
+
+    /**
+     * Called on the dispatching thread before the handler is looked up.
+     */
+    void dispatch() {
+        dispatchedNanos = System.nanoTime();
+        //not queued, received now
+        receivedNanos = queuedReceivedNanos == 0 ? dispatchedNanos : queuedReceivedNanos;
+        queuedReceivedNanos = 0;
+    }
+
+    /**
+     * @return the time the message being dispatched was received.
+     */
+    long getReceivedNanos() {
+        return receivedNanos;
+    }
+
+    /**
+     * Called on the dispatching thread after the handler updated its states,
+     * messages for unknown devices are not recorded.
+     */
+    void handled(Type type) {
+        final long now = System.nanoTime();
+        final long queuedNanos = dispatchedNanos - receivedNanos;
+        final long handledNanos = now - dispatchedNanos;
+        final int t = type.ordinal();
+        counts[t]++;
+        queued[t * BUCKETS + bucket(queuedNanos)]++;
+        handled[t * BUCKETS + bucket(handledNanos)]++;
+        if (queuedNanos > maxQueuedNanos[t]) {
+            maxQueuedNanos[t] = queuedNanos;
+        }
+        if (handledNanos > maxHandledNanos[t]) {
+            maxHandledNanos[t] = handledNanos;
+        }
+    }
+
+    /**
+     * @return the upper bound of the bucket which contains the percentile
+     * in ns, at most the maximum.
+     */
+    private static long percentile(long[] histogram, int type, long count, long max, double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        final long rank = (long) Math.ceil(count * percentile);
+        long sum = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            sum += histogram[type * BUCKETS + i];
+            if (sum >= rank) {
+                return i == 0 ? 0 : Math.min(max, (1L << i) - 1);
+            }
+        }
+        return max;
+    }
+
+    public long getCount() {
+        long result = 0;
+        for (long c : counts) {
+            result += c;
+        }
+        return result;
+    }
+
+    /**
+     * @return the handled messages per minute since the bridge was
+     * initialized.
+     */
+    public double getMessagesPerMinute() {
+        final long elapsed = System.nanoTime() - startNanos;
+        return elapsed <= 0 ? 0 : getCount() * (double) TimeUnit.MINUTES.toNanos(1) / elapsed;
+    }
+
+    /**
+     * @return the 99th percentile of the time from reading to the updated
+     * states of all messages in ms, the queued and handled times are added
+     * per message type.
+     */
+    public double getP99Millis() {
+        long result = 0;
+        for (int t = 0; t < TYPES; t++) {
+            result = Math.max(result, percentile(queued, t, counts[t], maxQueuedNanos[t], 0.99) + percentile(handled, t, counts[t], maxHandledNanos[t], 0.99));
+        }
+        return result / 1_000_000.0;
+    }
+
+    private static String formatNanos(long nanos) {
+        if (nanos < 10_000) {
+            return nanos + " ns";
+        } else if (nanos < 10_000_000) {
+            return nanos / 1_000 + " us";
+        } else {
+            return nanos / 1_000_000 + " ms";
+        }
+    }
+
+    /**
+     * Append one line per message type, the percentiles are upper bounds.
+     */
+    public void formatTo(StringBuilder sb, String indent) {
+        sb.append(indent).append(String.format("messages: %d, rate: %.1f/min", getCount(), getMessagesPerMinute()));
+        for (Type type : Type.values()) {
+            final int t = type.ordinal();
+            final long count = counts[t];
+            if (count == 0) {
+                continue;
+            }
+            sb.append('\n').append(indent).append(type).append(": ").append(count);
+            sb.append(", queued p50/p99/max: ").append(formatNanos(percentile(queued, t, count, maxQueuedNanos[t], 0.5)));
+            sb.append('/').append(formatNanos(percentile(queued, t, count, maxQueuedNanos[t], 0.99)));
+            sb.append('/').append(formatNanos(maxQueuedNanos[t]));
+            sb.append(", handled p50/p99/max: ").append(formatNanos(percentile(handled, t, count, maxHandledNanos[t], 0.5)));
+            sb.append('/').append(formatNanos(percentile(handled, t, count, maxHandledNanos[t], 0.99)));
+            sb.append('/').append(formatNanos(maxHandledNanos[t]));
+        }
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder();
+        formatTo(sb, "");
+        return sb.toString();
+    }
+
+}
@@ -0,0 +1,272 @@
+/*
+ * ESH-IBAPL  - OpenHAB bindings for various IB APL drivers, https://github.com/aploese/esh-ibapl/
+ * Copyright (C) 2024-2025, Arne Plöse and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package de.ibapl.openhab.fhz4j.handler;
+
+import de.ibapl.spsw.api.SerialPortSocket;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The {@link CulReceiveFilter} drops the lines of the CUL, which would be
+ * parsed only to be thrown away, before the CulAdapter allocates message
+ * objects for them: FS20 and LaCrosse frames, for which this binding has no
+ * things, and FHT, FHT80 TF, HMS and EM frames of devices, which no bridge of
+ * the federation knows and the discovery does not want to see.
+ *
+ * A line is only dropped, if it has the exact shape of a frame, a prefix
+ * followed by hex digits with the minimal length of the frame type. If the
+ * address may be read in more than one way (FHT housecode or FHT80 TF
+ * address), it is dropped only if no reading is known and the discovery wants
+ * no reading. Responses to requests and all other lines are passed.
+ *
+ * @author aploese@gmx.de - Initial contribution
+ */
+public class CulReceiveFilter {
+
+    /**
+     * Looks up the devices known to the bridge or its federation, or wanted by
+     * the discovery.
+     */
+    @FunctionalInterface
+    interface KnownDevices {
+
+        boolean isKnown(CulFederation.Kind kind, int address);
+    }
+
+    private final static int MAX_LINE_SIZE = 256;
+    private final static int READ_BUFFER_SIZE = 256;
+    //minimal lengths without the line end: prefix and hex digits
+    private final static int MIN_FS20_LENGTH = 9;
+    private final static int MIN_LA_CROSSE_LENGTH = 6;
+    private final static int MIN_FHT_LENGTH = 9;
+    private final static int MIN_HMS_LENGTH = 13;
+    private final static int MIN_EM_LENGTH = 19;
+
+    private final KnownDevices knownDevices;
+    private final KnownDevices discovery;
+    private final LongAdder passed = new LongAdder();
+    private final LongAdder droppedFs20 = new LongAdder();
+    private final LongAdder droppedLaCrosse = new LongAdder();
+    private final LongAdder droppedUnknown = new LongAdder();
+
+    /**
+     * @param knownDevices the devices to pass.
+     * @param discovery the unknown devices to pass, because the discovery
+     * wants to see them.
+     */
+    CulReceiveFilter(KnownDevices knownDevices, KnownDevices discovery) {
+        this.knownDevices = knownDevices;
+        this.discovery = discovery;
+    }
+
+    /**
+     * Wrap the socket, so that the lines read are filtered.
+     */
+    SerialPortSocket wrap(SerialPortSocket serialPortSocket) {
+        return (SerialPortSocket) Proxy.newProxyInstance(SerialPortSocket.class.getClassLoader(), new Class<?>[]{SerialPortSocket.class},
+                (proxy, method, args) -> {
+                    try {
+                        if ("getInputStream".equals(method.getName()) && method.getParameterCount() == 0) {
+                            return new FilteringInputStream(serialPortSocket.getInputStream());
+                        }
+                        return method.invoke(serialPortSocket, args);
+                    } catch (InvocationTargetException ite) {
+                        throw ite.getCause();
+                    }
+                });
+    }
+
+    /**
+     * @param line the line including the line end.
+     * @param length the length of the line.
+     * @return true if the line must be passed to the parser.
+     */
+    boolean accept(byte[] line, int length) {
+        int end = length;
+        while (end > 0 && (line[end - 1] == '\n' || line[end - 1] == '\r')) {
+            end--;
+        }
+        if (end < 2 || !isHex(line, 1, end)) {
+            passed.increment();
+            return true;
+        }
+        final LongAdder dropped;
+        switch (line[0]) {
+            case 'F' ->
+                dropped = end >= MIN_FS20_LENGTH ? droppedFs20 : null;
+            case 't' ->
+                dropped = end >= MIN_LA_CROSSE_LENGTH ? droppedLaCrosse : null;
+            case 'T' ->
+                dropped = end >= MIN_FHT_LENGTH
+                        && isUnwanted(CulFederation.Kind.FHT, parseHex(line, 1, 5), CulFederation.Kind.FHT80_TF, parseHex(line, 1, 7)) ? droppedUnknown : null;
+            case 'H' ->
+                dropped = end >= MIN_HMS_LENGTH
+                        && isUnwanted(CulFederation.Kind.HMS, parseHex(line, 1, 5), CulFederation.Kind.HMS, parseHex(line, 1, 5)) ? droppedUnknown : null;
+            case 'E' ->
+                //the address byte follows the type byte
+                dropped = end >= MIN_EM_LENGTH
+                        && isUnwanted(CulFederation.Kind.EM, parseHex(line, 3, 5), CulFederation.Kind.EM, parseHex(line, 1, 5)) ? droppedUnknown : null;
+            default ->
+                dropped = null;
+        }
+        if (dropped == null) {
+            passed.increment();
+            return true;
+        }
+        dropped.increment();
+        return false;
+    }
+
+    /**
+     * A frame with two readings of its address is wanted, if one reading is
+     * known. The discovery must want both readings, so an unknown device,
+     * which the discovery has already seen, is dropped although the other
+     * reading was never seen.
+     */
+    private boolean isUnwanted(CulFederation.Kind kind1, int address1, CulFederation.Kind kind2, int address2) {
+        return !knownDevices.isKnown(kind1, address1)
+                && !knownDevices.isKnown(kind2, address2)
+                && !(discovery.isKnown(kind1, address1) && discovery.isKnown(kind2, address2));
+    }
+
+    private static boolean isHex(byte[] b, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (Character.digit(b[i], 16) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int parseHex(byte[] b, int from, int to) {
+        int result = 0;
+        for (int i = from; i < to; i++) {
+            result = (result << 4) | Character.digit(b[i], 16);
+        }
+        return result;
+    }
+
+    public long getDropped() {
+        return droppedFs20.sum() + droppedLaCrosse.sum() + droppedUnknown.sum();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("passed: %d, dropped FS20: %d, dropped LaCrosse: %d, dropped unknown devices: %d",
+                passed.sum(), droppedFs20.sum(), droppedLaCrosse.sum(), droppedUnknown.sum());
+    }
+
+    /**
+     * Holds the bytes of a line back until it is complete, then passes or
+     * drops the whole line.
+     */
+    private class FilteringInputStream extends FilterInputStream {
+
+        private final byte[] raw = new byte[READ_BUFFER_SIZE];
+        private final byte[] line = new byte[MAX_LINE_SIZE];
+        private int lineLength;
+        //a read may complete the held back line and all the lines read
+        private final byte[] accepted = new byte[READ_BUFFER_SIZE + MAX_LINE_SIZE];
+        private int acceptedPos;
+        private int acceptedLength;
+        private final byte[] single = new byte[1];
+
+        FilteringInputStream(InputStream in) {
+            super(in);
+        }
+
+        /**
+         * Read once from the underlying stream and collect the bytes.
+         *
+         * @return the result of the underlying read.
+         */
+        private int fill() throws IOException {
+            final int n = in.read(raw, 0, raw.length);
+            acceptedPos = 0;
+            acceptedLength = 0;
+            for (int i = 0; i < n; i++) {
+                final byte b = raw[i];
+                line[lineLength++] = b;
+                if (b == '\n') {
+                    if (accept(line, lineLength)) {
+                        System.arraycopy(line, 0, accepted, acceptedLength, lineLength);
+                        acceptedLength += lineLength;
+                    }
+                    lineLength = 0;
+                } else if (lineLength == line.length) {
+                    //no frame is that long, pass it unchecked
+                    System.arraycopy(line, 0, accepted, acceptedLength, lineLength);
+                    acceptedLength += lineLength;
+                    lineLength = 0;
+                }
+            }
+            return n;
+        }
+
+        @Override
+        public int read() throws IOException {
+            final int n = read(single, 0, 1);
+            return n <= 0 ? -1 : single[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            while (acceptedPos == acceptedLength) {
+                final int n = fill();
+                if (n < 0) {
+                    return n;
+                }
+            }
+            final int result = Math.min(len, acceptedLength - acceptedPos);
+            System.arraycopy(accepted, acceptedPos, b, off, result);
+            acceptedPos += result;
+            return result;
+        }
+
+        @Override
+        public int available() throws IOException {
+            if (acceptedPos == acceptedLength && in.available() > 0) {
+                fill();
+            }
+            return acceptedLength - acceptedPos;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            final int skipped = (int) Math.min(n, acceptedLength - acceptedPos);
+            acceptedPos += skipped;
+            return skipped;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,348 @@
+/*
+ * ESH-IBAPL  - OpenHAB bindings for various IB APL drivers, https://github.com/aploese/esh-ibapl/
+ * Copyright (C) 2024-2025, Arne Plöse and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package de.ibapl.openhab.fhz4j.handler;
+
+import de.ibapl.fhz4j.api.Protocol;
+import de.ibapl.fhz4j.cul.CulMessage;
+import de.ibapl.fhz4j.cul.CulMessageListener;
+import de.ibapl.fhz4j.protocol.em.EmMessage;
+import de.ibapl.fhz4j.protocol.evohome.EvoHomeMessage;
+import de.ibapl.fhz4j.protocol.fht.Fht80TfMessage;
+import de.ibapl.fhz4j.protocol.fht.FhtMessage;
+import de.ibapl.fhz4j.protocol.fs20.FS20Message;
+import de.ibapl.fhz4j.protocol.hms.HmsMessage;
+import de.ibapl.fhz4j.protocol.lacrosse.tx2.LaCrosseTx2Message;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The {@link CulReceiveQueue} decouples the serial reader thread of the
+ * {@link de.ibapl.fhz4j.cul.CulAdapter} from the openHAB state updates. The
+ * reader thread only puts the parsed messages into a bounded ring buffer, a
+ * single dispatcher thread calls the delegate in the order the messages were
+ * received, so the order of the messages of each device is kept.
+ *
+ * {@link #onIOException(java.io.IOException)} is not queued, it is passed to
+ * the delegate on the reader thread.
+ *
+ * @author aploese@gmx.de - Initial contribution
+ */
+public class CulReceiveQueue implements CulMessageListener {
+
+    public enum Overflow {
+        /**
+         * Drop the oldest queued message, the reader thread never waits.
+         */
+        DROP_OLDEST,
+        /**
+         * The reader thread waits until the dispatcher made room.
+         */
+        BLOCK;
+    }
+
+    private final static byte EM = 0;
+    private final static byte FAILED = 1;
+    private final static byte FHT = 2;
+    private final static byte FHT80_TF = 3;
+    private final static byte FHT_PARTIAL = 4;
+    private final static byte FS20 = 5;
+    private final static byte HMS = 6;
+    private final static byte LA_CROSSE_TX = 7;
+    private final static byte CUL = 8;
+    private final static byte EVO_HOME = 9;
+    private final static byte SIGNAL_STRENGTH = 10;
+    private final static byte RECEIVE_ENABLED = 11;
+    private final static byte HELP = 12;
+
+    private final static Logger LOGGER = Logger.getLogger("d.i.o.f.h.CulReceiveQueue");
+    private final static long PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final CulMessageListener delegate;
+    private final Overflow overflow;
+    private final int mask;
+    private final Object[] payloads;
+    private final byte[] kinds;
+    private final float[] values;
+    private final long[] receivedNanos;
+    private final int[] frameHashes;
+    private final CulLatency latency;
+    private final CulFrameHash frameHash;
+    /**
+     * The next slot to dispatch. Advanced by the dispatcher and, if the queue
+     * is full and {@link Overflow#DROP_OLDEST} is set, by the reader thread.
+     */
+    private final AtomicLong head = new AtomicLong();
+    /**
+     * The next slot to fill, written only by the reader thread.
+     */
+    private volatile long tail;
+    private final AtomicLong dropped = new AtomicLong();
+    private volatile long maxDepth;
+    private volatile boolean running;
+    private volatile Thread dispatcherThread;
+    private volatile Thread blockedReaderThread;
+
+    /**
+     * @param frameHash the hashes of the lines read or null, if the messages
+     * need no hash.
+     */
+    CulReceiveQueue(CulMessageListener delegate, int capacity, Overflow overflow, CulLatency latency, CulFrameHash frameHash) {
+        this.delegate = delegate;
+        this.latency = latency;
+        this.frameHash = frameHash;
+        this.overflow = overflow;
+        int size = 2;
+        while (size < capacity) {
+            size <<= 1;
+        }
+        mask = size - 1;
+        payloads = new Object[size];
+        kinds = new byte[size];
+        values = new float[size];
+        receivedNanos = new long[size];
+        frameHashes = new int[size];
+    }
+
+    void start(String name) {
+        if (running) {
+            return;
+        }
+        running = true;
+        final Thread t = new Thread(this::run, "fhz4j-rx-" + name);
+        t.setDaemon(true);
+        dispatcherThread = t;
+        t.start();
+    }
+
+    void stop() {
+        running = false;
+        final Thread t = dispatcherThread;
+        dispatcherThread = null;
+        if (t != null) {
+            LockSupport.unpark(t);
+        }
+    }
+
+    /**
+     * Called only from the reader thread.
+     */
+    private void enqueue(byte kind, Object payload, float value) {
+        final long t = tail;
+        while (t - head.get() > mask) {
+            if (!running) {
+                return;
+            }
+            if (overflow == Overflow.DROP_OLDEST) {
+                final long h = head.get();
+                if (t - h > mask && head.compareAndSet(h, h + 1)) {
+                    dropped.incrementAndGet();
+                }
+            } else {
+                blockedReaderThread = Thread.currentThread();
+                LockSupport.parkNanos(this, PARK_NANOS);
+                blockedReaderThread = null;
+            }
+        }
+        final int i = (int) t & mask;
+        payloads[i] = payload;
+        kinds[i] = kind;
+        values[i] = value;
+        receivedNanos[i] = System.nanoTime();
+        if (frameHash != null) {
+            frameHashes[i] = frameHash.getLineHash();
+        }
+        tail = t + 1;
+        final long depth = t + 1 - head.get();
+        if (depth > maxDepth) {
+            maxDepth = depth;
+        }
+        final Thread dt = dispatcherThread;
+        if (dt != null && depth == 1) {
+            //The dispatcher may be waiting for this message
+            LockSupport.unpark(dt);
+        }
+    }
+
+    private void run() {
+        while (running) {
+            final long h = head.get();
+            if (h == tail) {
+                LockSupport.parkNanos(this, PARK_NANOS);
+                continue;
+            }
+            final int i = (int) h & mask;
+            final Object payload = payloads[i];
+            final byte kind = kinds[i];
+            final float value = values[i];
+            final long received = receivedNanos[i];
+            final int hash = frameHashes[i];
+            //If the CAS fails, the reader thread dropped this slot meanwhile
+            if (head.compareAndSet(h, h + 1)) {
+                final Thread rt = blockedReaderThread;
+                if (rt != null) {
+                    LockSupport.unpark(rt);
+                }
+                try {
+                    latency.received(received);
+                    if (frameHash != null) {
+                        frameHash.queued(hash);
+                    }
+                    dispatch(kind, payload, value);
+                } catch (RuntimeException e) {
+                    LOGGER.log(Level.SEVERE, "Could not dispatch received message", e);
+                }
+            }
+        }
+    }
+
+    private void dispatch(byte kind, Object payload, float value) {
+        switch (kind) {
+            case EM ->
+                delegate.emDataParsed((EmMessage) payload);
+            case FAILED ->
+                delegate.failed((Throwable) payload);
+            case FHT ->
+                delegate.fhtDataParsed((FhtMessage) payload);
+            case FHT80_TF ->
+                delegate.fht80TfDataParsed((Fht80TfMessage) payload);
+            case FHT_PARTIAL ->
+                delegate.fhtPartialDataParsed((FhtMessage) payload);
+            case FS20 ->
+                delegate.fs20DataParsed((FS20Message) payload);
+            case HMS ->
+                delegate.hmsDataParsed((HmsMessage) payload);
+            case LA_CROSSE_TX ->
+                delegate.laCrosseTxParsed((LaCrosseTx2Message) payload);
+            case CUL ->
+                delegate.culMessageParsed((CulMessage) payload);
+            case EVO_HOME ->
+                delegate.evoHomeParsed((EvoHomeMessage) payload);
+            case SIGNAL_STRENGTH ->
+                delegate.signalStrength(value);
+            case RECEIVE_ENABLED ->
+                delegate.receiveEnabled((Protocol) payload);
+            case HELP ->
+                delegate.helpParsed((String) payload);
+            default ->
+                LOGGER.log(Level.SEVERE, "Unknown kind of message: {0}", kind);
+        }
+    }
+
+    @Override
+    public void emDataParsed(EmMessage emMsg) {
+        enqueue(EM, emMsg, Float.NaN);
+    }
+
+    @Override
+    public void failed(Throwable t) {
+        enqueue(FAILED, t, Float.NaN);
+    }
+
+    @Override
+    public void fhtDataParsed(FhtMessage fhtMsg) {
+        enqueue(FHT, fhtMsg, Float.NaN);
+    }
+
+    @Override
+    public void fht80TfDataParsed(Fht80TfMessage fht80TfMsg) {
+        enqueue(FHT80_TF, fht80TfMsg, Float.NaN);
+    }
+
+    @Override
+    public void fhtPartialDataParsed(FhtMessage fhtMsg) {
+        enqueue(FHT_PARTIAL, fhtMsg, Float.NaN);
+    }
+
+    @Override
+    public void fs20DataParsed(FS20Message fs20Msg) {
+        enqueue(FS20, fs20Msg, Float.NaN);
+    }
+
+    @Override
+    public void hmsDataParsed(HmsMessage hmsMsg) {
+        enqueue(HMS, hmsMsg, Float.NaN);
+    }
+
+    @Override
+    public void laCrosseTxParsed(LaCrosseTx2Message msg) {
+        enqueue(LA_CROSSE_TX, msg, Float.NaN);
+    }
+
+    @Override
+    public void culMessageParsed(CulMessage msg) {
+        enqueue(CUL, msg, Float.NaN);
+    }
+
+    @Override
+    public void evoHomeParsed(EvoHomeMessage evoHomeMsg) {
+        enqueue(EVO_HOME, evoHomeMsg, Float.NaN);
+    }
+
+    @Override
+    public void signalStrength(float signalStrength) {
+        enqueue(SIGNAL_STRENGTH, null, signalStrength);
+    }
+
+    @Override
+    public void receiveEnabled(Protocol protocol) {
+        enqueue(RECEIVE_ENABLED, protocol, Float.NaN);
+    }
+
+    @Override
+    public void helpParsed(String helpMessages) {
+        enqueue(HELP, helpMessages, Float.NaN);
+    }
+
+    @Override
+    public void onIOException(IOException ioe) {
+        delegate.onIOException(ioe);
+    }
+
+    /**
+     * @return the number of messages waiting to be dispatched.
+     */
+    public long getDepth() {
+        return tail - head.get();
+    }
+
+    public long getMaxDepth() {
+        return maxDepth;
+    }
+
+    /**
+     * @return the number of messages dropped, because the queue was full.
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("capacity: %d, overflow: %s, depth: %d, max depth: %d, dropped: %d",
+                mask + 1, overflow, getDepth(), maxDepth, dropped.get());
+    }
+
+}
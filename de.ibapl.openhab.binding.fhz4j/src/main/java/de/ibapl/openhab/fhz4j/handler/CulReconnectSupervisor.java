@@ -0,0 +1,201 @@
+/*
+ * ESH-IBAPL  - OpenHAB bindings for various IB APL drivers, https://github.com/aploese/esh-ibapl/
+ * Copyright (C) 2024-2025, Arne Plöse and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package de.ibapl.openhab.fhz4j.handler;
+
+import java.io.IOException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The {@link CulReconnectSupervisor} reopens the CUL after the connection was
+ * lost. The attempts run on the scheduler, never on the serial reader thread,
+ * with an exponential backoff and a random jitter, until the connection is
+ * back or the supervisor is stopped.
+ *
+ * @author aploese@gmx.de - Initial contribution
+ */
+public class CulReconnectSupervisor {
+
+    /**
+     * Opens and initializes the CUL.
+     */
+    @FunctionalInterface
+    interface Connector {
+
+        void connect() throws IOException;
+    }
+
+    private final static Logger LOGGER = Logger.getLogger("d.i.o.f.h.CulReconnectSupervisor");
+    private final static long INITIAL_DELAY_MS = 1000;
+    private final static long MAX_DELAY_MS = TimeUnit.MINUTES.toMillis(5);
+    /**
+     * +/- 25% of the delay, so that multiple bridges on the same USB hub do
+     * not hammer it at the same time.
+     */
+    private final static double JITTER = 0.25;
+
+    private final Connector connector;
+    private final ScheduledExecutorService scheduler;
+    /**
+     * Held while the connector runs, the statistics stay readable meanwhile.
+     */
+    private final Object connectLock = new Object();
+    private boolean running;
+    private ScheduledFuture<?> attemptJob;
+    private long nextDelayMs;
+    private long outageStartNanos;
+
+    //Statistics
+    private long outages;
+    private long attempts;
+    private long reconnects;
+    private long lastOutageMs;
+    private long maxOutageMs;
+    private long totalOutageMs;
+
+    CulReconnectSupervisor(Connector connector, ScheduledExecutorService scheduler) {
+        this.connector = connector;
+        this.scheduler = scheduler;
+    }
+
+    synchronized void start() {
+        running = true;
+    }
+
+    /**
+     * Cancel any pending attempt. If an attempt is running, wait until it is
+     * done.
+     */
+    void stop() {
+        synchronized (this) {
+            running = false;
+            if (attemptJob != null) {
+                attemptJob.cancel(false);
+                attemptJob = null;
+            }
+            if (outageStartNanos != 0) {
+                countOutageEnd();
+            }
+        }
+        synchronized (connectLock) {
+            //wait for a running attempt
+        }
+    }
+
+    /**
+     * The connection was lost or could not be established, start to
+     * reconnect. Returns immediately.
+     */
+    synchronized void connectionLost() {
+        if (!running || attemptJob != null) {
+            return;
+        }
+        outages++;
+        outageStartNanos = System.nanoTime();
+        nextDelayMs = INITIAL_DELAY_MS;
+        scheduleAttempt();
+    }
+
+    /**
+     * @return true while the connection is down and reconnect attempts are
+     * made.
+     */
+    public synchronized boolean isReconnecting() {
+        return attemptJob != null;
+    }
+
+    private void scheduleAttempt() {
+        final long jitter = (long) (nextDelayMs * JITTER * (2 * ThreadLocalRandom.current().nextDouble() - 1));
+        attemptJob = scheduler.schedule(this::attempt, nextDelayMs + jitter, TimeUnit.MILLISECONDS);
+        nextDelayMs = Math.min(nextDelayMs * 2, MAX_DELAY_MS);
+    }
+
+    private void attempt() {
+        synchronized (connectLock) {
+            synchronized (this) {
+                if (!running) {
+                    return;
+                }
+                attempts++;
+            }
+            try {
+                connector.connect();
+            } catch (IOException | RuntimeException e) {
+                synchronized (this) {
+                    LOGGER.log(Level.WARNING, "Reconnect attempt failed, next attempt in about {0} ms: {1}", new Object[]{nextDelayMs, e});
+                    if (running) {
+                        scheduleAttempt();
+                    }
+                }
+                return;
+            }
+            synchronized (this) {
+                attemptJob = null;
+                reconnects++;
+                if (outageStartNanos != 0) {
+                    countOutageEnd();
+                }
+                LOGGER.log(Level.INFO, "Reconnected after {0} ms", lastOutageMs);
+            }
+        }
+    }
+
+    private void countOutageEnd() {
+        lastOutageMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - outageStartNanos);
+        outageStartNanos = 0;
+        totalOutageMs += lastOutageMs;
+        if (lastOutageMs > maxOutageMs) {
+            maxOutageMs = lastOutageMs;
+        }
+    }
+
+    public synchronized long getAttempts() {
+        return attempts;
+    }
+
+    public synchronized long getReconnects() {
+        return reconnects;
+    }
+
+    /**
+     * @return the total time in ms without connection, including the current
+     * outage.
+     */
+    public synchronized long getTotalOutageMillis() {
+        if (outageStartNanos == 0) {
+            return totalOutageMs;
+        } else {
+            return totalOutageMs + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - outageStartNanos);
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("reconnecting: %b, outages: %d, attempts: %d, reconnects: %d, last outage: %d ms, max outage: %d ms, total outage: %d ms",
+                attemptJob != null, outages, attempts, reconnects, lastOutageMs, maxOutageMs, getTotalOutageMillis());
+    }
+
+}
@@ -0,0 +1,315 @@
+/*
+ * ESH-IBAPL  - OpenHAB bindings for various IB APL drivers, https://github.com/aploese/esh-ibapl/
+ * Copyright (C) 2024-2025, Arne Plöse and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package de.ibapl.openhab.fhz4j.handler;
+
+import de.ibapl.fhz4j.cul.CulAdapter;
+import de.ibapl.fhz4j.cul.CulMessageListener;
+import de.ibapl.spsw.api.SerialPortSocket;
+import de.ibapl.spsw.api.Speed;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Proxy;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The {@link CulReplay} feeds a recording of the {@link CulFrameRecorder}
+ * through a new {@link CulAdapter} into the listener of a bridge. The received
+ * frames are replayed with their original timing, divided by the speed factor;
+ * the frames written to the CUL are skipped.
+ *
+ * @author aploese@gmx.de - Initial contribution
+ */
+public class CulReplay {
+
+    private final static Logger LOGGER = Logger.getLogger("d.i.o.f.h.CulReplay");
+
+    private final List<Path> segments;
+    private final double speedFactor;
+    private final CulMessageListener listener;
+    private final Speed speed;
+    private final CulFrameHash frameHash;
+    private final CompletableFuture<Void> finished = new CompletableFuture<>();
+    private volatile long frames;
+    private volatile long messages;
+
+    /**
+     * @param recording a segment or a directory with segments.
+     * @param speedFactor 1.0 for real time, 10.0 for ten times faster, 0 for as
+     * fast as possible.
+     * @param listener where to send the parsed messages.
+     * @param speed the speed passed to the {@link CulAdapter}.
+     */
+    CulReplay(Path recording, double speedFactor, CulMessageListener listener, Speed speed) throws IOException {
+        this(recording, speedFactor, listener, speed, null);
+    }
+
+    /**
+     * @param frameHash hashes the replayed lines for the federation of the
+     * bridge or null.
+     */
+    CulReplay(Path recording, double speedFactor, CulMessageListener listener, Speed speed, CulFrameHash frameHash) throws IOException {
+        if (Files.isDirectory(recording)) {
+            segments = CulFrameRecorder.listSegments(recording, null);
+        } else {
+            segments = List.of(recording);
+        }
+        this.speedFactor = speedFactor;
+        this.listener = listener;
+        this.speed = speed;
+        this.frameHash = frameHash;
+    }
+
+    /**
+     * Start the replay, it runs on the reader thread of the new
+     * {@link CulAdapter}.
+     *
+     * @return a future, which completes when all frames are replayed.
+     */
+    CompletableFuture<Void> start() throws IOException {
+        final SerialPortSocket socket = createSocket();
+        final CulAdapter culAdapter = new CulAdapter(frameHash == null ? socket : frameHash.wrap(socket), createListener(), speed);
+        return finished.whenComplete((v, t) -> {
+            try {
+                culAdapter.close();
+            } catch (Exception e) {
+                LOGGER.log(Level.WARNING, "Could not close replay adapter", e);
+            }
+            LOGGER.log(Level.INFO, "Replay done: {0}", this);
+        });
+    }
+
+    /**
+     * End the replay after the current frame.
+     */
+    void stop() {
+        finished.complete(null);
+    }
+
+    /**
+     * All calls are passed to the listener of the bridge, except
+     * onIOException which ends the replay and must not reconnect the bridge.
+     */
+    private CulMessageListener createListener() {
+        return (CulMessageListener) Proxy.newProxyInstance(CulMessageListener.class.getClassLoader(), new Class<?>[]{CulMessageListener.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "onIOException" -> {
+                            finished.complete(null);
+                            return null;
+                        }
+                        case "hashCode" -> {
+                            return System.identityHashCode(proxy);
+                        }
+                        case "equals" -> {
+                            return proxy == args[0];
+                        }
+                        case "toString" -> {
+                            return "CulReplay listener";
+                        }
+                        default -> {
+                            messages++;
+                            return method.invoke(listener, args);
+                        }
+                    }
+                });
+    }
+
+    private SerialPortSocket createSocket() {
+        final InputStream in = new ReplayInputStream();
+        final OutputStream out = OutputStream.nullOutputStream();
+        final String portName = "replay:" + segments;
+        return (SerialPortSocket) Proxy.newProxyInstance(SerialPortSocket.class.getClassLoader(), new Class<?>[]{SerialPortSocket.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getInputStream":
+                            return in;
+                        case "getOutputStream":
+                            return out;
+                        case "isOpen":
+                            return !finished.isDone();
+                        case "isClosed":
+                            return finished.isDone();
+                        case "close":
+                            finished.complete(null);
+                            return null;
+                        case "getPortName":
+                        case "toString":
+                            return portName;
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "equals":
+                            return proxy == args[0];
+                        default:
+                            //All settings are ignored
+                            return defaultValue(method.getReturnType());
+                    }
+                });
+    }
+
+    private static Object defaultValue(Class<?> type) {
+        if (type == boolean.class) {
+            return false;
+        } else if (type == int.class) {
+            return 0;
+        } else if (type == long.class) {
+            return 0L;
+        } else if (type == byte.class) {
+            return (byte) 0;
+        } else if (type == short.class) {
+            return (short) 0;
+        } else if (type == char.class) {
+            return (char) 0;
+        } else if (type == float.class) {
+            return 0f;
+        } else if (type == double.class) {
+            return 0d;
+        } else {
+            return null;
+        }
+    }
+
+    /**
+     * Hands out the received frames of all segments and waits between them.
+     */
+    private class ReplayInputStream extends InputStream {
+
+        private int segmentIndex;
+        private ByteBuffer segment;
+        private ByteBuffer frame;
+        private long firstTimestamp;
+        private long startNanos;
+
+        /**
+         * @return the current frame with remaining bytes or null at the end of
+         * the recording.
+         */
+        private ByteBuffer frame() throws IOException {
+            while (frame == null || !frame.hasRemaining()) {
+                if (finished.isDone()) {
+                    return null;
+                }
+                if (segment == null || segment.remaining() < CulFrameRecorder.RECORD_HEADER_SIZE) {
+                    if (segmentIndex == segments.size()) {
+                        finished.complete(null);
+                        return null;
+                    }
+                    segment = openSegment(segments.get(segmentIndex++));
+                    continue;
+                }
+                final long timestamp = segment.getLong();
+                if (timestamp == 0) {
+                    segment = null;
+                    continue;
+                }
+                final byte direction = segment.get();
+                final int length = segment.getShort() & 0xffff;
+                final ByteBuffer f = segment.slice(segment.position(), length);
+                segment.position(segment.position() + length);
+                if (direction != CulFrameRecorder.RX) {
+                    continue;
+                }
+                waitUntil(timestamp);
+                frame = f;
+                frames++;
+            }
+            return frame;
+        }
+
+        private void waitUntil(long timestamp) throws IOException {
+            if (startNanos == 0) {
+                firstTimestamp = timestamp;
+                startNanos = System.nanoTime();
+                return;
+            }
+            if (speedFactor <= 0) {
+                return;
+            }
+            final long dueNanos = startNanos + (long) (TimeUnit.MILLISECONDS.toNanos(timestamp - firstTimestamp) / speedFactor);
+            final long waitNanos = dueNanos - System.nanoTime();
+            if (waitNanos > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(waitNanos);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Replay interrupted", ie);
+                }
+            }
+        }
+
+        private ByteBuffer openSegment(Path path) throws IOException {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                final MappedByteBuffer result = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                if (result.remaining() < CulFrameRecorder.SEGMENT_HEADER_SIZE || result.getInt() != CulFrameRecorder.MAGIC) {
+                    throw new IOException("Not a CUL recording: " + path);
+                }
+                final short version = result.getShort();
+                if (version != CulFrameRecorder.VERSION) {
+                    throw new IOException("Unsupported version " + version + " of CUL recording: " + path);
+                }
+                return result;
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            final ByteBuffer f = frame();
+            return f == null ? -1 : f.get() & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            final ByteBuffer f = frame();
+            if (f == null) {
+                return -1;
+            }
+            final int result = Math.min(len, f.remaining());
+            f.get(b, off, result);
+            return result;
+        }
+
+        @Override
+        public int available() {
+            return frame == null ? 0 : frame.remaining();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("segments: %s, speed factor: %.1f, frames: %d, messages: %d, finished: %b",
+                segments, speedFactor, frames, messages, finished.isDone());
+    }
+
+}
@@ -0,0 +1,84 @@
+/*
+ * ESH-IBAPL  - OpenHAB bindings for various IB APL drivers, https://github.com/aploese/esh-ibapl/
+ * Copyright (C) 2024-2025, Arne Plöse and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package de.ibapl.openhab.fhz4j.handler;
+
+import de.ibapl.fhz4j.api.Response;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * The {@link CulStatus} holds the pending responses of the status requests
+ * sent to a CUL at once. The responses are gathered with a deadline shared
+ * by all requests, so waiting for several CULs takes the longest response
+ * time only once.
+ *
+ * @author aploese@gmx.de - Initial contribution
+ */
+public class CulStatus {
+
+    private final Map<String, Future<Response>> responses = new LinkedHashMap<>();
+    private final long requestedNanos = System.nanoTime();
+
+    void add(String name, Future<Response> response) {
+        responses.put(name, response);
+    }
+
+    void failed(String name, Throwable t) {
+        responses.put(name, CompletableFuture.failedFuture(t));
+    }
+
+    long getAgeNanos() {
+        return System.nanoTime() - requestedNanos;
+    }
+
+    /**
+     * @param deadlineNanos the {@link System#nanoTime()} up to which to wait
+     * for the responses.
+     * @return a line per request with its name and response or error.
+     */
+    public List<String> format(long deadlineNanos) {
+        final List<String> result = new ArrayList<>(responses.size());
+        for (Map.Entry<String, Future<Response>> e : responses.entrySet()) {
+            String value;
+            try {
+                value = String.valueOf(e.getValue().get(Math.max(0, deadlineNanos - System.nanoTime()), TimeUnit.NANOSECONDS));
+            } catch (TimeoutException te) {
+                value = "no response";
+            } catch (ExecutionException ee) {
+                value = "failed: " + ee.getCause();
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                value = "interrupted";
+            }
+            result.add(e.getKey() + ": " + value);
+        }
+        return result;
+    }
+
+}
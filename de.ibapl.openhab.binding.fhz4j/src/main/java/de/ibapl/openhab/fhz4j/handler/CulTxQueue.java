@@ -0,0 +1,518 @@
+/*
+ * ESH-IBAPL  - OpenHAB bindings for various IB APL drivers, https://github.com/aploese/esh-ibapl/
+ * Copyright (C) 2024-2025, Arne Plöse and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package de.ibapl.openhab.fhz4j.handler;
+
+import de.ibapl.fhz4j.cul.CulAdapter;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The {@link CulTxQueue} decouples the callers of the send methods of the
+ * {@link SpswBridgeHandler} from the serial port. All commands are written by
+ * a single writer thread, ordered by their {@link Priority} and within the same
+ * priority in the order they were submitted.
+ *
+ * Commands submitted with a coalesce key are held back for a short time. If
+ * another command with the same key is submitted while the first one is still
+ * queued, the queued one is replaced (last write wins) and keeps its position.
+ *
+ * The writer is a virtual thread, so a command blocked on the serial port
+ * does not hold a platform thread. A command which could not be written within
+ * the command timeout after its release, fails with a
+ * {@link TimeoutException}, so the caller gets feedback even if the write
+ * hangs.
+ *
+ * @author aploese@gmx.de - Initial contribution
+ */
+public class CulTxQueue {
+
+    public enum Priority {
+        /**
+         * Commands a user waits for, like EvoHome setpoints.
+         */
+        HIGH,
+        /**
+         * Regular commands, like FHT settings.
+         */
+        NORMAL,
+        /**
+         * Maintenance, like clock sync or reporting pings.
+         */
+        LOW;
+    }
+
+    /**
+     * A single write to the CUL, executed by the writer thread.
+     */
+    @FunctionalInterface
+    interface TxOperation {
+
+        void execute(CulAdapter culAdapter) throws IOException;
+    }
+
+    /**
+     * Executes a {@link TxOperation} against the current {@link CulAdapter}.
+     */
+    @FunctionalInterface
+    interface TxTarget {
+
+        void execute(TxOperation operation) throws IOException;
+    }
+
+    /**
+     * Fails the commands which were not written, because the queue was
+     * stopped or not running. This is no fault of the device, the bridge is
+     * disposed or goes offline.
+     */
+    static class StoppedException extends IOException {
+
+        private static final long serialVersionUID = 1L;
+
+        StoppedException(String message) {
+            super(message);
+        }
+
+        StoppedException(String message, Throwable cause) {
+            super(message, cause);
+        }
+    }
+
+    /**
+     * Marks a command that must never be coalesced.
+     */
+    static final int NO_COALESCE_KEY = -1;
+
+    private static class TxEntry {
+
+        final Priority priority;
+        final int coalesceKey;
+        final CompletableFuture<Void> future = new CompletableFuture<>();
+        final long enqueuedNanos = System.nanoTime();
+        final long releaseAtNanos;
+        TxOperation operation;
+
+        TxEntry(Priority priority, int coalesceKey, long delayNanos, TxOperation operation) {
+            this.priority = priority;
+            this.coalesceKey = coalesceKey;
+            this.releaseAtNanos = enqueuedNanos + delayNanos;
+            this.operation = operation;
+        }
+    }
+
+    private final static Logger LOGGER = Logger.getLogger("d.i.o.f.h.CulTxQueue");
+    /**
+     * How long stop waits for the writer, which may be blocked on the serial
+     * port.
+     */
+    private final static Duration STOP_JOIN_TIMEOUT = Duration.ofSeconds(5);
+
+    private final TxTarget target;
+    private final ArrayDeque<TxEntry>[] queues;
+    private final Map<Integer, TxEntry> pendingByCoalesceKey = new HashMap<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private Thread writerThread;
+    private boolean running;
+    /**
+     * Incremented by each start, a writer of an older generation exits even
+     * if stop could not wait for it.
+     */
+    private long generation;
+    private int depth;
+    private long commandTimeoutNanos;
+
+    //Statistics, modified only while holding the lock
+    private long submitted;
+    private long sent;
+    private long failed;
+    private long coalesced;
+    private long expired;
+    private long totalWaitNanos;
+    private long maxWaitNanos;
+
+    @SuppressWarnings("unchecked")
+    CulTxQueue(TxTarget target) {
+        this.target = target;
+        queues = new ArrayDeque[Priority.values().length];
+        for (int i = 0; i < queues.length; i++) {
+            queues[i] = new ArrayDeque<>();
+        }
+    }
+
+    void start(String name) {
+        lock.lock();
+        try {
+            if (running) {
+                return;
+            }
+            running = true;
+            final long gen = ++generation;
+            writerThread = Thread.ofVirtual().name("fhz4j-tx-" + name).start(() -> run(gen));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Stop the writer thread and fail all pending commands. Waits a bounded
+     * time for the writer to exit.
+     */
+    void stop() {
+        final Thread t;
+        lock.lock();
+        try {
+            running = false;
+            t = writerThread;
+            writerThread = null;
+            for (ArrayDeque<TxEntry> queue : queues) {
+                TxEntry entry;
+                while ((entry = queue.poll()) != null) {
+                    entry.future.completeExceptionally(new StoppedException("TX queue stopped"));
+                }
+            }
+            pendingByCoalesceKey.clear();
+            depth = 0;
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        if (t != null) {
+            t.interrupt();
+            if (t != Thread.currentThread()) {
+                try {
+                    if (!t.join(STOP_JOIN_TIMEOUT)) {
+                        LOGGER.log(Level.WARNING, "TX writer {0} did not stop within {1}", new Object[]{t.getName(), STOP_JOIN_TIMEOUT});
+                    }
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
+    /**
+     * @param commandTimeoutNanos the time a command may take from its release
+     * until it is written, 0 for no timeout.
+     */
+    void setCommandTimeout(long commandTimeoutNanos) {
+        lock.lock();
+        try {
+            this.commandTimeoutNanos = commandTimeoutNanos;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    CompletableFuture<Void> submit(Priority priority, TxOperation operation) {
+        return submit(priority, NO_COALESCE_KEY, 0, operation);
+    }
+
+    /**
+     * Submit a command which may be replaced by a later one with the same
+     * coalesce key.
+     *
+     * @param priority the priority.
+     * @param coalesceKey the key or {@link #NO_COALESCE_KEY}.
+     * @param delayNanos the time to hold the command back, waiting for newer
+     * values.
+     * @param operation the write to execute.
+     * @return a future which completes when the command or the command which
+     * superseded it was written.
+     */
+    CompletableFuture<Void> submit(Priority priority, int coalesceKey, long delayNanos, TxOperation operation) {
+        return submit(priority, coalesceKey, () -> delayNanos, operation);
+    }
+
+    /**
+     * Like {@link #submit(Priority, int, long, TxOperation)}, but the delay
+     * is only computed if the command is not coalesced into a pending one.
+     * The supplier is called while the queue is locked, it must not call
+     * back into the queue.
+     */
+    CompletableFuture<Void> submit(Priority priority, int coalesceKey, LongSupplier delayNanos, TxOperation operation) {
+        lock.lock();
+        try {
+            if (coalesceKey != NO_COALESCE_KEY) {
+                final TxEntry pending = pendingByCoalesceKey.get(coalesceKey);
+                if (pending != null) {
+                    //last write wins, the pending entry keeps its position in the queue
+                    pending.operation = operation;
+                    submitted++;
+                    coalesced++;
+                    return pending.future.copy();
+                }
+            }
+            final TxEntry entry = new TxEntry(priority, coalesceKey, delayNanos.getAsLong(), operation);
+            if (!running) {
+                entry.future.completeExceptionally(new StoppedException("TX queue is not running"));
+                return entry.future;
+            }
+            queues[priority.ordinal()].add(entry);
+            if (coalesceKey != NO_COALESCE_KEY) {
+                pendingByCoalesceKey.put(coalesceKey, entry);
+            }
+            depth++;
+            submitted++;
+            notEmpty.signal();
+            return entry.future;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Take the first entry which may be released now. Entries which waited
+     * longer than the command timeout after their release are failed.
+     *
+     * @return the entry or null.
+     */
+    private TxEntry poll(long now) {
+        for (ArrayDeque<TxEntry> queue : queues) {
+            final Iterator<TxEntry> iterator = queue.iterator();
+            while (iterator.hasNext()) {
+                final TxEntry entry = iterator.next();
+                if (entry.releaseAtNanos - now <= 0) {
+                    iterator.remove();
+                    if (entry.coalesceKey != NO_COALESCE_KEY) {
+                        pendingByCoalesceKey.remove(entry.coalesceKey);
+                    }
+                    depth--;
+                    if (commandTimeoutNanos > 0 && now - entry.releaseAtNanos > commandTimeoutNanos) {
+                        expired++;
+                        entry.future.completeExceptionally(new TimeoutException("TX of " + entry.priority + " command timed out in queue"));
+                        continue;
+                    }
+                    return entry;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the time until the next held back entry may be released or
+     * {@link Long#MAX_VALUE} if there is none.
+     */
+    private long nanosUntilNextRelease(long now) {
+        long result = Long.MAX_VALUE;
+        for (ArrayDeque<TxEntry> queue : queues) {
+            for (TxEntry entry : queue) {
+                result = Math.min(result, entry.releaseAtNanos - now);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @param gen the generation of this writer.
+     */
+    private void run(long gen) {
+        while (true) {
+            TxEntry entry;
+            lock.lock();
+            try {
+                if (generation != gen) {
+                    //stopped and started again, the new writer takes over
+                    return;
+                }
+                long now = System.nanoTime();
+                while ((entry = poll(now)) == null) {
+                    if (!running || generation != gen) {
+                        return;
+                    }
+                    final long waitNanos = nanosUntilNextRelease(now);
+                    if (waitNanos == Long.MAX_VALUE) {
+                        notEmpty.await();
+                    } else {
+                        notEmpty.awaitNanos(waitNanos);
+                    }
+                    now = System.nanoTime();
+                }
+                final long waitNanos = System.nanoTime() - entry.enqueuedNanos;
+                totalWaitNanos += waitNanos;
+                if (waitNanos > maxWaitNanos) {
+                    maxWaitNanos = waitNanos;
+                }
+                if (commandTimeoutNanos > 0) {
+                    //the caller gets its answer, even if the serial port hangs
+                    entry.future.orTimeout(commandTimeoutNanos, TimeUnit.NANOSECONDS);
+                }
+            } catch (InterruptedException ie) {
+                return;
+            } finally {
+                lock.unlock();
+            }
+            try {
+                target.execute(entry.operation);
+                countResult(true);
+                entry.future.complete(null);
+            } catch (IOException | RuntimeException e) {
+                countResult(false);
+                LOGGER.log(Level.FINE, "TX of " + entry.priority + " command failed", e);
+                entry.future.completeExceptionally(isStopped(gen) ? new StoppedException("TX queue stopped", e) : e);
+            }
+        }
+    }
+
+    /**
+     * @return true if the writer of the generation was stopped, an
+     * interrupted write is no fault of the device then.
+     */
+    private boolean isStopped(long gen) {
+        lock.lock();
+        try {
+            return !running || generation != gen;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void countResult(boolean success) {
+        lock.lock();
+        try {
+            if (success) {
+                sent++;
+            } else {
+                failed++;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the number of commands waiting to be written.
+     */
+    public int getDepth() {
+        lock.lock();
+        try {
+            return depth;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getSubmitted() {
+        lock.lock();
+        try {
+            return submitted;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getSent() {
+        lock.lock();
+        try {
+            return sent;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the number of commands, which were dropped because a newer
+     * command with the same coalesce key superseded them.
+     */
+    public long getCoalesced() {
+        lock.lock();
+        try {
+            return coalesced;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getFailed() {
+        lock.lock();
+        try {
+            return failed;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the number of commands, which timed out in the queue.
+     */
+    public long getExpired() {
+        lock.lock();
+        try {
+            return expired;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the mean time in ms a command waited in the queue before it was
+     * written.
+     */
+    public double getMeanWaitMillis() {
+        lock.lock();
+        try {
+            final long written = sent + failed;
+            return written == 0 ? 0.0 : (double) totalWaitNanos / written / TimeUnit.MILLISECONDS.toNanos(1);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the longest time in ms a command waited in the queue before it was
+     * written.
+     */
+    public double getMaxWaitMillis() {
+        lock.lock();
+        try {
+            return (double) maxWaitNanos / TimeUnit.MILLISECONDS.toNanos(1);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public String toString() {
+        lock.lock();
+        try {
+            final long written = sent + failed;
+            return String.format("depth: %d, submitted: %d, sent: %d, failed: %d, expired: %d, superseded: %d, mean wait: %.1f ms, max wait: %.1f ms",
+                    depth, submitted, sent, failed, expired, coalesced,
+                    written == 0 ? 0.0 : (double) totalWaitNanos / written / 1_000_000.0,
+                    maxWaitNanos / 1_000_000.0);
+        } finally {
+            lock.unlock();
+        }
+    }
+}
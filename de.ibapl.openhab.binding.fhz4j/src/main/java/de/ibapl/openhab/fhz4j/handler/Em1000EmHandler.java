@@ -23,8 +23,14 @@ package de.ibapl.openhab.fhz4j.handler;
 
 import de.ibapl.fhz4j.protocol.em.EmMessage;
 import static de.ibapl.openhab.fhz4j.FHZ4JBindingConstants.*;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.ZoneId;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import org.openhab.core.OpenHAB;
 import org.openhab.core.config.core.Configuration;
 import org.openhab.core.library.types.DecimalType;
 import org.openhab.core.thing.Bridge;
@@ -32,22 +38,26 @@ import org.openhab.core.thing.ChannelUID;
 import org.openhab.core.thing.Thing;
 import org.openhab.core.thing.ThingStatus;
 import org.openhab.core.thing.ThingStatusDetail;
-import org.openhab.core.thing.binding.BaseThingHandler;
 import org.openhab.core.types.Command;
 
 /**
  * The {@link Em1000EmHandler} is responsible for handling commands, which are
  * sent to one of the channels.
  *
+ * The energy is summed up by an {@link EmAggregation}, the totals of the
+ * current 5 minutes, hour and day are updated with each message.
+ *
  * @author aploese@gmx.de - Initial contribution
  */
-public class Em1000EmHandler extends BaseThingHandler {
+public class Em1000EmHandler extends FhzThingHandler {
 
     protected ThingStatusDetail owHandlerStatus = ThingStatusDetail.HANDLER_CONFIGURATION_PENDING;
 
     private final Logger logger = Logger.getLogger("d.i.o.f.h.Em1000EmHandler");
 
     private short address;
+    private EmAggregation aggregation;
+    private ScheduledFuture<?> aggregationForceJob;
 
     public Em1000EmHandler(Thing thing) {
         super(thing);
@@ -61,6 +71,7 @@ public class Em1000EmHandler extends BaseThingHandler {
     @Override
     public void initialize() {
         logger.log(Level.FINE, "thing {0} is initializing", this.thing.getUID());
+        initChannels(0);
         Configuration configuration = getConfig();
         try {
             address = ((Number) configuration.get("address")).shortValue();
@@ -69,6 +80,20 @@ public class Em1000EmHandler extends BaseThingHandler {
             return;
         }
 
+        try {
+            aggregation = new EmAggregation(Path.of(OpenHAB.getUserDataFolder(), "fhz4j", "em", getThing().getUID().getId() + EmAggregation.SUFFIX),
+                    ZoneId.systemDefault());
+            aggregationForceJob = scheduler.scheduleWithFixedDelay(aggregation::force, 1, 1, TimeUnit.MINUTES);
+        } catch (IOException ioe) {
+            logger.log(Level.WARNING, "Can't open the EM checkpoint, the buckets are kept in memory only", ioe);
+            try {
+                aggregation = new EmAggregation(null, ZoneId.systemDefault());
+            } catch (IOException e) {
+                //no file, no IOException
+                throw new IllegalStateException(e);
+            }
+        }
+
         Bridge bridge = getBridge();
         if (bridge == null) {
             updateStatus(ThingStatus.OFFLINE, ThingStatusDetail.CONFIGURATION_ERROR, "no bridge assigned");
@@ -81,25 +106,54 @@ public class Em1000EmHandler extends BaseThingHandler {
                 updateStatus(ThingStatus.OFFLINE, ThingStatusDetail.BRIDGE_OFFLINE);
             }
         }
+        restoreStates();
     }
 
     @Override
     public void dispose() {
+        if (aggregationForceJob != null) {
+            aggregationForceJob.cancel(false);
+            aggregationForceJob = null;
+        }
+        if (aggregation != null) {
+            aggregation.close();
+            aggregation = null;
+        }
+        super.dispose();
     }
 
     public short getAddress() {
         return address;
     }
 
+    /**
+     * @return the aggregation or null if the thing is not initialized.
+     */
+    public EmAggregation getAggregation() {
+        return aggregation;
+    }
+
     public void updateFromMsg(EmMessage emMsg) {
         switch (emMsg.emDeviceType) {
             case EM_1000_EM -> {
-                updateState(new ChannelUID(getThing().getUID(), CHANNEL_ENERGY_TOTAL),
+                updateState(channels.get(FhzChannel.ENERGY_TOTAL),
                         new DecimalType(EmMessage.EM_1000_EM_ENERY * emMsg.valueCummulated));
-                updateState(new ChannelUID(getThing().getUID(), CHANNEL_POWER_5MINUTES),
+                updateState(channels.get(FhzChannel.POWER_5MINUTES),
                         new DecimalType(EmMessage.EM_1000_EM_POWER * emMsg.value5Min));
-                updateState(new ChannelUID(getThing().getUID(), CHANNEL_MAX_POWER_5MINUTES),
+                updateState(channels.get(FhzChannel.MAX_POWER_5MINUTES),
                         new DecimalType(EmMessage.EM_1000_EM_POWER * emMsg.value5MinPeak));
+                final EmAggregation a = aggregation;
+                if (a != null) {
+                    a.update(System.currentTimeMillis(), emMsg.valueCummulated & 0xffff, emMsg.value5MinPeak & 0xffff);
+                    updateState(channels.get(FhzChannel.ENERGY_5MINUTES),
+                            new DecimalType(EmMessage.EM_1000_EM_ENERY * a.getEnergy(EmAggregation.Resolution.FIVE_MINUTES, 0)));
+                    updateState(channels.get(FhzChannel.ENERGY_HOUR),
+                            new DecimalType(EmMessage.EM_1000_EM_ENERY * a.getEnergy(EmAggregation.Resolution.HOUR, 0)));
+                    updateState(channels.get(FhzChannel.ENERGY_DAY),
+                            new DecimalType(EmMessage.EM_1000_EM_ENERY * a.getEnergy(EmAggregation.Resolution.DAY, 0)));
+                    updateState(channels.get(FhzChannel.MAX_POWER_DAY),
+                            new DecimalType(EmMessage.EM_1000_EM_POWER * a.getPeakPower(EmAggregation.Resolution.DAY, 0)));
+                }
             }
             // case EM_1000_S:
             // case EM_1000_GZ:
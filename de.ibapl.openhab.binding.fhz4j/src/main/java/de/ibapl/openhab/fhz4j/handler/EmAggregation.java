@@ -0,0 +1,303 @@
+/*
+ * ESH-IBAPL  - OpenHAB bindings for various IB APL drivers, https://github.com/aploese/esh-ibapl/
+ * Copyright (C) 2024-2025, Arne Plöse and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package de.ibapl.openhab.fhz4j.handler;
+
+import de.ibapl.fhz4j.protocol.em.EmMessage;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The {@link EmAggregation} sums up the energy of an EM 1000 EM meter in
+ * local time buckets of 5 minutes, hours and days. The meter only sends its
+ * cumulated 16 bit counter, so the energy of each message is the delta to the
+ * last counter, modulo 2^16.
+ *
+ * Each {@link Resolution} is a ring of primitive arrays, the slots of the
+ * buckets, which were skipped, are cleared when the ring advances.
+ *
+ * After each update the state is written to one of the two records of a
+ * {@link CrcMappedFile}, alternating. A record starts with a sequence number,
+ * on load the valid record with the highest sequence number is used, so a
+ * torn checkpoint only loses the last update.
+ *
+ * @author aploese@gmx.de - Initial contribution
+ */
+public class EmAggregation implements Closeable {
+
+    public enum Resolution {
+        FIVE_MINUTES(TimeUnit.MINUTES.toMillis(5), 288),
+        HOUR(TimeUnit.HOURS.toMillis(1), 168),
+        DAY(TimeUnit.DAYS.toMillis(1), 366);
+
+        final long bucketMillis;
+        final int buckets;
+
+        private Resolution(long bucketMillis, int buckets) {
+            this.bucketMillis = bucketMillis;
+            this.buckets = buckets;
+        }
+    }
+
+    /**
+     * The buckets of one resolution.
+     */
+    private final static class Ring {
+
+        final Resolution resolution;
+        final int[] energy;
+        final short[] peakPower;
+        /**
+         * The local bucket number of the current bucket, -1 if none.
+         */
+        long current = -1;
+
+        Ring(Resolution resolution) {
+            this.resolution = resolution;
+            energy = new int[resolution.buckets];
+            peakPower = new short[resolution.buckets];
+        }
+
+        void add(long localMillis, int deltaEnergy, int power) {
+            final long bucket = Math.floorDiv(localMillis, resolution.bucketMillis);
+            if (bucket > current) {
+                //clear the skipped buckets, at most once around the ring
+                final long from = Math.max(current + 1, bucket - resolution.buckets + 1);
+                for (long b = from; b <= bucket; b++) {
+                    final int i = slot(b);
+                    energy[i] = 0;
+                    peakPower[i] = 0;
+                }
+                current = bucket;
+            }
+            //if the clock went back, the energy is added to the current bucket
+            final int i = slot(current);
+            energy[i] += deltaEnergy;
+            if (power > (peakPower[i] & 0xffff)) {
+                peakPower[i] = (short) power;
+            }
+        }
+
+        int slot(long bucket) {
+            return (int) Math.floorMod(bucket, (long) resolution.buckets);
+        }
+
+        int size() {
+            return 8 + resolution.buckets * (4 + 2);
+        }
+
+        void write(ByteBuffer bb) {
+            bb.putLong(current);
+            for (int i = 0; i < energy.length; i++) {
+                bb.putInt(energy[i]);
+                bb.putShort(peakPower[i]);
+            }
+        }
+
+        void read(ByteBuffer bb) {
+            current = bb.getLong();
+            for (int i = 0; i < energy.length; i++) {
+                energy[i] = bb.getInt();
+                peakPower[i] = bb.getShort();
+            }
+        }
+    }
+
+    static final int MAGIC = 0x4645414D;
+    static final short VERSION = 2;
+    static final int AREAS = 2;
+    static final String SUFFIX = ".em";
+    /**
+     * A larger counter delta is taken as a reset of the meter.
+     */
+    private final static int MAX_COUNTER_DELTA = 0x8000;
+
+    private final static Logger LOGGER = Logger.getLogger("d.i.o.f.h.EmAggregation");
+
+    private final Ring[] rings;
+    private final ZoneId zoneId;
+    private final int payloadSize;
+    private final byte[] payload;
+    private CrcMappedFile mapped;
+    private long sequence;
+    /**
+     * The last counter of the meter, -1 if unknown.
+     */
+    private int lastCounter = -1;
+    private long resets;
+
+    /**
+     * @param file the checkpoint file or null to keep the buckets only in
+     * memory.
+     * @param zoneId the zone of the days.
+     */
+    EmAggregation(Path file, ZoneId zoneId) throws IOException {
+        this.zoneId = zoneId;
+        final Resolution[] resolutions = Resolution.values();
+        rings = new Ring[resolutions.length];
+        int size = 8 + 4 + 8;
+        for (int i = 0; i < resolutions.length; i++) {
+            rings[i] = new Ring(resolutions[i]);
+            size += rings[i].size();
+        }
+        payloadSize = size;
+        payload = new byte[payloadSize];
+        if (file != null) {
+            mapped = new CrcMappedFile(file, MAGIC, VERSION, CrcMappedFile.RECORD_HEADER_SIZE + payloadSize, AREAS);
+            if (!mapped.isCreated()) {
+                load();
+            }
+        }
+    }
+
+    private void load() {
+        int best = -1;
+        long bestSequence = 0;
+        for (int area = 0; area < AREAS; area++) {
+            if (mapped.read(area, payload) != payloadSize) {
+                continue;
+            }
+            final long seq = ByteBuffer.wrap(payload).getLong();
+            if (best < 0 || seq > bestSequence) {
+                best = area;
+                bestSequence = seq;
+            }
+        }
+        if (best < 0) {
+            return;
+        }
+        mapped.read(best, payload);
+        final ByteBuffer bb = ByteBuffer.wrap(payload);
+        sequence = bb.getLong();
+        lastCounter = bb.getInt();
+        resets = bb.getLong();
+        for (Ring ring : rings) {
+            ring.read(bb);
+        }
+    }
+
+    private void checkpoint() {
+        if (mapped == null) {
+            return;
+        }
+        sequence++;
+        final ByteBuffer bb = ByteBuffer.wrap(payload);
+        bb.putLong(sequence);
+        bb.putInt(lastCounter);
+        bb.putLong(resets);
+        for (Ring ring : rings) {
+            ring.write(bb);
+        }
+        mapped.write((int) (sequence % AREAS), payload, payloadSize);
+    }
+
+    /**
+     * @see CrcMappedFile#force()
+     */
+    synchronized void force() {
+        if (mapped != null) {
+            mapped.force();
+        }
+    }
+
+    /**
+     * Add a message of the meter.
+     *
+     * @param epochMillis the time the message was received.
+     * @param counter the cumulated energy counter, unsigned 16 bit.
+     * @param peakPower the peak power of the last 5 minutes, unsigned 16
+     * bit.
+     */
+    synchronized void update(long epochMillis, int counter, int peakPower) {
+        int delta;
+        if (lastCounter < 0) {
+            //nothing to compare with
+            delta = 0;
+        } else {
+            delta = (counter - lastCounter) & 0xffff;
+            if (delta > MAX_COUNTER_DELTA) {
+                //the meter started again at 0
+                resets++;
+                delta = counter;
+            }
+        }
+        lastCounter = counter;
+        final long localMillis = epochMillis + zoneId.getRules().getOffset(Instant.ofEpochMilli(epochMillis)).getTotalSeconds() * 1000L;
+        for (Ring ring : rings) {
+            ring.add(localMillis, delta, peakPower);
+        }
+        checkpoint();
+    }
+
+    /**
+     * @param resolution the resolution.
+     * @param bucketsAgo 0 for the bucket of the last update.
+     * @return the energy in counter units or 0 if the bucket is not in the
+     * ring.
+     */
+    synchronized long getEnergy(Resolution resolution, int bucketsAgo) {
+        final Ring ring = rings[resolution.ordinal()];
+        if (ring.current < 0 || bucketsAgo < 0 || bucketsAgo >= resolution.buckets) {
+            return 0;
+        }
+        return ring.energy[ring.slot(ring.current - bucketsAgo)];
+    }
+
+    /**
+     * @param resolution the resolution.
+     * @param bucketsAgo 0 for the bucket of the last update.
+     * @return the highest peak power in counter units or 0 if the bucket is
+     * not in the ring.
+     */
+    synchronized int getPeakPower(Resolution resolution, int bucketsAgo) {
+        final Ring ring = rings[resolution.ordinal()];
+        if (ring.current < 0 || bucketsAgo < 0 || bucketsAgo >= resolution.buckets) {
+            return 0;
+        }
+        return ring.peakPower[ring.slot(ring.current - bucketsAgo)] & 0xffff;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (mapped != null) {
+            try {
+                mapped.close();
+            } catch (IOException ioe) {
+                LOGGER.log(Level.WARNING, "Could not close EM checkpoint", ioe);
+            }
+            mapped = null;
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("hour: %.3f kWh, day: %.3f kWh, day before: %.3f kWh, peak power day: %.2f kW, counter resets: %d",
+                EmMessage.EM_1000_EM_ENERY * getEnergy(Resolution.HOUR, 0), EmMessage.EM_1000_EM_ENERY * getEnergy(Resolution.DAY, 0),
+                EmMessage.EM_1000_EM_ENERY * getEnergy(Resolution.DAY, 1), EmMessage.EM_1000_EM_POWER * getPeakPower(Resolution.DAY, 0), resets);
+    }
+}
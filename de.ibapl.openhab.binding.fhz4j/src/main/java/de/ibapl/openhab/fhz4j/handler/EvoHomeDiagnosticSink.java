@@ -0,0 +1,288 @@
+/*
+ * ESH-IBAPL  - OpenHAB bindings for various IB APL drivers, https://github.com/aploese/esh-ibapl/
+ * Copyright (C) 2024-2025, Arne Plöse and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package de.ibapl.openhab.fhz4j.handler;
+
+import de.ibapl.fhz4j.protocol.evohome.EvoHomeDeviceMessage;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The {@link EvoHomeDiagnosticSink} writes the EvoHome messages, which are not
+ * mapped to channels (ZONE_NAME, SYSTEM_SYNCHRONIZATION, ACTUATOR_SYNC ...) to
+ * a log file. The receive thread only enqueues the message, a single writer
+ * thread drains the queue in batches, formats the records and writes them.
+ *
+ * A message which is equal to the last one of the same command and device is
+ * not written, instead the number of repeats is written once a different
+ * message arrives. The file is rotated if it exceeds the configured size.
+ *
+ * @author aploese@gmx.de - Initial contribution
+ */
+public class EvoHomeDiagnosticSink implements Closeable {
+
+    private record Entry(long millis, EvoHomeDeviceMessage msg) {
+
+    }
+
+    private static class LastMessage {
+
+        EvoHomeDeviceMessage msg;
+        long firstMillis;
+        long lastMillis;
+        int repeats;
+    }
+
+    static final String SUFFIX = ".log";
+
+    private final static Logger LOGGER = Logger.getLogger("d.i.o.f.h.EvoHomeDiagnosticSink");
+    private final static DateTimeFormatter TIMESTAMP = DateTimeFormatter.ISO_INSTANT;
+    private final static long DRAIN_INTERVAL_NS = TimeUnit.MILLISECONDS.toNanos(500);
+
+    private final ConcurrentLinkedQueue<Entry> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final int capacity;
+    private final Path file;
+    private final long maxFileSize;
+    private final int maxFiles;
+    private final LongAdder dropped = new LongAdder();
+    private volatile boolean running;
+    private Thread writerThread;
+
+    //Only accessed by the writer thread
+    private final Map<Long, LastMessage> lastMessages = new HashMap<>();
+    private final StringBuilder line = new StringBuilder(256);
+    private BufferedWriter out;
+    private long fileSize;
+
+    //Statistics, written by the writer thread
+    private volatile long written;
+    private volatile long repeatsSuppressed;
+
+    /**
+     * @param directory where to put the log files.
+     * @param name the name of the log file without suffix.
+     * @param capacity the number of messages which may be queued, further
+     * messages are dropped.
+     * @param maxFileSize the size in bytes at which the file is rotated.
+     * @param maxFiles the number of rotated files to keep.
+     */
+    EvoHomeDiagnosticSink(Path directory, String name, int capacity, long maxFileSize, int maxFiles) throws IOException {
+        Files.createDirectories(directory);
+        this.file = directory.resolve(name + SUFFIX);
+        this.capacity = capacity;
+        this.maxFileSize = maxFileSize;
+        this.maxFiles = Math.max(1, maxFiles);
+    }
+
+    synchronized void start(String name) {
+        if (running) {
+            return;
+        }
+        running = true;
+        writerThread = new Thread(this::run, "fhz4j-evohome-diag-" + name);
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    /**
+     * Called from the receive thread, never blocks.
+     */
+    void offer(EvoHomeDeviceMessage msg) {
+        if (!running) {
+            return;
+        }
+        if (queued.incrementAndGet() > capacity) {
+            queued.decrementAndGet();
+            dropped.increment();
+            return;
+        }
+        queue.offer(new Entry(System.currentTimeMillis(), msg));
+    }
+
+    private void run() {
+        while (true) {
+            Entry entry;
+            boolean any = false;
+            while ((entry = queue.poll()) != null) {
+                queued.decrementAndGet();
+                write(entry);
+                any = true;
+            }
+            if (any) {
+                flush();
+            }
+            if (!running) {
+                return;
+            }
+            LockSupport.parkNanos(DRAIN_INTERVAL_NS);
+        }
+    }
+
+    private void write(Entry entry) {
+        final EvoHomeDeviceMessage msg = entry.msg;
+        final long key = ((long) msg.command.ordinal() << 32) | (msg.deviceId1.id & 0xffffffffL);
+        LastMessage last = lastMessages.get(key);
+        if (last == null) {
+            last = new LastMessage();
+            lastMessages.put(key, last);
+        } else if (last.msg.equals(msg)) {
+            last.repeats++;
+            last.lastMillis = entry.millis;
+            repeatsSuppressed++;
+            return;
+        } else if (last.repeats > 0) {
+            writeRepeats(last);
+        }
+        last.msg = msg;
+        last.firstMillis = entry.millis;
+        last.lastMillis = entry.millis;
+        last.repeats = 0;
+        line.setLength(0);
+        line.append(TIMESTAMP.format(Instant.ofEpochMilli(entry.millis))).append('\t').append(msg.command).append('\t').append(msg);
+        writeLine();
+    }
+
+    private void writeRepeats(LastMessage last) {
+        line.setLength(0);
+        line.append(TIMESTAMP.format(Instant.ofEpochMilli(last.lastMillis))).append('\t').append(last.msg.command).append('\t')
+                .append("repeated ").append(last.repeats).append(" times since ").append(TIMESTAMP.format(Instant.ofEpochMilli(last.firstMillis)));
+        writeLine();
+    }
+
+    private void writeLine() {
+        line.append('\n');
+        try {
+            if (out == null) {
+                open();
+            } else if (fileSize + line.length() > maxFileSize) {
+                rotate();
+            }
+            out.append(line);
+            fileSize += line.length();
+            written++;
+        } catch (IOException ioe) {
+            LOGGER.log(Level.SEVERE, "Could not write EvoHome diagnostics", ioe);
+            closeFile();
+        }
+    }
+
+    private void open() throws IOException {
+        out = Files.newBufferedWriter(file, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        fileSize = Files.size(file);
+    }
+
+    /**
+     * Move file.n-1 to file.n ... file to file.1 and start a new file.
+     */
+    private void rotate() throws IOException {
+        closeFile();
+        final String name = file.getFileName().toString();
+        Files.deleteIfExists(file.resolveSibling(name + '.' + maxFiles));
+        for (int i = maxFiles - 1; i >= 1; i--) {
+            final Path rotated = file.resolveSibling(name + '.' + i);
+            if (Files.exists(rotated)) {
+                Files.move(rotated, file.resolveSibling(name + '.' + (i + 1)), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        Files.move(file, file.resolveSibling(name + ".1"), StandardCopyOption.REPLACE_EXISTING);
+        open();
+    }
+
+    private void flush() {
+        if (out != null) {
+            try {
+                out.flush();
+            } catch (IOException ioe) {
+                LOGGER.log(Level.SEVERE, "Could not write EvoHome diagnostics", ioe);
+                closeFile();
+            }
+        }
+    }
+
+    private void closeFile() {
+        if (out != null) {
+            try {
+                out.close();
+            } catch (IOException ioe) {
+                LOGGER.log(Level.WARNING, "Could not close EvoHome diagnostics", ioe);
+            }
+            out = null;
+        }
+    }
+
+    /**
+     * Stop the writer thread, the queued messages and pending repeats are
+     * written before the file is closed.
+     */
+    @Override
+    public void close() {
+        final Thread t;
+        synchronized (this) {
+            running = false;
+            t = writerThread;
+            writerThread = null;
+        }
+        if (t == null) {
+            return;
+        }
+        LockSupport.unpark(t);
+        try {
+            t.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        if (!t.isAlive()) {
+            for (LastMessage last : lastMessages.values()) {
+                if (last.repeats > 0) {
+                    writeRepeats(last);
+                }
+            }
+            lastMessages.clear();
+            flush();
+            closeFile();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("queued: %d, written: %d, repeats suppressed: %d, dropped: %d", queued.get(), written, repeatsSuppressed,
+                dropped.sum());
+    }
+}
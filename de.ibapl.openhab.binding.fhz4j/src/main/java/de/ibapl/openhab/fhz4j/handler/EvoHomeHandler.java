@@ -53,16 +53,6 @@ import de.ibapl.fhz4j.protocol.evohome.messages.ZoneNameRequestMessage;
 import de.ibapl.fhz4j.protocol.evohome.messages.ZoneSetpointOverrideInformationMessage;
 import de.ibapl.fhz4j.protocol.evohome.messages.ZoneSetpointRequestMessage;
 import static de.ibapl.openhab.fhz4j.FHZ4JBindingConstants.*;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
-import java.io.IOException;
-import java.io.PrintStream;
-import java.time.Duration;
-import java.time.Instant;
-import java.time.format.DateTimeFormatter;
-import java.util.EnumMap;
-import java.util.Map;
-import java.util.Objects;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.openhab.core.config.core.Configuration;
@@ -74,7 +64,6 @@ import org.openhab.core.thing.ChannelUID;
 import org.openhab.core.thing.Thing;
 import org.openhab.core.thing.ThingStatus;
 import org.openhab.core.thing.ThingStatusDetail;
-import org.openhab.core.thing.binding.BaseThingHandler;
 import org.openhab.core.types.Command;
 import org.openhab.core.types.RefreshType;
 
@@ -84,68 +73,36 @@ import org.openhab.core.types.RefreshType;
  *
  * @author aploese@gmx.de - Initial contribution
  */
-public class EvoHomeHandler extends BaseThingHandler {
+public class EvoHomeHandler extends FhzThingHandler {
 
-    static class TestLogger {
-
-        private final static DateTimeFormatter dateTimeFormatter = DateTimeFormatter.ISO_INSTANT;
-        private final PrintStream TEST_LOG_OS;
-        private Instant lastTS;
-        private EvoHomeDeviceMessage lastMsg;
-
-        public TestLogger(EvoHomeCommand cmd) {
-            try {
-                TEST_LOG_OS = new PrintStream(new FileOutputStream("EVO_HOME__" + cmd + "__" + DateTimeFormatter.ISO_INSTANT.format(Instant.now()) + ".log.txt"), false);
-            } catch (FileNotFoundException ex) {
-                LOGGER.log(Level.SEVERE, null, ex);
-                throw new RuntimeException(ex);
-            }
-        }
-
-        public void print(EvoHomeDeviceMessage msg) {
-            final Instant now = Instant.now();
-            if (lastTS == null) {
-                lastTS = now;
-            }
-            if (Objects.equals(lastMsg, msg)) {
-                TEST_LOG_OS.append('@' + dateTimeFormatter.format(now) + "\t" + Duration.between(lastTS, now).toString() + '\t').println("\tSame message repeated");
-            } else {
-                TEST_LOG_OS.append('@' + dateTimeFormatter.format(now) + "\t" + Duration.between(lastTS, now).toString() + '\t').append("\t").println(msg);
-                //only change lastMsg if we find any differences ...
-                lastMsg = msg;
-            }
-            lastTS = Instant.now();
-        }
-
-    }
-
-    private final static Map<EvoHomeCommand, TestLogger> loggers = new EnumMap(EvoHomeCommand.class);
-
-    private static void logEvoHomeMsg(EvoHomeDeviceMessage msg) {
-        TestLogger logger = loggers.get(msg.command);
-        if (logger == null) {
-            synchronized (loggers) {
-                logger = loggers.get(msg.command);
-                if (logger == null) {
-                    logger = new TestLogger(msg.command);
-                    loggers.put(msg.command, logger);
-                }
-            }
-        }
-        logger.print(msg);
-    }
-
-    //TODO END TEST unknown packages
     protected ThingStatusDetail evoHomeRadiatorHandlerStatus = ThingStatusDetail.HANDLER_CONFIGURATION_PENDING;
 
     private final static Logger LOGGER = Logger.getLogger("d.i.o.f.h.EvoHomeHandler");
 
     private int deviceId;
+    /**
+     * Set by the bridge, null if the EvoHome diagnostics are disabled.
+     */
+    private volatile EvoHomeDiagnosticSink diagnosticSink;
 
     public EvoHomeHandler(Thing thing) {
         super(thing);
     }
 
+    void setDiagnosticSink(EvoHomeDiagnosticSink diagnosticSink) {
+        this.diagnosticSink = diagnosticSink;
+    }
+
+    /**
+     * Log a message, which is not mapped to a channel.
+     */
+    private void logEvoHomeMsg(EvoHomeDeviceMessage msg) {
+        final EvoHomeDiagnosticSink sink = diagnosticSink;
+        if (sink != null) {
+            sink.offer(msg);
+        }
+    }
+
     private byte getZoneId(ChannelUID channelUID) {
         final String cuid = channelUID.getId();
         final int length = cuid.length();
@@ -154,26 +111,26 @@ public class EvoHomeHandler extends BaseThingHandler {
 
     @Override
     public void handleCommand(ChannelUID channelUID, Command command) {
-        try {
-            if (channelUID.getId().startsWith(CHANNEL_DESIRED_TEMPERATURE)) {
-                final byte zoneId = getZoneId(channelUID);
-                if (command instanceof DecimalType decimalType) {
-                    ((SpswBridgeHandler) (getBridge().getHandler())).sendEvoHomeZoneSetpointPermanent(new DeviceId(deviceId),
-                            new ZoneTemperature(zoneId, decimalType.toBigDecimal()));
-                } else if (command instanceof RefreshType) {
-                }
-            } else {
-                LOGGER.log(Level.SEVERE, "Handle command {0} for unknown EvoHome settable channelUID: {1} ", new Object[]{command, channelUID});
+        if (channelUID.getId().startsWith(CHANNEL_DESIRED_TEMPERATURE)) {
+            final byte zoneId = getZoneId(channelUID);
+            if (command instanceof DecimalType decimalType) {
+                commandResult(((SpswBridgeHandler) (getBridge().getHandler())).sendEvoHomeZoneSetpointPermanent(new DeviceId(deviceId),
+                        new ZoneTemperature(zoneId, decimalType.toBigDecimal())), "Set " + channelUID.getId() + " to " + command);
+            } else if (command instanceof RefreshType) {
             }
-        } catch (IOException ioe) {
-            LOGGER.log(Level.SEVERE, "IO EX: command {0} channelUID {1}", new Object[]{command, channelUID});
-            //TODO set state ???
+        } else {
+            LOGGER.log(Level.SEVERE, "Handle command {0} for unknown EvoHome settable channelUID: {1} ", new Object[]{command, channelUID});
         }
     }
 
     @Override
     public void initialize() {
         LOGGER.log(Level.FINE, "thing {0} is initializing", this.thing.getUID());
+        if (ThingTypes.MULTI_ZONE_CONTROLLER_EVO_HOME.thingTypeUID.equals(getThing().getThingTypeUID())) {
+            initChannels(ChannelTable.EVO_HOME_ZONES);
+        } else {
+            initChannels(0);
+        }
         Configuration configuration = getConfig();
         try {
             deviceId = ((Number) configuration.get("deviceId")).intValue();
@@ -195,10 +152,12 @@ public class EvoHomeHandler extends BaseThingHandler {
                 updateStatus(ThingStatus.OFFLINE, ThingStatusDetail.BRIDGE_OFFLINE);
             }
         }
+        restoreStates();
     }
 
     @Override
     public void dispose() {
+        super.dispose();
     }
 
     public int getDeviceId() {
@@ -210,10 +169,10 @@ public class EvoHomeHandler extends BaseThingHandler {
             case ZONE_HEAT_DEMAND -> {
                 final ZoneHeatDemandInformationMessage zhdim = (ZoneHeatDemandInformationMessage) msg;
                 final float valvePos = zhdim.calcValvePosition();
-                updateState(new ChannelUID(getThing().getUID(), CHANNEL_VALVE_POSITION),
+                updateState(channels.get(FhzChannel.VALVE_POSITION),
                         new DecimalType(valvePos));
                 final short heatDeamnd = zhdim.heatDemand;
-                updateState(new ChannelUID(getThing().getUID(), CHANNEL_RADIATOR_HEAT_DEMAND),
+                updateState(channels.get(FhzChannel.RADIATOR_HEAT_DEMAND),
                         new DecimalType(heatDeamnd));
             }
             case ZONE_TEMPERATURE -> {
@@ -221,11 +180,11 @@ public class EvoHomeHandler extends BaseThingHandler {
                 final AbstractZoneTemperaturePayloadMessage<?> m = (AbstractZoneTemperaturePayloadMessage) msg;
                 switch (m.deviceId1.type) {
                     case RADIATOR_CONTROLLER, SINGLE_ZONE_THERMOSTAT -> //TODO ZoneID ???
-                        updateState(new ChannelUID(getThing().getUID(), CHANNEL_TEMPERATURE_MEASURED),
+                        updateState(channels.get(FhzChannel.TEMPERATURE_MEASURED),
                                 new DecimalType(m.zoneTemperatures.get(0).temperature));
                     case MULTI_ZONE_CONTROLLER -> {
                         for (ZoneTemperature zoneTemperature : m.zoneTemperatures) {
-                            updateState(new ChannelUID(getThing().getUID(), String.format(_XX_TEMPLATE, CHANNEL_TEMPERATURE_MEASURED, zoneTemperature.zone)),
+                            updateState(channels.get(FhzChannel.TEMPERATURE_MEASURED, zoneTemperature.zone),
                                     new DecimalType(zoneTemperature.temperature));
                         }
                     }
@@ -239,11 +198,11 @@ public class EvoHomeHandler extends BaseThingHandler {
                     //From RadiatorController and MultZoneController
                     switch (azspm.deviceId1.type) {
                         case RADIATOR_CONTROLLER, SINGLE_ZONE_THERMOSTAT -> //TODO ZoneID ???
-                            updateState(new ChannelUID(getThing().getUID(), CHANNEL_DESIRED_TEMPERATURE),
+                            updateState(channels.get(FhzChannel.DESIRED_TEMPERATURE),
                                     new DecimalType(azspm.zoneTemperatures.get(0).temperature));
                         case MULTI_ZONE_CONTROLLER -> {
                             for (ZoneTemperature zoneTemperature : azspm.zoneTemperatures) {
-                                updateState(new ChannelUID(getThing().getUID(), String.format(_XX_TEMPLATE, CHANNEL_DESIRED_TEMPERATURE, zoneTemperature.zone)),
+                                updateState(channels.get(FhzChannel.DESIRED_TEMPERATURE, zoneTemperature.zone),
                                         new DecimalType(zoneTemperature.temperature));
                             }
                         }
@@ -261,24 +220,24 @@ public class EvoHomeHandler extends BaseThingHandler {
                 if (msg instanceof final ZoneConfigPayloadMessage<?> zpm) {
                     switch (zpm.deviceId1.type) {
                         case RADIATOR_CONTROLLER, SINGLE_ZONE_THERMOSTAT -> {
-                            updateState(new ChannelUID(getThing().getUID(), CHANNEL_MIN_TEMP),
+                            updateState(channels.get(FhzChannel.MIN_TEMP),
                                     new DecimalType(zpm.zones.get(0).minTemperature));
-                            updateState(new ChannelUID(getThing().getUID(), CHANNEL_MAX_TEMP),
+                            updateState(channels.get(FhzChannel.MAX_TEMP),
                                     new DecimalType(zpm.zones.get(0).maxTemperature));
-                            updateState(new ChannelUID(getThing().getUID(), CHANNEL_OPERATION_LOCK),
+                            updateState(channels.get(FhzChannel.OPERATION_LOCK),
                                     zpm.zones.get(0).operationLock ? OnOffType.ON : OnOffType.OFF);
-                            updateState(new ChannelUID(getThing().getUID(), CHANNEL_WINDOW_FUNCTION),
+                            updateState(channels.get(FhzChannel.WINDOW_FUNCTION),
                                     zpm.zones.get(0).windowFunction ? OnOffType.ON : OnOffType.OFF);
                         }
                         case MULTI_ZONE_CONTROLLER -> {
                             for (ZoneConfigPayloadMessage.ZoneParams zoneParam : zpm.zones) {
-                                updateState(new ChannelUID(getThing().getUID(), String.format(_XX_TEMPLATE, CHANNEL_MIN_TEMP, zoneParam.zoneId)),
+                                updateState(channels.get(FhzChannel.MIN_TEMP, zoneParam.zoneId),
                                         new DecimalType(zoneParam.minTemperature));
-                                updateState(new ChannelUID(getThing().getUID(), String.format(_XX_TEMPLATE, CHANNEL_MAX_TEMP, zoneParam.zoneId)),
+                                updateState(channels.get(FhzChannel.MAX_TEMP, zoneParam.zoneId),
                                         new DecimalType(zoneParam.maxTemperature));
-                                updateState(new ChannelUID(getThing().getUID(), String.format(_XX_TEMPLATE, CHANNEL_OPERATION_LOCK, zoneParam.zoneId)),
+                                updateState(channels.get(FhzChannel.OPERATION_LOCK, zoneParam.zoneId),
                                         zoneParam.operationLock ? OnOffType.ON : OnOffType.OFF);
-                                updateState(new ChannelUID(getThing().getUID(), String.format(_XX_TEMPLATE, CHANNEL_WINDOW_FUNCTION, zoneParam.zoneId)),
+                                updateState(channels.get(FhzChannel.WINDOW_FUNCTION, zoneParam.zoneId),
                                         zoneParam.windowFunction ? OnOffType.ON : OnOffType.OFF);
                             }
                         }
@@ -350,9 +309,9 @@ public class EvoHomeHandler extends BaseThingHandler {
                             final OnOffType value;
                             switch (dbsim.unknown0) {
                                 case 0 ->
-                                    updateState(new ChannelUID(getThing().getUID(), CHANNEL_BATT_LOW), OnOffType.OFF);
+                                    updateState(channels.get(FhzChannel.BATT_LOW), OnOffType.OFF);
                                 case (byte) 0x01 ->
-                                    updateState(new ChannelUID(getThing().getUID(), CHANNEL_BATT_LOW), OnOffType.ON);
+                                    updateState(channels.get(FhzChannel.BATT_LOW), OnOffType.ON);
                                 default ->
                                     LOGGER.log(Level.SEVERE, "Can''t handle DEVICE_BATTERY_STATUS (unknown value for unknown0) message: {0} ", msg);
                             }
@@ -397,9 +356,9 @@ public class EvoHomeHandler extends BaseThingHandler {
                             final OpenClosedType value;
                             switch (wsim.unknown0) {
                                 case 0 ->
-                                    updateState(new ChannelUID(getThing().getUID(), CHANNEL_WINDOW_OPEN), OpenClosedType.CLOSED);
+                                    updateState(channels.get(FhzChannel.WINDOW_OPEN), OpenClosedType.CLOSED);
                                 case (short) 0xc800 ->
-                                    updateState(new ChannelUID(getThing().getUID(), CHANNEL_WINDOW_OPEN), OpenClosedType.OPEN);
+                                    updateState(channels.get(FhzChannel.WINDOW_OPEN), OpenClosedType.OPEN);
                                 default ->
                                     LOGGER.log(Level.SEVERE, "Can''t handle WINDOW_SENSOR (unknown value for unknown0) message: {0} ", msg);
                             }
@@ -407,10 +366,10 @@ public class EvoHomeHandler extends BaseThingHandler {
                         case MULTI_ZONE_CONTROLLER -> {
                             switch (wsim.unknown0) {
                                 case 0 ->
-                                    updateState(new ChannelUID(getThing().getUID(), String.format(_XX_TEMPLATE, CHANNEL_WINDOW_OPEN, wsim.zoneId)),
+                                    updateState(channels.get(FhzChannel.WINDOW_OPEN, wsim.zoneId),
                                             OpenClosedType.CLOSED);
                                 case (short) 0xc800 ->
-                                    updateState(new ChannelUID(getThing().getUID(), String.format(_XX_TEMPLATE, CHANNEL_WINDOW_OPEN, wsim.zoneId)),
+                                    updateState(channels.get(FhzChannel.WINDOW_OPEN, wsim.zoneId),
                                             OpenClosedType.OPEN);
                                 default ->
                                     LOGGER.log(Level.SEVERE, "Can''t handle WINDOW_SENSOR (unknown value for unknown0) message: {0} ", msg);
@@ -34,7 +34,6 @@ import org.openhab.core.thing.ChannelUID;
 import org.openhab.core.thing.Thing;
 import org.openhab.core.thing.ThingStatus;
 import org.openhab.core.thing.ThingStatusDetail;
-import org.openhab.core.thing.binding.BaseThingHandler;
 import org.openhab.core.types.Command;
 
 /**
@@ -43,7 +42,7 @@ import org.openhab.core.types.Command;
  *
  * @author aploese@gmx.de - Initial contribution
  */
-public class Fht80TfHandler extends BaseThingHandler {
+public class Fht80TfHandler extends FhzThingHandler {
 
     protected ThingStatusDetail fht80TfHandlerStatus = ThingStatusDetail.HANDLER_CONFIGURATION_PENDING;
 
@@ -68,6 +67,7 @@ public class Fht80TfHandler extends BaseThingHandler {
     @Override
     public void initialize() {
         LOGGER.log(Level.FINE, "thing {0} is initializing", this.thing.getUID());
+        initChannels(0);
         Configuration configuration = getConfig();
         try {
             address = Integer.parseUnsignedInt((String) configuration.get("address"), 16);
@@ -89,10 +89,12 @@ public class Fht80TfHandler extends BaseThingHandler {
                 updateStatus(ThingStatus.OFFLINE, ThingStatusDetail.BRIDGE_OFFLINE);
             }
         }
+        restoreStates();
     }
 
     @Override
     public void dispose() {
+        super.dispose();
     }
 
     public int getAddress() {
@@ -101,34 +103,34 @@ public class Fht80TfHandler extends BaseThingHandler {
 
     public void updateFromFht80TfMsg(Fht80TfMessage fht80TfMsg) {
         if (fht80TfMsg.lowBattery) {
-            updateState(new ChannelUID(getThing().getUID(), CHANNEL_BATT_LOW), OnOffType.ON);
+            updateState(channels.get(FhzChannel.BATT_LOW), OnOffType.ON);
         } else {
-            updateState(new ChannelUID(getThing().getUID(), CHANNEL_BATT_LOW), OnOffType.OFF);
+            updateState(channels.get(FhzChannel.BATT_LOW), OnOffType.OFF);
         }
         switch (fht80TfMsg.value) {
             case WINDOW_INTERNAL_OPEN -> {
-                updateState(new ChannelUID(getThing().getUID(), CHANNEL_WINDOW_INTERNAL), OpenClosedType.OPEN);
+                updateState(channels.get(FhzChannel.WINDOW_INTERNAL), OpenClosedType.OPEN);
                 if (LOGGER.isLoggable(Level.FINER)) {
                     LOGGER.log(Level.FINER, String.format("update FHT80 TF %s channel: {%s}", fht80TfMsg, getThing().getUID()));
                 }
             }
             case WINDOW_INTERNAL_CLOSED -> {
-                updateState(new ChannelUID(getThing().getUID(), CHANNEL_WINDOW_INTERNAL), OpenClosedType.CLOSED);
+                updateState(channels.get(FhzChannel.WINDOW_INTERNAL), OpenClosedType.CLOSED);
                 if (LOGGER.isLoggable(Level.FINER)) {
                     LOGGER.log(Level.FINER, String.format("update FHT80 TF %s channel: {%s}", fht80TfMsg, getThing().getUID()));
                 }
             }
             case WINDOW_EXTERNAL_OPEN -> {
-                updateState(new ChannelUID(getThing().getUID(), CHANNEL_WINDOW_EXTERNAL), OpenClosedType.OPEN);
+                updateState(channels.get(FhzChannel.WINDOW_EXTERNAL), OpenClosedType.OPEN);
             }
             case WINDOW_EXTERNAL_CLOSED -> {
-                updateState(new ChannelUID(getThing().getUID(), CHANNEL_WINDOW_EXTERNAL), OpenClosedType.CLOSED);
+                updateState(channels.get(FhzChannel.WINDOW_EXTERNAL), OpenClosedType.CLOSED);
             }
             case SYNC -> {
-//                    updateState(new ChannelUID(getThing().getUID(), CHANNEL_TF_SYNC), OnOffType.ON);
+//                    updateState(channels.get(FhzChannel.TF_SYNC), OnOffType.ON);
             }
             case FINISH -> {
-//                    updateState(new ChannelUID(getThing().getUID(), CHANNEL_TF_SYNC), OnOffType.OFF);
+//                    updateState(channels.get(FhzChannel.TF_SYNC), OnOffType.OFF);
             }
             default -> {
             }
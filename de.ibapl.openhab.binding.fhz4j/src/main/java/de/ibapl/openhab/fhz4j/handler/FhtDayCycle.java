@@ -0,0 +1,114 @@
+/*
+ * ESH-IBAPL  - OpenHAB bindings for various IB APL drivers, https://github.com/aploese/esh-ibapl/
+ * Copyright (C) 2024-2025, Arne Plöse and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package de.ibapl.openhab.fhz4j.handler;
+
+import de.ibapl.fhz4j.protocol.fht.FhtTimesMessage;
+import java.time.LocalTime;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * The {@link FhtDayCycle} holds the switch times of one day of a FHT80b. A
+ * switch time of null is not set, its text form is "XX:XX".
+ *
+ * @author aploese@gmx.de - Initial contribution
+ */
+record FhtDayCycle(LocalTime from1, LocalTime to1, LocalTime from2, LocalTime to2) {
+
+    private final static DateTimeFormatter TIME_FORMATTER = DateTimeFormatter.ofPattern("HH:mm");
+    private final static String TIME_NOT_SET = "XX:XX";
+    final static FhtDayCycle NOT_SET = new FhtDayCycle(null, null, null, null);
+
+    static FhtDayCycle of(FhtTimesMessage timesMessage) {
+        return new FhtDayCycle(timesMessage.timeFrom1, timesMessage.timeTo1, timesMessage.timeFrom2, timesMessage.timeTo2);
+    }
+
+    /**
+     * @param value the switch times, format: "XX:XX-XX:XX XX:XX-XX:XX".
+     */
+    static FhtDayCycle parse(String value) {
+        final String v = value.trim();
+        if (v.length() != 23) {
+            throw new IllegalArgumentException("Switch times must look like \"XX:XX-XX:XX XX:XX-XX:XX\", but was: \"" + value + "\"");
+        }
+        return new FhtDayCycle(parseTime(v.substring(0, 5)), parseTime(v.substring(6, 11)), parseTime(v.substring(12, 17)),
+                parseTime(v.substring(18, 23)));
+    }
+
+    /**
+     * @param value the switch times of the days, Monday first, separated by
+     * ';'.
+     * @return the 7 days, Monday first.
+     */
+    static FhtDayCycle[] parseWeek(String value) {
+        final String[] days = value.split(";");
+        if (days.length != 7) {
+            throw new IllegalArgumentException("Week program needs 7 days, but has " + days.length + ": \"" + value + "\"");
+        }
+        final FhtDayCycle[] result = new FhtDayCycle[7];
+        for (int i = 0; i < 7; i++) {
+            result[i] = parse(days[i]);
+        }
+        return result;
+    }
+
+    /**
+     * @param week the days, Monday first, a day which is not known is null.
+     */
+    static String formatWeek(FhtDayCycle[] week) {
+        final StringBuilder sb = new StringBuilder(7 * 24);
+        for (int i = 0; i < week.length; i++) {
+            if (i > 0) {
+                sb.append(';');
+            }
+            (week[i] == null ? NOT_SET : week[i]).formatTo(sb);
+        }
+        return sb.toString();
+    }
+
+    private static LocalTime parseTime(String value) {
+        return TIME_NOT_SET.equals(value) ? null : TIME_FORMATTER.parse(value, LocalTime::from);
+    }
+
+    private static void formatTime(LocalTime time, StringBuilder sb) {
+        if (time != null) {
+            TIME_FORMATTER.formatTo(time, sb);
+        } else {
+            sb.append(TIME_NOT_SET);
+        }
+    }
+
+    void formatTo(StringBuilder sb) {
+        formatTime(from1, sb);
+        sb.append('-');
+        formatTime(to1, sb);
+        sb.append(' ');
+        formatTime(from2, sb);
+        sb.append('-');
+        formatTime(to2, sb);
+    }
+
+    String format() {
+        final StringBuilder sb = new StringBuilder(23);
+        formatTo(sb);
+        return sb.toString();
+    }
+}
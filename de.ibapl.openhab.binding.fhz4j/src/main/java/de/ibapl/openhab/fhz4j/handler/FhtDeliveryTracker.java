@@ -0,0 +1,221 @@
+/*
+ * ESH-IBAPL  - OpenHAB bindings for various IB APL drivers, https://github.com/aploese/esh-ibapl/
+ * Copyright (C) 2024-2025, Arne Plöse and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package de.ibapl.openhab.fhz4j.handler;
+
+import de.ibapl.fhz4j.protocol.fht.FhtMessage;
+import de.ibapl.fhz4j.protocol.fht.FhtProperty;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The {@link FhtDeliveryTracker} keeps the FHT writes which were sent to the
+ * CUL until the FHT80b reports the written property back. The CUL holds FHT
+ * commands until the next time slot of the device, so the first report is
+ * expected after a few minutes. Unconfirmed writes are resent with an
+ * increasing timeout, but only as long as the FHT buffer of the CUL has room.
+ *
+ * A write is confirmed by the next report of the same property, the value is
+ * not compared.
+ *
+ * @author aploese@gmx.de - Initial contribution
+ */
+public class FhtDeliveryTracker {
+
+    interface Sender {
+
+        void resend(short housecode, FhtProperty property, CulTxQueue.TxOperation operation);
+    }
+
+    interface BufferProbe {
+
+        /**
+         * @return the free bytes of the FHT buffer of the CUL or -1 if
+         * unknown.
+         */
+        int remainingFhtBuffer();
+    }
+
+    private static class Pending {
+
+        final short housecode;
+        final FhtProperty property;
+        final CulTxQueue.TxOperation operation;
+        final long firstSentNanos;
+        long timeoutNanos = INITIAL_TIMEOUT_NS;
+        long deadlineNanos;
+        int attempts = 1;
+
+        Pending(short housecode, FhtProperty property, CulTxQueue.TxOperation operation, long now) {
+            this.housecode = housecode;
+            this.property = property;
+            this.operation = operation;
+            this.firstSentNanos = now;
+            this.deadlineNanos = now + timeoutNanos;
+        }
+    }
+
+    private final static Logger LOGGER = Logger.getLogger("d.i.o.f.h.FhtDeliveryTracker");
+    /**
+     * The FHT80b talks to the CUL about every two minutes.
+     */
+    private final static long INITIAL_TIMEOUT_NS = TimeUnit.MINUTES.toNanos(5);
+    private final static int MAX_ATTEMPTS = 4;
+    private final static int MAX_RESENDS_PER_CHECK = 4;
+    /**
+     * Do not resend if the CUL has less free bytes in its FHT buffer.
+     */
+    private final static int MIN_FREE_FHT_BUFFER = 32;
+
+    private final Sender sender;
+    private final BufferProbe bufferProbe;
+    //guarded by this
+    private final Map<Integer, Pending> pending = new HashMap<>();
+    private long delivered;
+    private long failed;
+    private long superseded;
+    private long resent;
+    private long deferred;
+    private long deliveryNanosSum;
+    private long maxDeliveryNanos;
+
+    FhtDeliveryTracker(Sender sender, BufferProbe bufferProbe) {
+        this.sender = sender;
+        this.bufferProbe = bufferProbe;
+    }
+
+    private static int key(short housecode, FhtProperty property) {
+        return ((housecode & 0xffff) << 8) | property.ordinal();
+    }
+
+    /**
+     * Called on the writer thread after the operation was written to the CUL.
+     * A resend of the pending operation counts as a new attempt, a different
+     * operation supersedes the pending one.
+     */
+    synchronized void sent(short housecode, FhtProperty property, CulTxQueue.TxOperation operation) {
+        final long now = System.nanoTime();
+        final Pending p = pending.get(key(housecode, property));
+        if (p != null && p.operation == operation) {
+            p.attempts++;
+            p.deadlineNanos = now + p.timeoutNanos;
+            return;
+        }
+        if (p != null) {
+            superseded++;
+        }
+        pending.put(key(housecode, property), new Pending(housecode, property, operation, now));
+    }
+
+    /**
+     * Called with each message, which the FHT80b sent.
+     */
+    synchronized void confirmed(FhtMessage fhtMsg) {
+        if (pending.isEmpty()) {
+            return;
+        }
+        final Pending p = pending.remove(key(fhtMsg.housecode, fhtMsg.command));
+        if (p != null) {
+            final long deliveryNanos = System.nanoTime() - p.firstSentNanos;
+            delivered++;
+            deliveryNanosSum += deliveryNanos;
+            if (deliveryNanos > maxDeliveryNanos) {
+                maxDeliveryNanos = deliveryNanos;
+            }
+        }
+    }
+
+    /**
+     * Called periodically on the scheduler, resends or gives up the writes
+     * which were not confirmed in time.
+     */
+    void check() {
+        final long now = System.nanoTime();
+        final List<Pending> due = new ArrayList<>();
+        synchronized (this) {
+            final Iterator<Pending> iterator = pending.values().iterator();
+            while (iterator.hasNext()) {
+                final Pending p = iterator.next();
+                if (now - p.deadlineNanos < 0) {
+                    continue;
+                }
+                if (p.attempts >= MAX_ATTEMPTS) {
+                    iterator.remove();
+                    failed++;
+                    LOGGER.log(Level.WARNING, "FHT80b {0} did not confirm {1} after {2} attempts", new Object[]{p.housecode, p.property, p.attempts});
+                } else {
+                    due.add(p);
+                }
+            }
+        }
+        if (due.isEmpty()) {
+            return;
+        }
+        //Ask the CUL only if there is something to resend
+        final int free = bufferProbe.remainingFhtBuffer();
+        final int allowed = free < 0 || free >= MIN_FREE_FHT_BUFFER ? MAX_RESENDS_PER_CHECK : 0;
+        for (int i = 0; i < due.size(); i++) {
+            final Pending p = due.get(i);
+            synchronized (this) {
+                if (pending.get(key(p.housecode, p.property)) != p) {
+                    //confirmed or superseded meanwhile
+                    continue;
+                }
+                if (i >= allowed) {
+                    deferred++;
+                    continue;
+                }
+                p.timeoutNanos *= 2;
+                //wait for the resend, even if it can't be written
+                p.deadlineNanos = now + p.timeoutNanos;
+                resent++;
+            }
+            sender.resend(p.housecode, p.property, p.operation);
+        }
+    }
+
+    synchronized void clear() {
+        pending.clear();
+    }
+
+    /**
+     * @return the part of the finished writes, which were confirmed.
+     */
+    public synchronized double getSuccessRate() {
+        final long finished = delivered + failed;
+        return finished == 0 ? 1.0 : (double) delivered / finished;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format(
+                "pending: %d, delivered: %d, failed: %d, success rate: %.1f%%, superseded: %d, resent: %d, deferred: %d, mean delivery: %d s, max delivery: %d s",
+                pending.size(), delivered, failed, getSuccessRate() * 100, superseded, resent, deferred,
+                delivered == 0 ? 0 : TimeUnit.NANOSECONDS.toSeconds(deliveryNanosSum / delivered), TimeUnit.NANOSECONDS.toSeconds(maxDeliveryNanos));
+    }
+
+}
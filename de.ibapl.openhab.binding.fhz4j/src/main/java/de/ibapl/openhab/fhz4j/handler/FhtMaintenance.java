@@ -0,0 +1,229 @@
+/*
+ * ESH-IBAPL  - OpenHAB bindings for various IB APL drivers, https://github.com/aploese/esh-ibapl/
+ * Copyright (C) 2024-2025, Arne Plöse and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package de.ibapl.openhab.fhz4j.handler;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The {@link FhtMaintenance} pings all FHT80b of a bridge once per round: the
+ * clock is set and the reporting is triggered. The pings are spread evenly
+ * over a window, so they do not compete for the CUL at the same time.
+ *
+ * The CUL may only send for 1% of the time, so a ping is never started
+ * earlier than a minimal spacing after the previous one. If the window is too
+ * short for all devices the round takes longer. A ping is also deferred by the
+ * minimal spacing while the {@link Budget} reports the CUL busy with other
+ * commands for the device.
+ *
+ * @author aploese@gmx.de - Initial contribution
+ */
+public class FhtMaintenance {
+
+    interface Pinger {
+
+        CompletableFuture<Void> ping(short housecode);
+    }
+
+    interface Budget {
+
+        /**
+         * @param housecode the device.
+         * @param commands the FHT commands of the ping.
+         * @return true if the TX queue and the FHT buffer of the CUL have
+         * room for the ping now.
+         */
+        boolean hasRoom(short housecode, int commands);
+    }
+
+    public enum State {
+        SCHEDULED,
+        RUNNING,
+        DONE,
+        FAILED;
+    }
+
+    /**
+     * The last ping of a device.
+     */
+    public record Status(State state, Instant at, Duration duration, String error) {
+
+        @Override
+        public String toString() {
+            final StringBuilder sb = new StringBuilder().append(state).append(" at ").append(at);
+            if (duration != null) {
+                sb.append(" in ").append(duration.toMillis()).append(" ms");
+            }
+            if (error != null) {
+                sb.append(": ").append(error);
+            }
+            return sb.toString();
+        }
+    }
+
+    private final static Logger LOGGER = Logger.getLogger("d.i.o.f.h.FhtMaintenance");
+    /**
+     * A ping sends several FHT messages, so leave the CUL some air time
+     * between two pings.
+     */
+    final static long MIN_SPACING_NS = TimeUnit.SECONDS.toNanos(30);
+    /**
+     * The clock is set with one FHT command each for the hour, the minute, the
+     * day, the month and the year.
+     */
+    final static int PING_COMMANDS = 5;
+
+    private final ScheduledExecutorService scheduler;
+    private final Pinger pinger;
+    private final Budget budget;
+    //guarded by this
+    private final List<ScheduledFuture<?>> jobs = new ArrayList<>();
+    private final Map<Short, Status> status = new TreeMap<>();
+    private Instant roundStarted;
+    private long rounds;
+    private long deferred;
+    /**
+     * Incremented by each start and stop, a deferred ping of an older
+     * generation is dropped.
+     */
+    private long generation;
+
+    FhtMaintenance(ScheduledExecutorService scheduler, Pinger pinger, Budget budget) {
+        this.scheduler = scheduler;
+        this.pinger = pinger;
+        this.budget = budget;
+    }
+
+    /**
+     * Schedule the pings of a new round, the pings of the previous round,
+     * which did not start yet, are dropped.
+     *
+     * @param housecodes the devices to ping.
+     * @param windowNanos the time to spread the pings over.
+     */
+    synchronized void startRound(int[] housecodes, long windowNanos) {
+        cancelJobs();
+        if (housecodes.length == 0) {
+            return;
+        }
+        rounds++;
+        roundStarted = Instant.now();
+        final long spacing = Math.max(MIN_SPACING_NS, windowNanos / housecodes.length);
+        LOGGER.log(Level.INFO, "Start FHT maintenance of {0} devices, {1} s apart",
+                new Object[]{housecodes.length, TimeUnit.NANOSECONDS.toSeconds(spacing)});
+        final long gen = ++generation;
+        for (int i = 0; i < housecodes.length; i++) {
+            final short housecode = (short) housecodes[i];
+            status.put(housecode, new Status(State.SCHEDULED, roundStarted.plusNanos(i * spacing), null, null));
+            jobs.add(scheduler.schedule(() -> ping(gen, housecode), i * spacing, TimeUnit.NANOSECONDS));
+        }
+    }
+
+    /**
+     * @param gen the generation of the round.
+     */
+    private void ping(long gen, short housecode) {
+        final long start = System.nanoTime();
+        final Instant at = Instant.now();
+        synchronized (this) {
+            if (gen != generation) {
+                return;
+            }
+            if (!budget.hasRoom(housecode, PING_COMMANDS)) {
+                deferred++;
+                status.put(housecode, new Status(State.SCHEDULED, at.plusNanos(MIN_SPACING_NS), null, null));
+                jobs.removeIf(ScheduledFuture::isDone);
+                jobs.add(scheduler.schedule(() -> ping(gen, housecode), MIN_SPACING_NS, TimeUnit.NANOSECONDS));
+                LOGGER.log(Level.FINE, "Defer the FHT maintenance of {0}, the CUL is busy", housecode);
+                return;
+            }
+            status.put(housecode, new Status(State.RUNNING, at, null, null));
+        }
+        pinger.ping(housecode).whenComplete((v, t) -> {
+            final Duration duration = Duration.ofNanos(System.nanoTime() - start);
+            synchronized (this) {
+                if (t == null) {
+                    status.put(housecode, new Status(State.DONE, at, duration, null));
+                } else {
+                    status.put(housecode, new Status(State.FAILED, at, duration, t.toString()));
+                }
+            }
+            if (t == null) {
+                LOGGER.log(Level.INFO, "Did run update clock and trigger reporting of {0} succesfully", housecode);
+            } else {
+                LOGGER.log(Level.SEVERE, "Could not init fht reporting for " + housecode + " due to an IO error", t);
+            }
+        });
+    }
+
+    private void cancelJobs() {
+        for (ScheduledFuture<?> job : jobs) {
+            job.cancel(false);
+        }
+        jobs.clear();
+    }
+
+    synchronized void stop() {
+        generation++;
+        cancelJobs();
+    }
+
+    /**
+     * Forget a removed device.
+     */
+    synchronized void remove(short housecode) {
+        status.remove(housecode);
+    }
+
+    /**
+     * @return the state of the last ping per housecode.
+     */
+    public synchronized Map<Short, Status> getStatus() {
+        return new TreeMap<>(status);
+    }
+
+    @Override
+    public synchronized String toString() {
+        int done = 0;
+        int failed = 0;
+        for (Status s : status.values()) {
+            if (s.state() == State.DONE) {
+                done++;
+            } else if (s.state() == State.FAILED) {
+                failed++;
+            }
+        }
+        return String.format("rounds: %d, last round: %s, devices: %d, done: %d, failed: %d, deferred: %d", rounds, roundStarted, status.size(), done,
+                failed, deferred);
+    }
+
+}
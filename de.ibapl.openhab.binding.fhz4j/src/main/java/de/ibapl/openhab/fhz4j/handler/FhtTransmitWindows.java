@@ -0,0 +1,309 @@
+/*
+ * ESH-IBAPL  - OpenHAB bindings for various IB APL drivers, https://github.com/aploese/esh-ibapl/
+ * Copyright (C) 2024-2025, Arne Plöse and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package de.ibapl.openhab.fhz4j.handler;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The {@link FhtTransmitWindows} learns when each FHT80b transmits. A FHT80b
+ * talks to the CUL in a short window about every two minutes, the CUL holds
+ * the commands for it in its FHT buffer until then. The period and phase of
+ * each housecode are estimated from the arrival times of its messages.
+ *
+ * A command is held back in the {@link CulTxQueue} and released shortly
+ * before the predicted window, so newer values of the same property can still
+ * be coalesced and the CUL buffer only holds the commands of the next
+ * windows. The commands released per window and the commands in the CUL
+ * buffer are limited, later commands move to a later window. The places of a
+ * command, which expired or failed in the queue, are released again.
+ *
+ * {@link #heard(short, long)} runs on the receive thread, it allocates only
+ * for a new housecode.
+ *
+ * @author aploese@gmx.de - Initial contribution
+ */
+public class FhtTransmitWindows {
+
+    private static class Device {
+
+        long phaseNanos;
+        long periodNanos = NOMINAL_PERIOD_NS;
+        int samples;
+        /**
+         * The commands released for the next windows, indexed by the
+         * number of periods after {@link #phaseNanos}.
+         */
+        int[] scheduled = new int[MAX_WINDOWS];
+        /**
+         * Swapped with {@link #scheduled} when the windows are rebased.
+         */
+        int[] rebased = new int[MAX_WINDOWS];
+
+        /**
+         * @return true if the period is known and the device was heard
+         * recently enough, so the drift of the prediction is small.
+         */
+        boolean isPredictable(long now) {
+            return samples >= MIN_SAMPLES && now - phaseNanos <= MAX_PERIODS * periodNanos;
+        }
+
+        long windowNanos(long index) {
+            return phaseNanos + index * periodNanos;
+        }
+
+        /**
+         * @return the index of the first window at or after the time.
+         */
+        long windowIndex(long nanos) {
+            final long d = nanos - phaseNanos;
+            return d <= 0 ? 0 : (d + periodNanos - 1) / periodNanos;
+        }
+
+        /**
+         * Forget the windows before the time.
+         */
+        void removeBefore(long nanos) {
+            for (int i = 0; i < scheduled.length && windowNanos(i) < nanos; i++) {
+                scheduled[i] = 0;
+            }
+        }
+    }
+
+    /**
+     * The places of commands in a window of a device. Created per submitted
+     * command, the window is reserved when the command is queued.
+     */
+    static final class Reservation {
+
+        final short housecode;
+        final int commands;
+        //guarded by the FhtTransmitWindows
+        private long windowNanos;
+        private boolean reserved;
+
+        Reservation(short housecode, int commands) {
+            this.housecode = housecode;
+            this.commands = commands;
+        }
+    }
+
+    private final static long NOMINAL_PERIOD_NS = TimeUnit.SECONDS.toNanos(116);
+    private final static long MIN_PERIOD_NS = TimeUnit.SECONDS.toNanos(110);
+    private final static long MAX_PERIOD_NS = TimeUnit.SECONDS.toNanos(125);
+    /**
+     * Messages within this time belong to the same window.
+     */
+    private final static long BURST_NS = TimeUnit.SECONDS.toNanos(30);
+    /**
+     * Intervals longer than this many periods are too inaccurate to learn
+     * the period.
+     */
+    private final static int MAX_PERIODS = 20;
+    /**
+     * The windows ahead, which take commands.
+     */
+    private final static int MAX_WINDOWS = 64;
+    private final static int MIN_SAMPLES = 2;
+    private final static int MAX_WEIGHT = 8;
+    /**
+     * Release a command this long before the predicted window.
+     */
+    private final static long LEAD_NS = TimeUnit.SECONDS.toNanos(10);
+    private final static int MAX_COMMANDS_PER_WINDOW = 4;
+    /**
+     * Keep the estimated content of the CUL FHT buffer well below its size.
+     */
+    private final static int MAX_BUFFERED_COMMANDS = 12;
+
+    private final IntCopyOnWriteMap<Device> devices = new IntCopyOnWriteMap<>();
+    //guarded by this
+    private final List<Device> deviceList = new ArrayList<>();
+    private long scheduledCommands;
+    private long postponedCommands;
+    private long releasedCommands;
+
+    /**
+     * Called with the arrival time of each message the FHT80b sent.
+     */
+    synchronized void heard(short housecode, long nanos) {
+        final Device d = devices.get(housecode);
+        if (d == null) {
+            final Device created = new Device();
+            created.phaseNanos = nanos;
+            devices.put(housecode, created);
+            deviceList.add(created);
+            return;
+        }
+        final long interval = nanos - d.phaseNanos;
+        if (interval < BURST_NS) {
+            //Same window, the first message marks the phase
+            return;
+        }
+        final long periods = Math.round((double) interval / d.periodNanos);
+        if (periods >= 1 && periods <= MAX_PERIODS) {
+            final long period = interval / periods;
+            if (period >= MIN_PERIOD_NS && period <= MAX_PERIOD_NS) {
+                d.samples++;
+                d.periodNanos += (period - d.periodNanos) / Math.min(d.samples, MAX_WEIGHT);
+            }
+        }
+        //Rebase the scheduled windows on the new phase
+        final int[] rebased = d.rebased;
+        Arrays.fill(rebased, 0);
+        for (int i = 0; i < d.scheduled.length; i++) {
+            if (d.scheduled[i] == 0) {
+                continue;
+            }
+            final long window = d.windowNanos(i);
+            if (window > nanos) {
+                final long index = Math.max(1, Math.round((double) (window - nanos) / d.periodNanos));
+                rebased[(int) Math.min(index, MAX_WINDOWS - 1)] += d.scheduled[i];
+            }
+        }
+        d.rebased = d.scheduled;
+        d.scheduled = rebased;
+        d.phaseNanos = nanos;
+    }
+
+    /**
+     * @return the commands released for windows within the lead time
+     * around the time, they are in the CUL buffer at that time.
+     */
+    private int bufferedAt(long windowNanos) {
+        int result = 0;
+        for (Device d : deviceList) {
+            for (int i = 0; i < d.scheduled.length; i++) {
+                if (d.scheduled[i] != 0 && Math.abs(d.windowNanos(i) - windowNanos) <= LEAD_NS) {
+                    result += d.scheduled[i];
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Reserve places in the next window of the device, which has room. An
+     * empty window takes the commands even if there are more than allowed.
+     *
+     * @param reservation the device and the number of commands to release
+     * together.
+     * @param minDelayNanos the commands are not released earlier.
+     * @return the time to hold the command back, minDelayNanos if the
+     * windows of the device are not known yet.
+     */
+    synchronized long releaseDelayNanos(Reservation reservation, long minDelayNanos) {
+        final long now = System.nanoTime();
+        final int commands = reservation.commands;
+        final Device d = devices.get(reservation.housecode);
+        if (d == null || !d.isPredictable(now)) {
+            return minDelayNanos;
+        }
+        d.removeBefore(now);
+        int index = (int) Math.min(d.windowIndex(now + minDelayNanos + LEAD_NS), MAX_WINDOWS - 1);
+        final int first = index;
+        //the last window takes what does not fit before
+        while (index < MAX_WINDOWS - 1) {
+            final int inWindow = d.scheduled[index];
+            final int buffered = bufferedAt(d.windowNanos(index));
+            if (buffered == 0 || (inWindow + commands <= MAX_COMMANDS_PER_WINDOW && buffered + commands <= MAX_BUFFERED_COMMANDS)) {
+                break;
+            }
+            index++;
+        }
+        if (index != first) {
+            postponedCommands++;
+        }
+        d.scheduled[index] += commands;
+        scheduledCommands += commands;
+        reservation.windowNanos = d.windowNanos(index);
+        reservation.reserved = true;
+        return reservation.windowNanos - LEAD_NS - now;
+    }
+
+    /**
+     * Give the places back, the commands were not written to the CUL. The
+     * windows may have been rebased since, so the nearest window is taken.
+     */
+    synchronized void release(Reservation reservation) {
+        if (!reservation.reserved) {
+            return;
+        }
+        reservation.reserved = false;
+        final Device d = devices.get(reservation.housecode);
+        if (d == null) {
+            return;
+        }
+        for (int i = 0; i < d.scheduled.length; i++) {
+            if (d.scheduled[i] != 0 && Math.abs(d.windowNanos(i) - reservation.windowNanos) <= d.periodNanos / 2) {
+                final int released = Math.min(d.scheduled[i], reservation.commands);
+                d.scheduled[i] -= released;
+                releasedCommands += released;
+                return;
+            }
+        }
+    }
+
+    /**
+     * @param housecode the device.
+     * @param commands the commands to send.
+     * @return true if the CUL buffer has room for the commands in the next
+     * window of the device, or now if its windows are not known yet.
+     */
+    synchronized boolean hasRoom(short housecode, int commands) {
+        final long now = System.nanoTime();
+        final Device d = devices.get(housecode);
+        final long windowNanos = d == null || !d.isPredictable(now) ? now + LEAD_NS : d.windowNanos(d.windowIndex(now + LEAD_NS));
+        return bufferedAt(windowNanos) + commands <= MAX_BUFFERED_COMMANDS;
+    }
+
+    /**
+     * @return the predicted time of the next window in ns from now or -1 if
+     * unknown.
+     */
+    public synchronized long nanosUntilNextWindow(short housecode) {
+        final long now = System.nanoTime();
+        final Device d = devices.get(housecode);
+        if (d == null || !d.isPredictable(now)) {
+            return -1;
+        }
+        return d.windowNanos(d.windowIndex(now)) - now;
+    }
+
+    @Override
+    public synchronized String toString() {
+        int learned = 0;
+        long periodSum = 0;
+        for (Device d : deviceList) {
+            if (d.samples >= MIN_SAMPLES) {
+                learned++;
+                periodSum += d.periodNanos;
+            }
+        }
+        return String.format("devices: %d, learned: %d, mean period: %.1f s, scheduled: %d, postponed: %d, released: %d, buffered now: %d",
+                deviceList.size(), learned, learned == 0 ? 0.0 : periodSum / learned / 1e9, scheduledCommands, postponedCommands, releasedCommands,
+                bufferedAt(System.nanoTime() + LEAD_NS));
+    }
+
+}
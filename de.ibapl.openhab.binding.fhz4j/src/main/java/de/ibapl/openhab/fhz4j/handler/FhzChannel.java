@@ -0,0 +1,81 @@
+/*
+ * ESH-IBAPL  - OpenHAB bindings for various IB APL drivers, https://github.com/aploese/esh-ibapl/
+ * Copyright (C) 2024-2025, Arne Plöse and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package de.ibapl.openhab.fhz4j.handler;
+
+import static de.ibapl.openhab.fhz4j.FHZ4JBindingConstants.*;
+
+/**
+ * The {@link FhzChannel} lists the channels the handlers update from received
+ * messages. Zoned channels exist per zone for the EvoHome multi zone
+ * controller, see {@link ChannelTable}.
+ *
+ * @author aploese@gmx.de - Initial contribution
+ */
+enum FhzChannel {
+    MODE(CHANNEL_MODE, false),
+    BATT_LOW(CHANNEL_BATT_LOW, false),
+    TEMPERATURE_MEASURED(CHANNEL_TEMPERATURE_MEASURED, true),
+    WINDOW_INTERNAL(CHANNEL_WINDOW_INTERNAL, false),
+    WINDOW_EXTERNAL(CHANNEL_WINDOW_EXTERNAL, false),
+    WINDOW_OPEN(CHANNEL_WINDOW_OPEN, true),
+    WINDOW_FUNCTION(CHANNEL_WINDOW_FUNCTION, true),
+    OPERATION_LOCK(CHANNEL_OPERATION_LOCK, true),
+    MIN_TEMP(CHANNEL_MIN_TEMP, true),
+    MAX_TEMP(CHANNEL_MAX_TEMP, true),
+    HUMIDITY_MEASURED(CHANNEL_HUMIDITY_MEASURED, false),
+    DESIRED_TEMPERATURE(CHANNEL_DESIRED_TEMPERATURE, true),
+    TEMPERATURE_DAY(CHANNEL_TEMPERATURE_DAY, false),
+    TEMPERATURE_NIGHT(CHANNEL_TEMPERATURE_NIGHT, false),
+    TEMPERATURE_WINDOW_OPEN(CHANNEL_TEMPERATURE_WINDOW_OPEN, false),
+    VALVE_POSITION(CHANNEL_VALVE_POSITION, false),
+    RADIATOR_HEAT_DEMAND(CHANNEL_RADIATOR_HEAT_DEMAND, false),
+    VALVE_ALLOW_LOW_BATT_BEEP(CHANNEL_VALVE_ALLOW_LOW_BATT_BEEP, false),
+    HOLYDAY_END_DATE(CHANNEL_HOLYDAY_END_DATE, false),
+    PARTY_END_TIME(CHANNEL_PARTY_END_TIME, false),
+    MONDAY(CHANNEL_MONDAY, false),
+    TUESDAY(CHANNEL_TUESDAY, false),
+    WEDNESDAY(CHANNEL_WEDNESDAY, false),
+    THURSDAY(CHANNEL_THURSDAY, false),
+    FRIDAY(CHANNEL_FRIDAY, false),
+    SATURDAY(CHANNEL_SATURDAY, false),
+    SUNDAY(CHANNEL_SUNDAY, false),
+    WEEK_PROGRAM(CHANNEL_WEEK_PROGRAM, false),
+    WEEK_PROGRAM_STATUS(CHANNEL_WEEK_PROGRAM_STATUS, false),
+    ENERGY_TOTAL(CHANNEL_ENERGY_TOTAL, false),
+    POWER_5MINUTES(CHANNEL_POWER_5MINUTES, false),
+    MAX_POWER_5MINUTES(CHANNEL_MAX_POWER_5MINUTES, false),
+    ENERGY_5MINUTES(CHANNEL_ENERGY_5MINUTES, false),
+    ENERGY_HOUR(CHANNEL_ENERGY_HOUR, false),
+    ENERGY_DAY(CHANNEL_ENERGY_DAY, false),
+    MAX_POWER_DAY(CHANNEL_MAX_POWER_DAY, false),
+    RSSI(CHANNEL_RSSI, false),
+    MESSAGE_INTERVAL(CHANNEL_MESSAGE_INTERVAL, false);
+
+    final String id;
+    final boolean zoned;
+
+    private FhzChannel(String id, boolean zoned) {
+        this.id = id;
+        this.zoned = zoned;
+    }
+
+}
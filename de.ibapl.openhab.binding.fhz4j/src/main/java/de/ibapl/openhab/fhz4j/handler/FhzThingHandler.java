@@ -0,0 +1,293 @@
+/*
+ * ESH-IBAPL  - OpenHAB bindings for various IB APL drivers, https://github.com/aploese/esh-ibapl/
+ * Copyright (C) 2024-2025, Arne Plöse and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package de.ibapl.openhab.fhz4j.handler;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.openhab.core.config.core.Configuration;
+import org.openhab.core.library.types.DecimalType;
+import org.openhab.core.thing.Bridge;
+import org.openhab.core.thing.ChannelUID;
+import org.openhab.core.thing.Thing;
+import org.openhab.core.thing.ThingStatus;
+import org.openhab.core.thing.ThingStatusDetail;
+import org.openhab.core.thing.binding.BaseThingHandler;
+import org.openhab.core.types.State;
+
+/**
+ * The {@link FhzThingHandler} is the base of the fhz4j device handlers. It
+ * holds the {@link ChannelTable} of the thing and, if enabled with the
+ * configuration parameter {@code suppressRepeatedStates}, drops state updates
+ * which repeat the last state sent on the channel. A repeated state is sent
+ * anyway, if the last one was sent longer than
+ * {@code forceRefreshInterval} minutes ago.
+ *
+ * The states are also stored in the {@link StateSnapshot} of the bridge and
+ * restored by {@link #restoreStates()} when the thing is initialized. Until
+ * the device is received again, the status description tells the age of the
+ * restored states.
+ *
+ * Commands are only submitted to the bridge, {@link #commandResult} reports
+ * a failed command with the thing status.
+ *
+ * @author aploese@gmx.de - Initial contribution
+ */
+public abstract class FhzThingHandler extends BaseThingHandler {
+
+    public final static String CONFIG_SUPPRESS_REPEATED_STATES = "suppressRepeatedStates";
+    public final static String CONFIG_FORCE_REFRESH_INTERVAL = "forceRefreshInterval";
+    public final static long DEFAULT_FORCE_REFRESH_INTERVAL = 60;
+    /**
+     * The link quality channels are updated at most this often.
+     */
+    private final static long LINK_QUALITY_UPDATE_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    private final static Logger LOGGER = Logger.getLogger("d.i.o.f.h.FhzThingHandler");
+
+    private record LastState(State state, long sentNanos) {
+
+    }
+
+    /**
+     * Built in {@link #initChannels(int)}, so updates do not create
+     * ChannelUIDs.
+     */
+    protected ChannelTable channels;
+    /**
+     * null if repeated states are not suppressed.
+     */
+    private volatile Map<ChannelUID, LastState> lastStates;
+    private long forceRefreshNanos;
+    private final LongAdder suppressedUpdates = new LongAdder();
+    private final LinkQuality linkQuality = new LinkQuality();
+    /**
+     * Guarded by {@link #linkQuality}.
+     */
+    private long nextLinkQualityUpdateNanos;
+    private volatile StateSnapshot snapshot;
+    /*
+     * With a federation the messages of a device arrive on the receive thread
+     * of each member bridge, so the flags are cleared with compareAndSet.
+     */
+    private final AtomicBoolean restored = new AtomicBoolean();
+    private final AtomicBoolean commandFailed = new AtomicBoolean();
+
+    protected FhzThingHandler(Thing thing) {
+        super(thing);
+    }
+
+    /**
+     * Must be called first in {@link #initialize()}.
+     *
+     * @param zones the number of zones of the thing, 0 if it has no zoned
+     * channels.
+     */
+    protected void initChannels(int zones) {
+        channels = new ChannelTable(getThing().getUID(), zones);
+        final Configuration configuration = getConfig();
+        final Object suppress = configuration.get(CONFIG_SUPPRESS_REPEATED_STATES);
+        final Object forceRefresh = configuration.get(CONFIG_FORCE_REFRESH_INTERVAL);
+        forceRefreshNanos = TimeUnit.MINUTES.toNanos(forceRefresh instanceof Number n ? n.longValue() : DEFAULT_FORCE_REFRESH_INTERVAL);
+        if (Boolean.TRUE.equals(suppress) || "true".equals(suppress)) {
+            lastStates = new ConcurrentHashMap<>();
+        } else {
+            lastStates = null;
+        }
+    }
+
+    @Override
+    protected void updateState(ChannelUID channelUID, State state) {
+        final Map<ChannelUID, LastState> cache = lastStates;
+        if (cache != null) {
+            final long now = System.nanoTime();
+            final LastState last = cache.get(channelUID);
+            if (last != null && last.state.equals(state)
+                    && (forceRefreshNanos <= 0 || now - last.sentNanos < forceRefreshNanos)) {
+                suppressedUpdates.increment();
+                return;
+            }
+            cache.put(channelUID, new LastState(state, now));
+        }
+        super.updateState(channelUID, state);
+        final StateSnapshot s = snapshot;
+        if (s != null) {
+            s.put(channelUID, state);
+        }
+    }
+
+    /**
+     * Restore the states stored in the snapshot of the bridge, call it at the
+     * end of {@link #initialize()}. The states are sent only to the framework,
+     * they do not fill the cache of the last states, so the first received
+     * state is always sent.
+     */
+    protected void restoreStates() {
+        final Bridge bridge = getBridge();
+        if (bridge == null || !(bridge.getHandler() instanceof SpswBridgeHandler bridgeHandler)) {
+            snapshot = null;
+            return;
+        }
+        final StateSnapshot s = bridgeHandler.getStateSnapshot();
+        snapshot = s;
+        if (s == null) {
+            return;
+        }
+        long oldestMillis = Long.MAX_VALUE;
+        int count = 0;
+        for (StateSnapshot.Entry entry : s.restore(getThing().getUID(), bridgeHandler.getStateSnapshotMaxAgeMillis())) {
+            super.updateState(entry.channelUID(), entry.state());
+            oldestMillis = Math.min(oldestMillis, entry.epochMillis());
+            count++;
+        }
+        if (count > 0 && getThing().getStatus() == ThingStatus.ONLINE) {
+            restored.set(true);
+            final long ageMinutes = TimeUnit.MILLISECONDS.toMinutes(System.currentTimeMillis() - oldestMillis);
+            updateStatus(ThingStatus.ONLINE, ThingStatusDetail.NONE, String.format("%d states restored, up to %d min old", count, ageMinutes));
+        }
+    }
+
+    /**
+     * Report the result of a command submitted to the bridge. A failed
+     * command sets the thing OFFLINE with COMMUNICATION_ERROR, until a command
+     * succeeds or the device is received again.
+     *
+     * @param result the result of the submitted command.
+     * @param action the action for the log and the status description.
+     * @return the result, to chain further handling.
+     */
+    protected CompletableFuture<Void> commandResult(CompletableFuture<Void> result, String action) {
+        result.whenComplete((v, t) -> {
+            if (t == null) {
+                if (commandFailed.compareAndSet(true, false)) {
+                    clearCommunicationError();
+                }
+                return;
+            }
+            final Throwable cause = t instanceof CompletionException && t.getCause() != null ? t.getCause() : t;
+            if (cause instanceof CulTxQueue.StoppedException) {
+                //the bridge is disposed or offline, the device is not to blame
+                LOGGER.log(Level.FINE, "{0} of {1} cancelled: {2}", new Object[]{action, getThing().getUID(), cause.getMessage()});
+                return;
+            }
+            LOGGER.log(Level.SEVERE, action + " of " + getThing().getUID() + " failed", cause);
+            if (getThing().getStatus() == ThingStatus.ONLINE) {
+                commandFailed.set(true);
+                updateStatus(ThingStatus.OFFLINE, ThingStatusDetail.COMMUNICATION_ERROR,
+                        action + " failed: " + (cause.getMessage() != null ? cause.getMessage() : cause.getClass().getSimpleName()));
+            }
+        });
+        return result;
+    }
+
+    private void clearCommunicationError() {
+        if (getThing().getStatus() == ThingStatus.OFFLINE
+                && getThing().getStatusInfo().getStatusDetail() == ThingStatusDetail.COMMUNICATION_ERROR) {
+            updateStatus(ThingStatus.ONLINE);
+        }
+    }
+
+    /**
+     * Called by the bridge on the receive thread before a message of this
+     * device is dispatched. With a federation this is called from the receive
+     * thread of each member bridge.
+     *
+     * @param signalStrength the RSSI in dBm or NaN if unknown.
+     */
+    void received(float signalStrength) {
+        final long now = System.nanoTime();
+        if (restored.compareAndSet(true, false)) {
+            if (getThing().getStatus() == ThingStatus.ONLINE) {
+                //the states are live now
+                updateStatus(ThingStatus.ONLINE);
+            }
+        }
+        if (commandFailed.compareAndSet(true, false)) {
+            //the device is in reach again
+            clearCommunicationError();
+        }
+        synchronized (linkQuality) {
+            linkQuality.record(signalStrength, now);
+            if (now - nextLinkQualityUpdateNanos < 0) {
+                return;
+            }
+            nextLinkQualityUpdateNanos = now + LINK_QUALITY_UPDATE_NANOS;
+            final double meanSignalStrength = linkQuality.getMeanSignalStrength();
+            if (!Double.isNaN(meanSignalStrength)) {
+                updateState(channels.get(FhzChannel.RSSI), new DecimalType(meanSignalStrength));
+            }
+            final double meanInterval = linkQuality.getMeanIntervalSeconds();
+            if (!Double.isNaN(meanInterval)) {
+                updateState(channels.get(FhzChannel.MESSAGE_INTERVAL), new DecimalType(meanInterval));
+            }
+        }
+    }
+
+    public LinkQuality getLinkQuality() {
+        return linkQuality;
+    }
+
+    /**
+     * A newly linked item must get the next state, even if it is repeated.
+     */
+    @Override
+    public void channelLinked(ChannelUID channelUID) {
+        final Map<ChannelUID, LastState> cache = lastStates;
+        if (cache != null) {
+            cache.remove(channelUID);
+        }
+        super.channelLinked(channelUID);
+    }
+
+    /**
+     * Forget the last states, so the next update of each channel is sent.
+     */
+    public void forceRefresh() {
+        final Map<ChannelUID, LastState> cache = lastStates;
+        if (cache != null) {
+            cache.clear();
+        }
+    }
+
+    /**
+     * @return the number of state updates, which were dropped because they
+     * repeated the last state of the channel.
+     */
+    public long getSuppressedUpdates() {
+        return suppressedUpdates.sum();
+    }
+
+    @Override
+    public void dispose() {
+        snapshot = null;
+        restored.set(false);
+        commandFailed.set(false);
+        forceRefresh();
+    }
+
+}
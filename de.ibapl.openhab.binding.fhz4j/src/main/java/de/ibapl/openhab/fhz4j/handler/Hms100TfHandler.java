@@ -35,7 +35,6 @@ import org.openhab.core.thing.ChannelUID;
 import org.openhab.core.thing.Thing;
 import org.openhab.core.thing.ThingStatus;
 import org.openhab.core.thing.ThingStatusDetail;
-import org.openhab.core.thing.binding.BaseThingHandler;
 import org.openhab.core.types.Command;
 
 /**
@@ -44,7 +43,7 @@ import org.openhab.core.types.Command;
  *
  * @author aploese@gmx.de - Initial contribution
  */
-public class Hms100TfHandler extends BaseThingHandler {
+public class Hms100TfHandler extends FhzThingHandler {
 
     protected ThingStatusDetail owHandlerStatus = ThingStatusDetail.HANDLER_CONFIGURATION_PENDING;
 
@@ -64,6 +63,7 @@ public class Hms100TfHandler extends BaseThingHandler {
     @Override
     public void initialize() {
         logger.log(Level.FINE, "thing {0} is initializing", this.thing.getUID());
+        initChannels(0);
         Configuration configuration = getConfig();
         try {
             housecode = ((Number) configuration.get("housecode")).shortValue();
@@ -84,10 +84,12 @@ public class Hms100TfHandler extends BaseThingHandler {
                 updateStatus(ThingStatus.OFFLINE, ThingStatusDetail.BRIDGE_OFFLINE);
             }
         }
+        restoreStates();
     }
 
     @Override
     public void dispose() {
+        super.dispose();
     }
 
     public short getHousecode() {
@@ -97,14 +99,14 @@ public class Hms100TfHandler extends BaseThingHandler {
     public void updateFromMsg(HmsMessage hmsMessage) {
         switch (hmsMessage.hmsDeviceType) {
             case HMS_100_TF -> {
-                updateState(new ChannelUID(getThing().getUID(), CHANNEL_TEMPERATURE_MEASURED),
+                updateState(channels.get(FhzChannel.TEMPERATURE_MEASURED),
                         new DecimalType(((Hms100TfMessage) hmsMessage).temp));
-                updateState(new ChannelUID(getThing().getUID(), CHANNEL_HUMIDITY_MEASURED),
+                updateState(channels.get(FhzChannel.HUMIDITY_MEASURED),
                         new DecimalType(((Hms100TfMessage) hmsMessage).humidy));
                 if (((Hms100TfMessage) hmsMessage).deviceStatus.contains(HmsDeviceStatus.BATT_LOW)) {
-                    updateState(new ChannelUID(getThing().getUID(), CHANNEL_BATT_LOW), OnOffType.ON);
+                    updateState(channels.get(FhzChannel.BATT_LOW), OnOffType.ON);
                 } else {
-                    updateState(new ChannelUID(getThing().getUID(), CHANNEL_BATT_LOW), OnOffType.OFF);
+                    updateState(channels.get(FhzChannel.BATT_LOW), OnOffType.OFF);
                 }
             }
             default ->
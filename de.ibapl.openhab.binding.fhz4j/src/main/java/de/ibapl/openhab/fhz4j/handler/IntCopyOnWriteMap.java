@@ -0,0 +1,163 @@
+/*
+ * ESH-IBAPL  - OpenHAB bindings for various IB APL drivers, https://github.com/aploese/esh-ibapl/
+ * Copyright (C) 2024-2025, Arne Plöse and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package de.ibapl.openhab.fhz4j.handler;
+
+import java.util.Arrays;
+
+/**
+ * The {@link IntCopyOnWriteMap} maps primitive int keys to values. Lookups
+ * are lock free and do not allocate, they read an immutable open addressing
+ * table. Modifications are rare (a thing handler is added or removed) and
+ * replace the whole table.
+ *
+ * @author aploese@gmx.de - Initial contribution
+ */
+class IntCopyOnWriteMap<V> {
+
+    private final static class Table {
+
+        final int[] keys;
+        final Object[] values;
+        final int mask;
+        final int size;
+
+        Table(int capacity, int size) {
+            keys = new int[capacity];
+            values = new Object[capacity];
+            mask = capacity - 1;
+            this.size = size;
+        }
+    }
+
+    private final static Table EMPTY = new Table(1, 0);
+
+    private volatile Table table = EMPTY;
+
+    private static int indexOf(int key, int mask) {
+        final int h = key * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    /**
+     * Lookup the value, no boxing and no locking is done here.
+     *
+     * @param key the key.
+     * @return the value or null.
+     */
+    @SuppressWarnings("unchecked")
+    V get(int key) {
+        final Table t = table;
+        int i = indexOf(key, t.mask);
+        Object v;
+        while ((v = t.values[i]) != null) {
+            if (t.keys[i] == key) {
+                return (V) v;
+            }
+            i = (i + 1) & t.mask;
+        }
+        return null;
+    }
+
+    synchronized void put(int key, V value) {
+        if (value == null) {
+            throw new IllegalArgumentException("value must not be null");
+        }
+        final Table old = table;
+        final boolean replace = get(key) != null;
+        final Table t = rehash(old, replace ? old.size : old.size + 1, key);
+        insert(t, key, value);
+        table = t;
+    }
+
+    /**
+     * @return the value already mapped to the key, or the value, which is
+     * mapped now.
+     */
+    synchronized V putIfAbsent(int key, V value) {
+        final V old = get(key);
+        if (old != null) {
+            return old;
+        }
+        put(key, value);
+        return value;
+    }
+
+    synchronized void remove(int key) {
+        final Table old = table;
+        if (get(key) == null) {
+            return;
+        }
+        table = old.size == 1 ? EMPTY : rehash(old, old.size - 1, key);
+    }
+
+    synchronized void clear() {
+        table = EMPTY;
+    }
+
+    int size() {
+        return table.size;
+    }
+
+    /**
+     * @return the keys in ascending order.
+     */
+    int[] keys() {
+        final Table t = table;
+        final int[] result = new int[t.size];
+        int j = 0;
+        for (int i = 0; i < t.values.length; i++) {
+            if (t.values[i] != null) {
+                result[j++] = t.keys[i];
+            }
+        }
+        Arrays.sort(result);
+        return result;
+    }
+
+    /**
+     * Copy all entries except the one with the skipped key into a new table
+     * with a load factor of at most 0.5.
+     */
+    private static Table rehash(Table old, int size, int skipKey) {
+        int capacity = 2;
+        while (capacity < size * 2) {
+            capacity <<= 1;
+        }
+        final Table t = new Table(capacity, size);
+        for (int i = 0; i < old.values.length; i++) {
+            if (old.values[i] != null && old.keys[i] != skipKey) {
+                insert(t, old.keys[i], old.values[i]);
+            }
+        }
+        return t;
+    }
+
+    private static void insert(Table t, int key, Object value) {
+        int i = indexOf(key, t.mask);
+        while (t.values[i] != null) {
+            i = (i + 1) & t.mask;
+        }
+        t.keys[i] = key;
+        t.values[i] = value;
+    }
+
+}
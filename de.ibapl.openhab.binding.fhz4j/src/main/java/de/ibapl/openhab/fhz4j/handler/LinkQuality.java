@@ -0,0 +1,145 @@
+/*
+ * ESH-IBAPL  - OpenHAB bindings for various IB APL drivers, https://github.com/aploese/esh-ibapl/
+ * Copyright (C) 2024-2025, Arne Plöse and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package de.ibapl.openhab.fhz4j.handler;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The {@link LinkQuality} keeps the signal strength (RSSI) and the arrival
+ * time of the last messages of a device in primitive ring buffers. A
+ * histogram of the RSSI over the same window is maintained on insert, so
+ * nothing is allocated per message.
+ *
+ * @author aploese@gmx.de - Initial contribution
+ */
+public class LinkQuality {
+
+    /**
+     * The number of messages in the rolling window.
+     */
+    static final int WINDOW = 64;
+    static final int HISTOGRAM_MIN_DBM = -120;
+    static final int HISTOGRAM_BUCKET_DBM = 10;
+    static final int HISTOGRAM_BUCKETS = 10;
+
+    private final float[] signalStrengths = new float[WINDOW];
+    private final long[] arrivalNanos = new long[WINDOW];
+    private final int[] histogram = new int[HISTOGRAM_BUCKETS];
+    private int next;
+    private int size;
+    private int signalStrengthCount;
+    private double signalStrengthSum;
+    private long messages;
+
+    private static int bucket(float signalStrength) {
+        final int b = ((int) Math.floor(signalStrength) - HISTOGRAM_MIN_DBM) / HISTOGRAM_BUCKET_DBM;
+        return b < 0 ? 0 : b >= HISTOGRAM_BUCKETS ? HISTOGRAM_BUCKETS - 1 : b;
+    }
+
+    /**
+     * @param signalStrength the RSSI in dBm or NaN if the CUL did not report
+     * it.
+     * @param nanos the arrival time from {@link System#nanoTime()}.
+     */
+    synchronized void record(float signalStrength, long nanos) {
+        if (size == WINDOW) {
+            final float evicted = signalStrengths[next];
+            if (!Float.isNaN(evicted)) {
+                histogram[bucket(evicted)]--;
+                signalStrengthSum -= evicted;
+                signalStrengthCount--;
+            }
+        } else {
+            size++;
+        }
+        signalStrengths[next] = signalStrength;
+        arrivalNanos[next] = nanos;
+        if (!Float.isNaN(signalStrength)) {
+            histogram[bucket(signalStrength)]++;
+            signalStrengthSum += signalStrength;
+            signalStrengthCount++;
+        }
+        next = (next + 1) % WINDOW;
+        messages++;
+    }
+
+    /**
+     * @return the number of messages received since the thing was
+     * initialized.
+     */
+    public synchronized long getMessages() {
+        return messages;
+    }
+
+    /**
+     * @return the mean RSSI in dBm of the window or NaN if unknown.
+     */
+    public synchronized double getMeanSignalStrength() {
+        return signalStrengthCount == 0 ? Double.NaN : signalStrengthSum / signalStrengthCount;
+    }
+
+    /**
+     * @return the mean time in seconds between two messages of the window or
+     * NaN if less than two messages were received.
+     */
+    public synchronized double getMeanIntervalSeconds() {
+        if (size < 2) {
+            return Double.NaN;
+        }
+        final long newest = arrivalNanos[(next - 1 + WINDOW) % WINDOW];
+        final long oldest = arrivalNanos[(next - size + WINDOW) % WINDOW];
+        return (double) (newest - oldest) / (size - 1) / TimeUnit.SECONDS.toNanos(1);
+    }
+
+    @Override
+    public synchronized String toString() {
+        final StringBuilder sb = new StringBuilder();
+        sb.append("messages: ").append(messages);
+        if (signalStrengthCount > 0) {
+            float min = Float.MAX_VALUE;
+            for (int i = 0; i < size; i++) {
+                if (signalStrengths[i] < min) {
+                    min = signalStrengths[i];
+                }
+            }
+            sb.append(String.format(", rssi mean: %.1f dBm, min: %.1f dBm, histogram:", signalStrengthSum / signalStrengthCount, min));
+            for (int i = 0; i < HISTOGRAM_BUCKETS; i++) {
+                if (histogram[i] > 0) {
+                    sb.append(' ').append(HISTOGRAM_MIN_DBM + i * HISTOGRAM_BUCKET_DBM).append(':').append(histogram[i]);
+                }
+            }
+        }
+        if (size > 1) {
+            long minInterval = Long.MAX_VALUE;
+            for (int i = 1; i < size; i++) {
+                final long interval = arrivalNanos[(next - i + WINDOW) % WINDOW] - arrivalNanos[(next - i - 1 + WINDOW) % WINDOW];
+                if (interval < minInterval) {
+                    minInterval = interval;
+                }
+            }
+            sb.append(String.format(", interval mean: %.1f s, min: %.1f s",
+                    (double) (arrivalNanos[(next - 1 + WINDOW) % WINDOW] - arrivalNanos[(next - size + WINDOW) % WINDOW]) / (size - 1) / 1_000_000_000.0,
+                    minInterval / 1_000_000_000.0));
+        }
+        return sb.toString();
+    }
+}
@@ -33,13 +33,13 @@ import de.ibapl.fhz4j.protocol.fht.FhtTimesMessage;
 import de.ibapl.fhz4j.protocol.fht.FhtValvePosMessage;
 import de.ibapl.fhz4j.protocol.fht.FhtWarningMessage;
 import static de.ibapl.openhab.fhz4j.FHZ4JBindingConstants.*;
-import java.io.IOException;
 import java.time.DayOfWeek;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.EnumMap;
 import java.util.Map;
 import java.util.Set;
 import java.util.logging.Level;
@@ -49,15 +49,11 @@ import org.openhab.core.library.types.DateTimeType;
 import org.openhab.core.library.types.DecimalType;
 import org.openhab.core.library.types.OnOffType;
 import org.openhab.core.library.types.StringType;
-import org.openhab.core.scheduler.CronScheduler;
-import org.openhab.core.scheduler.ScheduledCompletableFuture;
 import org.openhab.core.thing.Bridge;
 import org.openhab.core.thing.ChannelUID;
 import org.openhab.core.thing.Thing;
 import org.openhab.core.thing.ThingStatus;
 import org.openhab.core.thing.ThingStatusDetail;
-import org.openhab.core.thing.binding.BaseThingHandler;
-import org.openhab.core.thing.binding.BridgeHandler;
 import org.openhab.core.types.Command;
 import org.openhab.core.types.RefreshType;
 
@@ -67,37 +63,32 @@ import org.openhab.core.types.RefreshType;
  *
  * @author aploese@gmx.de - Initial contribution
  */
-public class RadiatorFht80bHandler extends BaseThingHandler {
+public class RadiatorFht80bHandler extends FhzThingHandler {
 
     protected ThingStatusDetail fht80HandlerStatus = ThingStatusDetail.HANDLER_CONFIGURATION_PENDING;
 
     private final static Logger LOGGER = Logger.getLogger("d.i.o.f.h.RadiatorFht80bHandler");
-    private static final String CRON_PATTERN_DEVICE_PING = "cronPatternDevicePing";
 
-    private float desiredTemp;
+    private volatile float desiredTemp;
 
     private short housecode;
 
-    private String cronPatternDevicePing = "0 0 0 ? * SUN *";
+    /**
+     * Guards the switch times below.
+     */
+    private final Object cycles = new Object();
+    /**
+     * The switch times last received from the device, Monday first, null if
+     * not received yet.
+     */
+    private final FhtDayCycle[] receivedCycles = new FhtDayCycle[7];
+    /**
+     * The switch times sent, but not yet reported back by the device.
+     */
+    private final Map<DayOfWeek, FhtDayCycle> pendingCycles = new EnumMap<>(DayOfWeek.class);
 
-    private final CronScheduler cronScheduler;
-
-    private ScheduledCompletableFuture refreshJob;
-
-    public RadiatorFht80bHandler(Thing thing, CronScheduler cronScheduler) {
+    public RadiatorFht80bHandler(Thing thing) {
         super(thing);
-        this.cronScheduler = cronScheduler;
-    }
-
-    @Override
-    public void handleConfigurationUpdate(Map<String, Object> configurationParameters) {
-        //Handle this here....
-        if (configurationParameters.containsKey(CRON_PATTERN_DEVICE_PING)) {
-            LOGGER.log(Level.SEVERE, "handleConfigurationUpdate called: cronPatternDevicePing = {0}", configurationParameters.get(CRON_PATTERN_DEVICE_PING));
-        } else {
-            LOGGER.severe("handleConfigurationUpdate called: cronPatternDevicePing = ");
-        }
-        super.handleConfigurationUpdate(configurationParameters);
     }
 
     @Override
@@ -105,13 +96,9 @@ public class RadiatorFht80bHandler extends BaseThingHandler {
         switch (channelUID.getId()) {
             case CHANNEL_DESIRED_TEMPERATURE -> {
                 if (command instanceof DecimalType decimalType) {
-                    try {
-                        desiredTemp = decimalType.floatValue();
-                        ((SpswBridgeHandler) (getBridge().getHandler())).sendFhtMessage(housecode,
-                                FhtProperty.DESIRED_TEMP, desiredTemp);
-                    } catch (IOException e) {
-                        LOGGER.log(Level.SEVERE, "handleCommand CHANNEL_DESIRED_TEMPERATURE", e);
-                    }
+                    desiredTemp = decimalType.floatValue();
+                    commandResult(((SpswBridgeHandler) (getBridge().getHandler())).sendFhtMessage(housecode,
+                            FhtProperty.DESIRED_TEMP, desiredTemp), "handleCommand CHANNEL_DESIRED_TEMPERATURE");
                 } else {
                     //TODO
                     LOGGER.log(Level.SEVERE, "Can't handle command {0} of CHANNEL_DESIRED_TEMPERATURE in handleCommand!", command);
@@ -121,36 +108,24 @@ public class RadiatorFht80bHandler extends BaseThingHandler {
             }
             case CHANNEL_TEMPERATURE_DAY -> {
                 if (command instanceof DecimalType decimalType) {
-                    try {
-                        ((SpswBridgeHandler) (getBridge().getHandler())).sendFhtMessage(housecode, FhtProperty.DAY_TEMP,
-                                decimalType.floatValue());
-                    } catch (IOException e) {
-                        LOGGER.log(Level.SEVERE, "handleCommand CHANNEL_TEMPERATURE_DAY", e);
-                    }
+                    commandResult(((SpswBridgeHandler) (getBridge().getHandler())).sendFhtMessage(housecode, FhtProperty.DAY_TEMP,
+                            decimalType.floatValue()), "handleCommand CHANNEL_TEMPERATURE_DAY");
                 } else if (command instanceof RefreshType) {
                     // updateState(new ChannelUID(getThing().getUID(), CHANNEL_TEMPERATURE), new DecimalType(00.00));
                 }
             }
             case CHANNEL_TEMPERATURE_NIGHT -> {
                 if (command instanceof DecimalType decimalType) {
-                    try {
-                        ((SpswBridgeHandler) (getBridge().getHandler())).sendFhtMessage(housecode,
-                                FhtProperty.NIGHT_TEMP, decimalType.floatValue());
-                    } catch (IOException e) {
-                        LOGGER.log(Level.SEVERE, "handleCommand CHANNEL_TEMPERATURE_NIGHT", e);
-                    }
+                    commandResult(((SpswBridgeHandler) (getBridge().getHandler())).sendFhtMessage(housecode,
+                            FhtProperty.NIGHT_TEMP, decimalType.floatValue()), "handleCommand CHANNEL_TEMPERATURE_NIGHT");
                 } else if (command instanceof RefreshType) {
                     // updateState(new ChannelUID(getThing().getUID(), CHANNEL_TEMPERATURE), new DecimalType(00.00));
                 }
             }
             case CHANNEL_TEMPERATURE_WINDOW_OPEN -> {
                 if (command instanceof DecimalType decimalType) {
-                    try {
-                        ((SpswBridgeHandler) (getBridge().getHandler())).sendFhtMessage(housecode,
-                                FhtProperty.WINDOW_OPEN_TEMP, decimalType.floatValue());
-                    } catch (IOException e) {
-                        LOGGER.log(Level.SEVERE, "handleCommand CHANNEL_TEMPERATURE_WINDOW_OPEN", e);
-                    }
+                    commandResult(((SpswBridgeHandler) (getBridge().getHandler())).sendFhtMessage(housecode,
+                            FhtProperty.WINDOW_OPEN_TEMP, decimalType.floatValue()), "handleCommand CHANNEL_TEMPERATURE_WINDOW_OPEN");
                 } else if (command instanceof RefreshType) {
                     // updateState(new ChannelUID(getThing().getUID(), CHANNEL_TEMPERATURE), new DecimalType(00.00));
                 }
@@ -190,6 +165,11 @@ public class RadiatorFht80bHandler extends BaseThingHandler {
                     sendCycle(DayOfWeek.SUNDAY, stringType);
                 }
             }
+            case CHANNEL_WEEK_PROGRAM -> {
+                if (command instanceof StringType stringType) {
+                    sendWeekProgram(stringType);
+                }
+            }
             case CHANNEL_VALVE_POSITION -> {
                 if (command instanceof RefreshType) {
                     // updateState(new ChannelUID(getThing().getUID(), CHANNEL_VALVE_POSITION), new DecimalType(22.22));
@@ -202,17 +182,13 @@ public class RadiatorFht80bHandler extends BaseThingHandler {
             }
             case CHANNEL_MODE -> {
                 if (command instanceof StringType stringType) {
-                    try {
-                        switch (stringType.toString()) {
-                            case "AUTO" ->
-                                ((SpswBridgeHandler) (getBridge().getHandler())).sendFhtModeAutoMessage(housecode);
-                            case "MANUAL" ->
-                                ((SpswBridgeHandler) (getBridge().getHandler())).sendFhtModeManuMessage(housecode);
-                            default ->
-                                throw new IllegalArgumentException("Cant set mode to " + stringType.toString());
-                        }
-                    } catch (IOException e) {
-                        LOGGER.log(Level.SEVERE, "handleCommand CHANNEL_MODE", e);
+                    switch (stringType.toString()) {
+                        case "AUTO" ->
+                            commandResult(((SpswBridgeHandler) (getBridge().getHandler())).sendFhtModeAutoMessage(housecode), "handleCommand CHANNEL_MODE");
+                        case "MANUAL" ->
+                            commandResult(((SpswBridgeHandler) (getBridge().getHandler())).sendFhtModeManuMessage(housecode), "handleCommand CHANNEL_MODE");
+                        default ->
+                            throw new IllegalArgumentException("Cant set mode to " + stringType.toString());
                     }
                 } else if (command instanceof RefreshType) {
                     // updateState(new ChannelUID(getThing().getUID(), CHANNEL_TEMPERATURE), new DecimalType(00.00));
@@ -243,11 +219,8 @@ public class RadiatorFht80bHandler extends BaseThingHandler {
                     }
                     toDateTime = LocalDateTime.of(toDateTime.getYear(), toDateTime.getMonth(), toDateTime.getDayOfMonth(), toTime.getHour(), toTime.getMinute());
 
-                    try {
-                        ((SpswBridgeHandler) (getBridge().getHandler())).sendFhtPartyMessage(housecode, desiredTemp, toDateTime);
-                    } catch (IOException e) {
-                        LOGGER.log(Level.SEVERE, "handleCommand CHANNEL_PARTY_END_TIME", e);
-                    }
+                    commandResult(((SpswBridgeHandler) (getBridge().getHandler())).sendFhtPartyMessage(housecode, desiredTemp, toDateTime),
+                            "handleCommand CHANNEL_PARTY_END_TIME");
                 } else if (command instanceof RefreshType) {
                     // updateState(new ChannelUID(getThing().getUID(), CHANNEL_VALVE_POSITION), new DecimalType(22.22));
                 }
@@ -257,11 +230,8 @@ public class RadiatorFht80bHandler extends BaseThingHandler {
                     final ZonedDateTime value = dateTimeType.getZonedDateTime();
 
                     final LocalDate toDate = LocalDate.of(value.getYear(), value.getMonth(), value.getDayOfMonth());
-                    try {
-                        ((SpswBridgeHandler) (getBridge().getHandler())).sendFhtHolidayMessage(housecode, desiredTemp, toDate);
-                    } catch (IOException e) {
-                        LOGGER.log(Level.SEVERE, "handleCommand CHANNEL_HOLYDAY_END_DATE", e);
-                    }
+                    commandResult(((SpswBridgeHandler) (getBridge().getHandler())).sendFhtHolidayMessage(housecode, desiredTemp, toDate),
+                            "handleCommand CHANNEL_HOLYDAY_END_DATE");
                 } else if (command instanceof RefreshType) {
                     // updateState(new ChannelUID(getThing().getUID(), CHANNEL_VALVE_POSITION), new DecimalType(22.22));
                 }
@@ -272,31 +242,49 @@ public class RadiatorFht80bHandler extends BaseThingHandler {
     }
 
     private void sendCycle(DayOfWeek dayOfWeek, StringType command) {
-        String value = command.toString();
-
-        // TIME_FORMATTER.parse("12:00-13:00 15:00-18:00", new ParsePosition(0)).query(LocalTime::from);
-        String val = value.substring(0, 5);
-        final LocalTime from1 = TIME_NOT_SET.equals(val) ? null : TIME_FORMATTER.parse(val, LocalTime::from);
-
-        val = value.substring(6, 11);
-        LocalTime to1 = TIME_NOT_SET.equals(val) ? null : TIME_FORMATTER.parse(val, LocalTime::from);
-        val = value.substring(12, 17);
-        LocalTime from2 = TIME_NOT_SET.equals(val) ? null : TIME_FORMATTER.parse(val, LocalTime::from);
-        val = value.substring(18, 23);
-        LocalTime to2 = TIME_NOT_SET.equals(val) ? null : TIME_FORMATTER.parse(val, LocalTime::from);
+        final FhtDayCycle cycle = FhtDayCycle.parse(command.toString());
+        commandResult(((SpswBridgeHandler) (getBridge().getHandler())).sendFhtMessage(housecode, dayOfWeek, cycle.from1(), cycle.to1(),
+                cycle.from2(), cycle.to2()), "sendCycle");
+    }
 
-        try {
-            ((SpswBridgeHandler) (getBridge().getHandler())).sendFhtMessage(housecode, dayOfWeek, from1, to1, from2,
-                    to2);
-        } catch (IOException e) {
-            LOGGER.log(Level.SEVERE, "sendCycle", e);
+    /**
+     * Send only the days, which differ from the switch times last received
+     * from the device, in one transaction.
+     */
+    private void sendWeekProgram(StringType command) {
+        final FhtDayCycle[] week = FhtDayCycle.parseWeek(command.toString());
+        final Map<DayOfWeek, FhtDayCycle> changed = new EnumMap<>(DayOfWeek.class);
+        synchronized (cycles) {
+            for (int i = 0; i < week.length; i++) {
+                if (!week[i].equals(receivedCycles[i])) {
+                    changed.put(DayOfWeek.of(i + 1), week[i]);
+                }
+            }
+            pendingCycles.clear();
+            pendingCycles.putAll(changed);
         }
-
+        if (changed.isEmpty()) {
+            updateState(channels.get(FhzChannel.WEEK_PROGRAM_STATUS), new StringType("UNCHANGED"));
+            return;
+        }
+        updateState(channels.get(FhzChannel.WEEK_PROGRAM_STATUS), new StringType("SENDING " + changed.keySet()));
+        commandResult(((SpswBridgeHandler) (getBridge().getHandler())).sendFhtWeekProgram(housecode, changed), "sendWeekProgram").whenComplete((v, t) -> {
+            if (t != null) {
+                updateState(channels.get(FhzChannel.WEEK_PROGRAM_STATUS), new StringType("FAILED " + t.getMessage()));
+                return;
+            }
+            synchronized (cycles) {
+                if (!pendingCycles.isEmpty()) {
+                    updateState(channels.get(FhzChannel.WEEK_PROGRAM_STATUS), new StringType("SENT, WAITING FOR " + pendingCycles.keySet()));
+                }
+            }
+        });
     }
 
     @Override
     public void initialize() {
         LOGGER.log(Level.FINE, "thing {0} is initializing", this.thing.getUID());
+        initChannels(0);
         Configuration configuration = getConfig();
         try {
             housecode = ((Number) configuration.get("housecode")).shortValue();
@@ -305,9 +293,6 @@ public class RadiatorFht80bHandler extends BaseThingHandler {
             fht80HandlerStatus = ThingStatusDetail.HANDLER_INITIALIZING_ERROR;
             return;
         }
-        if (configuration.containsKey(CRON_PATTERN_DEVICE_PING)) {
-            cronPatternDevicePing = configuration.get(CRON_PATTERN_DEVICE_PING).toString();
-        }
 
         Bridge bridge = getBridge();
         if (bridge == null) {
@@ -322,36 +307,8 @@ public class RadiatorFht80bHandler extends BaseThingHandler {
                 updateStatus(ThingStatus.OFFLINE, ThingStatusDetail.BRIDGE_OFFLINE);
             }
         }
-        try {
-            refreshJob = cronScheduler.schedule(() -> {
-                LOGGER.log(Level.FINE, "Try run trigger reporting for {0}", housecode);
-                try {
-                    final BridgeHandler myBridge = getBridge().getHandler();
-                    if (myBridge instanceof SpswBridgeHandler spswBridgeHandler) {
-                        spswBridgeHandler.setClock(housecode, LocalDateTime.now());
-                        spswBridgeHandler.initFhtReporting(housecode);
-                        LOGGER.log(Level.INFO, "Did run update clock and trigger reporting of {0} succesfully", housecode);
-                    } else {
-                        LOGGER.log(Level.SEVERE, "Reporting for {0} not triggerd, can't get bridge.", housecode);
-                    }
-                } catch (IOException ioe) {
-                    LOGGER.log(Level.SEVERE, "Could not init fht reporting for " + housecode + "due to an IO error", ioe);
-                } catch (NullPointerException npe) {
-                    LOGGER.log(Level.SEVERE, "Could not init fht reporting for " + housecode + "due cul adapter may be null", npe);
-                }
-            }, cronPatternDevicePing);
-        } catch (Exception ex) {
-            LOGGER.log(Level.SEVERE, "Could not schedule fht reporting for:" + housecode, ex);
-            updateStatus(ThingStatus.OFFLINE, ThingStatusDetail.CONFIGURATION_ERROR, "Can't schedule refresh job. " + ex);
-            fht80HandlerStatus = ThingStatusDetail.CONFIGURATION_ERROR;
-        }
-    }
-
-    @Override
-    public void dispose() {
-        if (refreshJob != null) {
-            refreshJob.cancel(false);
-        }
+        //The clock and the reporting are maintained by the bridge, see FhtMaintenance
+        restoreStates();
     }
 
     public short getHousecode() {
@@ -359,20 +316,20 @@ public class RadiatorFht80bHandler extends BaseThingHandler {
     }
 
     private void updateMode(FhtModeMessage modeMsg) {
-        updateState(new ChannelUID(getThing().getUID(), CHANNEL_MODE), new StringType(modeMsg.mode.name()));
+        updateState(channels.get(FhzChannel.MODE), new StringType(modeMsg.mode.name()));
         switch (modeMsg.mode) {
             case AUTO -> {
-                updateState(new ChannelUID(getThing().getUID(), CHANNEL_HOLYDAY_END_DATE), new StringType());
-                updateState(new ChannelUID(getThing().getUID(), CHANNEL_PARTY_END_TIME), new StringType());
+                updateState(channels.get(FhzChannel.HOLYDAY_END_DATE), new StringType());
+                updateState(channels.get(FhzChannel.PARTY_END_TIME), new StringType());
             }
             case MANUAL -> {
-                updateState(new ChannelUID(getThing().getUID(), CHANNEL_HOLYDAY_END_DATE), new StringType());
-                updateState(new ChannelUID(getThing().getUID(), CHANNEL_PARTY_END_TIME), new StringType());
+                updateState(channels.get(FhzChannel.HOLYDAY_END_DATE), new StringType());
+                updateState(channels.get(FhzChannel.PARTY_END_TIME), new StringType());
             }
             case PARTY ->
-                updateState(new ChannelUID(getThing().getUID(), CHANNEL_HOLYDAY_END_DATE), new StringType());
+                updateState(channels.get(FhzChannel.HOLYDAY_END_DATE), new StringType());
             case HOLIDAY ->
-                updateState(new ChannelUID(getThing().getUID(), CHANNEL_PARTY_END_TIME), new StringType());
+                updateState(channels.get(FhzChannel.PARTY_END_TIME), new StringType());
             default -> {
             }
         }
@@ -383,63 +340,63 @@ public class RadiatorFht80bHandler extends BaseThingHandler {
             case MODE ->
                 updateMode((FhtModeMessage) fhtMsg);
             case MONDAY_TIMES ->
-                update_FROM_TO(CHANNEL_MONDAY, (FhtTimesMessage) fhtMsg);
+                update_FROM_TO(DayOfWeek.MONDAY, (FhtTimesMessage) fhtMsg);
             case TUESDAY_TIMES ->
-                update_FROM_TO(CHANNEL_TUESDAY, (FhtTimesMessage) fhtMsg);
+                update_FROM_TO(DayOfWeek.TUESDAY, (FhtTimesMessage) fhtMsg);
             case WEDNESDAY_TIMES ->
-                update_FROM_TO(CHANNEL_WEDNESDAY, (FhtTimesMessage) fhtMsg);
+                update_FROM_TO(DayOfWeek.WEDNESDAY, (FhtTimesMessage) fhtMsg);
             case THURSDAY_TIMES ->
-                update_FROM_TO(CHANNEL_THURSDAY, (FhtTimesMessage) fhtMsg);
+                update_FROM_TO(DayOfWeek.THURSDAY, (FhtTimesMessage) fhtMsg);
             case FRIDAY_TIMES ->
-                update_FROM_TO(CHANNEL_FRIDAY, (FhtTimesMessage) fhtMsg);
+                update_FROM_TO(DayOfWeek.FRIDAY, (FhtTimesMessage) fhtMsg);
             case SATURDAYDAY_TIMES ->
-                update_FROM_TO(CHANNEL_SATURDAY, (FhtTimesMessage) fhtMsg);
+                update_FROM_TO(DayOfWeek.SATURDAY, (FhtTimesMessage) fhtMsg);
             case SUNDAYDAY_TIMES ->
-                update_FROM_TO(CHANNEL_SUNDAY, (FhtTimesMessage) fhtMsg);
+                update_FROM_TO(DayOfWeek.SUNDAY, (FhtTimesMessage) fhtMsg);
             case WARNINGS -> {
                 final Set<Fht80bWarning> warnings = ((FhtWarningMessage) fhtMsg).warnings;
                 if (warnings.contains(Fht80bWarning.BATT_LOW)) {
-                    updateState(new ChannelUID(getThing().getUID(), CHANNEL_BATT_LOW), OnOffType.ON);
+                    updateState(channels.get(FhzChannel.BATT_LOW), OnOffType.ON);
                 } else {
-                    updateState(new ChannelUID(getThing().getUID(), CHANNEL_BATT_LOW), OnOffType.OFF);
+                    updateState(channels.get(FhzChannel.BATT_LOW), OnOffType.OFF);
                 }
             }
             case DAY_TEMP ->
-                updateState(new ChannelUID(getThing().getUID(), CHANNEL_TEMPERATURE_DAY),
+                updateState(channels.get(FhzChannel.TEMPERATURE_DAY),
                         new DecimalType(((FhtTempMessage) fhtMsg).temp));
             case NIGHT_TEMP ->
-                updateState(new ChannelUID(getThing().getUID(), CHANNEL_TEMPERATURE_NIGHT),
+                updateState(channels.get(FhzChannel.TEMPERATURE_NIGHT),
                         new DecimalType(((FhtTempMessage) fhtMsg).temp));
             case WINDOW_OPEN_TEMP ->
-                updateState(new ChannelUID(getThing().getUID(), CHANNEL_TEMPERATURE_WINDOW_OPEN),
+                updateState(channels.get(FhzChannel.TEMPERATURE_WINDOW_OPEN),
                         new DecimalType(((FhtTempMessage) fhtMsg).temp));
             case MANU_TEMP -> {
             }
             case HOLIDAY_END_DATE -> {
                 updateHolidays((FhtDateMessage) fhtMsg);
-                updateState(new ChannelUID(getThing().getUID(), CHANNEL_MODE),
+                updateState(channels.get(FhzChannel.MODE),
                         new StringType(Fht80bMode.HOLIDAY.name()));
             }
             case PARTY_END_TIME -> {
-                updateState(new ChannelUID(getThing().getUID(), CHANNEL_PARTY_END_TIME),
+                updateState(channels.get(FhzChannel.PARTY_END_TIME),
                         new StringType((((FhtTimeMessage) fhtMsg).time.format(TIME_FORMATTER))));
-                updateState(new ChannelUID(getThing().getUID(), CHANNEL_MODE), new StringType(Fht80bMode.PARTY.name()));
+                updateState(channels.get(FhzChannel.MODE), new StringType(Fht80bMode.PARTY.name()));
             }
             case VALVE -> {
                 //Do ignore FhtValveSynhcMessage
                 if (fhtMsg instanceof FhtValvePosMessage fhtValvePosMessage) {
-                    updateState(new ChannelUID(getThing().getUID(), CHANNEL_VALVE_POSITION),
+                    updateState(channels.get(FhzChannel.VALVE_POSITION),
                             new DecimalType((fhtValvePosMessage.position)));
-                    updateState(new ChannelUID(getThing().getUID(), CHANNEL_VALVE_ALLOW_LOW_BATT_BEEP),
+                    updateState(channels.get(FhzChannel.VALVE_ALLOW_LOW_BATT_BEEP),
                             fhtValvePosMessage.allowLowBatteryBeep ? OnOffType.ON : OnOffType.OFF);
                 }
             }
             case MEASURED_TEMP ->
-                updateState(new ChannelUID(getThing().getUID(), CHANNEL_TEMPERATURE_MEASURED),
+                updateState(channels.get(FhzChannel.TEMPERATURE_MEASURED),
                         new DecimalType((((FhtTempMessage) fhtMsg).temp)));
             case DESIRED_TEMP -> {
                 desiredTemp = ((FhtTempMessage) fhtMsg).temp;
-                updateState(new ChannelUID(getThing().getUID(), CHANNEL_DESIRED_TEMPERATURE),
+                updateState(channels.get(FhzChannel.DESIRED_TEMPERATURE),
                         new DecimalType(desiredTemp));
             }
 
@@ -454,38 +411,29 @@ public class RadiatorFht80bHandler extends BaseThingHandler {
         if (result.isBefore(now)) {
             result = result.plusYears(1);
         }
-        updateState(new ChannelUID(getThing().getUID(), CHANNEL_HOLYDAY_END_DATE), new DateTimeType(result));
+        updateState(channels.get(FhzChannel.HOLYDAY_END_DATE), new DateTimeType(result));
     }
 
     private final static DateTimeFormatter TIME_FORMATTER = DateTimeFormatter.ofPattern("HH:mm");
     private final static String TIME_NOT_SET = "XX:XX";
+    private final static FhzChannel[] DAY_CHANNELS = {FhzChannel.MONDAY, FhzChannel.TUESDAY, FhzChannel.WEDNESDAY, FhzChannel.THURSDAY,
+        FhzChannel.FRIDAY, FhzChannel.SATURDAY, FhzChannel.SUNDAY};
 
-    private void update_FROM_TO(String channelFromTo, FhtTimesMessage timesMessage) {
-        StringBuilder sb = new StringBuilder();
-        if (timesMessage.timeFrom1 != null) {
-            TIME_FORMATTER.formatTo(timesMessage.timeFrom1, sb);
-        } else {
-            sb.append(TIME_NOT_SET);
-        }
-        sb.append('-');
-        if (timesMessage.timeTo1 != null) {
-            TIME_FORMATTER.formatTo(timesMessage.timeTo1, sb);
-        } else {
-            sb.append(TIME_NOT_SET);
-        }
-        sb.append(' ');
-        if (timesMessage.timeFrom2 != null) {
-            TIME_FORMATTER.formatTo(timesMessage.timeFrom2, sb);
-        } else {
-            sb.append(TIME_NOT_SET);
-        }
-        sb.append('-');
-        if (timesMessage.timeTo2 != null) {
-            TIME_FORMATTER.formatTo(timesMessage.timeTo2, sb);
-        } else {
-            sb.append(TIME_NOT_SET);
+    private void update_FROM_TO(DayOfWeek dayOfWeek, FhtTimesMessage timesMessage) {
+        final FhtDayCycle cycle = FhtDayCycle.of(timesMessage);
+        //Federated bridges may report the same device concurrently, keep the day and the week in step
+        synchronized (cycles) {
+            updateState(channels.get(DAY_CHANNELS[dayOfWeek.ordinal()]), new StringType(cycle.format()));
+            receivedCycles[dayOfWeek.ordinal()] = cycle;
+            updateState(channels.get(FhzChannel.WEEK_PROGRAM), new StringType(FhtDayCycle.formatWeek(receivedCycles)));
+            //The FHT80b reports the new switch times back, this acknowledges what we sent
+            if (cycle.equals(pendingCycles.get(dayOfWeek))) {
+                pendingCycles.remove(dayOfWeek);
+                if (pendingCycles.isEmpty()) {
+                    updateState(channels.get(FhzChannel.WEEK_PROGRAM_STATUS), new StringType("ACKNOWLEDGED"));
+                }
+            }
         }
-        updateState(new ChannelUID(getThing().getUID(), channelFromTo), new StringType(sb.toString()));
     }
 
 }
@@ -21,15 +21,19 @@
  */
 package de.ibapl.openhab.fhz4j.handler;
 
-import de.ibapl.fhz4j.api.FhzHandler;
 import de.ibapl.fhz4j.api.Protocol;
 import de.ibapl.fhz4j.api.Request;
 import de.ibapl.fhz4j.api.Response;
 import de.ibapl.fhz4j.cul.CulAdapter;
 import de.ibapl.fhz4j.cul.CulEobMessage;
+import de.ibapl.fhz4j.cul.CulFhtDeviceOutBufferContentRequest;
+import de.ibapl.fhz4j.cul.CulGetFirmwareVersionRequest;
+import de.ibapl.fhz4j.cul.CulGetHardwareVersionRequest;
+import de.ibapl.fhz4j.cul.CulGetSlowRfSettingsRequest;
 import de.ibapl.fhz4j.cul.CulLovfMessage;
 import de.ibapl.fhz4j.cul.CulMessage;
 import de.ibapl.fhz4j.cul.CulMessageListener;
+import de.ibapl.fhz4j.cul.CulRemainingFhtDeviceOutBufferSizeRequest;
 import de.ibapl.fhz4j.cul.SlowRfFlag;
 import de.ibapl.fhz4j.protocol.em.EmMessage;
 import de.ibapl.fhz4j.protocol.evohome.DeviceId;
@@ -54,7 +58,9 @@ import de.ibapl.spsw.logging.SupressReadTimeoutExceptionLogWriter;
 import de.ibapl.spsw.logging.TimeStampLogging;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.math.BigDecimal;
+import java.nio.file.Path;
 import java.time.DayOfWeek;
 import java.time.Instant;
 import java.time.LocalDate;
@@ -62,16 +68,24 @@ import java.time.LocalDateTime;
 import java.time.LocalTime;
 import java.time.format.DateTimeFormatter;
 import java.util.Collections;
+import java.util.EnumMap;
 import java.util.EnumSet;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import org.openhab.core.OpenHAB;
 import org.openhab.core.config.core.Configuration;
+import org.openhab.core.library.types.DecimalType;
 import org.openhab.core.scheduler.CronScheduler;
 import org.openhab.core.scheduler.ScheduledCompletableFuture;
 import org.openhab.core.thing.Bridge;
@@ -91,6 +105,21 @@ import org.openhab.core.types.Command;
 //TODO rename to something like CulHandler
 public class SpswBridgeHandler extends BaseBridgeHandler {
 
+    /**
+     * The background discovery gets the messages of unknown devices only, if
+     * they are due to be published.
+     */
+    public interface BackgroundDiscovery extends CulMessageListener {
+
+        /**
+         * Called before the message is parsed, must not allocate.
+         *
+         * @return true if the next message of the unknown device may be
+         * published.
+         */
+        boolean isDue(CulFederation.Kind kind, int address);
+    }
+
     public static final Set<ThingTypeUID> SUPPORTED_THING_TYPES_UIDS;
     
     static {
@@ -106,20 +135,51 @@ public class SpswBridgeHandler extends BaseBridgeHandler {
 
         float lastSignalStrength = Float.NaN;
 
+        /**
+         * The CUL reports the RSSI before the message, so it belongs to the
+         * next message only.
+         */
+        private float takeSignalStrength() {
+            final float result = lastSignalStrength;
+            lastSignalStrength = Float.NaN;
+            return result;
+        }
+
+        /**
+         * @return false if another bridge of the federation already
+         * dispatched this frame.
+         */
+        private boolean acceptFederated(CulFederation.Kind kind, int address) {
+            final CulFederation f = federation;
+            final CulFrameHash fh = frameHash;
+            if (f == null || fh == null || f.accept(SpswBridgeHandler.this, kind, address, fh.get(), lastSignalStrength)) {
+                return true;
+            }
+            lastSignalStrength = Float.NaN;
+            return false;
+        }
+
         @Override
         public void emDataParsed(EmMessage emMsg) {
-            final Em1000EmHandler emh = emThingHandler.get(emMsg.address);
+            latency.dispatch();
+            if (!acceptFederated(CulFederation.Kind.EM, emMsg.address)) {
+                return;
+            }
+            final Em1000EmHandler emh = findEmHandler(emMsg.address);
             if (emh == null) {
                 // Discovery
-                if (discoveryListener != null) {
-                    discoveryListener.emDataParsed(emMsg);
+                final CulMessageListener dl = discovery();
+                if (dl != null) {
+                    dl.emDataParsed(emMsg);
                 }
                 return;
             }
             if (logExplainRead != null) {
                 logExplainRead.explainRead("EM Message: %s", emMsg);
             }
+            emh.received(takeSignalStrength());
             emh.updateFromMsg(emMsg);
+            latency.handled(CulLatency.Type.EM);
         }
 
         @Override
@@ -131,6 +191,7 @@ public class SpswBridgeHandler extends BaseBridgeHandler {
 
         @Override
         public void fhtDataParsed(FhtMessage fhtMsg) {
+            latency.dispatch();
             if (logExplainRead != null) {
                 if (Float.isNaN(lastSignalStrength)) {
                     logExplainRead.explainRead("FHT Message: %s", fhtMsg);
@@ -138,23 +199,36 @@ public class SpswBridgeHandler extends BaseBridgeHandler {
                     logExplainRead.explainRead("FHT Message: %s, signal strength: %f", fhtMsg, lastSignalStrength);
                 }
             }
-            final RadiatorFht80bHandler rfh = fhtThingHandler.get(fhtMsg.housecode);
+            if (!acceptFederated(CulFederation.Kind.FHT, fhtMsg.housecode)) {
+                return;
+            }
+            final RadiatorFht80bHandler rfh = findFhtHandler(fhtMsg.housecode);
             if (rfh == null) {
                 // Discovery
-                if (discoveryListener != null) {
-                    discoveryListener.fhtDataParsed(fhtMsg);
+                final CulMessageListener dl = discovery();
+                if (dl != null) {
+                    dl.fhtDataParsed(fhtMsg);
                 }
                 return;
             }
             if (fhtMsg instanceof Fht8bMessage msg && !msg.fromFht_8B) {
                 //no-op Its a message to the Fht8b, not from
             } else {
+                final CulFederation f = federation;
+                if (f == null) {
+                    fhtReceived(fhtMsg, latency.getReceivedNanos());
+                } else {
+                    f.fhtReceived(fhtMsg, latency.getReceivedNanos());
+                }
+                rfh.received(takeSignalStrength());
                 rfh.updateFromFhtMsg(fhtMsg);
+                latency.handled(CulLatency.Type.FHT);
             }
         }
 
         @Override
         public void fht80TfDataParsed(Fht80TfMessage fht80TfMsg) {
+            latency.dispatch();
             if (logExplainRead != null) {
                 if (Float.isNaN(lastSignalStrength)) {
                     logExplainRead.explainRead("FHT80 TF Message: %s", fht80TfMsg);
@@ -162,15 +236,21 @@ public class SpswBridgeHandler extends BaseBridgeHandler {
                     logExplainRead.explainRead("FHT80 TF Message: %s, signal strength: %f", fht80TfMsg, lastSignalStrength);
                 }
             }
-            final Fht80TfHandler fht80TfHandler = fht80TfThingHandler.get(fht80TfMsg.address);
+            if (!acceptFederated(CulFederation.Kind.FHT80_TF, fht80TfMsg.address)) {
+                return;
+            }
+            final Fht80TfHandler fht80TfHandler = findFht80TfHandler(fht80TfMsg.address);
             if (fht80TfHandler == null) {
                 // Discovery
-                if (discoveryListener != null) {
-                    discoveryListener.fht80TfDataParsed(fht80TfMsg);
+                final CulMessageListener dl = discovery();
+                if (dl != null) {
+                    dl.fht80TfDataParsed(fht80TfMsg);
                 }
                 return;
             }
+            fht80TfHandler.received(takeSignalStrength());
             fht80TfHandler.updateFromFht80TfMsg(fht80TfMsg);
+            latency.handled(CulLatency.Type.FHT80_TF);
         }
 
         @Override
@@ -182,9 +262,10 @@ public class SpswBridgeHandler extends BaseBridgeHandler {
                     logExplainRead.explainRead("FHT Message: %s, signal strength: %f", fhtMsg, lastSignalStrength);
                 }
             }
-            if (discoveryListener != null) {
+            final CulMessageListener dl = discovery();
+            if (dl != null && findFhtHandler(fhtMsg.housecode) == null) {
                 // Discovery
-                discoveryListener.fhtDataParsed(fhtMsg);
+                dl.fhtDataParsed(fhtMsg);
             }
         }
 
@@ -201,6 +282,7 @@ public class SpswBridgeHandler extends BaseBridgeHandler {
 
         @Override
         public void hmsDataParsed(HmsMessage hmsMsg) {
+            latency.dispatch();
             if (logExplainRead != null) {
                 if (Float.isNaN(lastSignalStrength)) {
                     logExplainRead.explainRead("HMS Message: %s", hmsMsg);
@@ -208,15 +290,21 @@ public class SpswBridgeHandler extends BaseBridgeHandler {
                     logExplainRead.explainRead("HMS Message: %s, signal strength: %f", hmsMsg, lastSignalStrength);
                 }
             }
-            final Hms100TfHandler hmsh = hmsThingHandler.get(hmsMsg.housecode);
+            if (!acceptFederated(CulFederation.Kind.HMS, hmsMsg.housecode)) {
+                return;
+            }
+            final Hms100TfHandler hmsh = findHmsHandler(hmsMsg.housecode);
             if (hmsh == null) {
                 // Discovery
-                if (discoveryListener != null) {
-                    discoveryListener.hmsDataParsed(hmsMsg);
+                final CulMessageListener dl = discovery();
+                if (dl != null) {
+                    dl.hmsDataParsed(hmsMsg);
                 }
                 return;
             }
+            hmsh.received(takeSignalStrength());
             hmsh.updateFromMsg(hmsMsg);
+            latency.handled(CulLatency.Type.HMS);
         }
 
         @Override
@@ -230,39 +318,49 @@ public class SpswBridgeHandler extends BaseBridgeHandler {
         public void culMessageParsed(CulMessage msg) {
             if (logExplainRead != null) {
                 logExplainRead.explainRead("CUL Message: %s", msg);
-                if ((CulLovfMessage.LOVF == msg) || (CulEobMessage.EOB == msg)) {
-                    try {
-                        culAdapter.gatherCulDebugInfos();
-                    } catch (IOException ioe) {
-                        LOGGER.log(Level.SEVERE, "Can't gather CUL debug infos", ioe);
-                    }
+            }
+            final CulDiagnostics diag = diagnostics;
+            if (diag != null) {
+                if (CulLovfMessage.LOVF == msg) {
+                    diag.anomaly(CulDiagnostics.Trigger.LOVF);
+                } else if (CulEobMessage.EOB == msg) {
+                    diag.anomaly(CulDiagnostics.Trigger.EOB);
                 }
             }
         }
 
         @Override
         public void evoHomeParsed(EvoHomeMessage evoHomeMsg) {
+            latency.dispatch();
             if (logExplainRead != null) {
                 logExplainRead.explainRead("EvoHome Message: %s", evoHomeMsg);
             }
             if (evoHomeMsg instanceof EvoHomeDeviceMessage edm) {
-                final EvoHomeHandler reh = evoHomeThingHandler.get(edm.deviceId1.id);
+                if (!acceptFederated(CulFederation.Kind.EVO_HOME, edm.deviceId1.id)) {
+                    return;
+                }
+                final EvoHomeHandler reh = findEvoHomeHandler(edm.deviceId1.id);
                 if (reh == null) {
                     // Discovery
-                    if (discoveryListener != null) {
-                        discoveryListener.evoHomeParsed(edm);
+                    final CulMessageListener dl = discovery();
+                    if (dl != null) {
+                        dl.evoHomeParsed(edm);
                     }
                     return;
                 }
 
+                reh.received(takeSignalStrength());
                 reh.updateFromMsg(edm);
+                latency.handled(CulLatency.Type.EVO_HOME);
             }
         }
 
         @Override
         public void signalStrength(float signalStrength) {
-            if (logExplainRead != null) {
-                lastSignalStrength = signalStrength;
+            lastSignalStrength = signalStrength;
+            final CulMessageListener dl = discovery();
+            if (dl != null) {
+                dl.signalStrength(signalStrength);
             }
         }
 
@@ -278,40 +376,11 @@ public class SpswBridgeHandler extends BaseBridgeHandler {
 
         @Override
         public void onIOException(IOException ioe) {
-            /* We synchronize on thne writeLock, while this takes time,
-             * and until we setup a new culAdapter it woult be pointless to try to send anything...
-             */
-            synchronized (writeLock) {
-
-                LOGGER.log(Level.SEVERE, "Got IOE in CUL Adapter", ioe);
-                try {
-                    culAdapter.close();
-                } catch (Exception e) {
-                }
-                //Delete any reference to culAdaper, so gc can pick it up.
-                culAdapter = null;
-                //Try to run garbage collection
-                LOGGER.log(Level.SEVERE, "set culAdapter to null and run gc first time");
-                System.gc();
-                LOGGER.log(Level.SEVERE, "gc ran first time, wait 5s");
-                try {
-                    Thread.sleep(5000);//try to recover => 5 s rest
-                } catch (InterruptedException ex) {
-                    //nothing to do
-                }
-                //Try to run garbage collection again ... sometimes only this will pick it up
-                LOGGER.log(Level.SEVERE, "set culAdapter to null and run gc second time");
-                System.gc();
-                LOGGER.log(Level.SEVERE, "gc ran second time, try to create new culAdapter");
-                try {
-                    culAdapter = new CulAdapter(createSerialPortSocket(), this, speed);
-                    initCulAdapter();
-                } catch (IOException e) {
-                    updateStatus(ThingStatus.OFFLINE, ThingStatusDetail.COMMUNICATION_ERROR, e.getMessage());
-                    LOGGER.log(Level.SEVERE, "Can't reopen Serial port", e);
-                }
-                LOGGER.log(Level.SEVERE, "Creating new culAdapter succeeded");
-            }
+            //Called on the reader thread, so do not wait here; the supervisor reconnects on the scheduler.
+            LOGGER.log(Level.SEVERE, "Got IOE in CUL Adapter", ioe);
+            closeCulAdapter();
+            updateStatus(ThingStatus.OFFLINE, ThingStatusDetail.COMMUNICATION_ERROR, ioe.getMessage());
+            reconnectSupervisor.connectionLost();
         }
     }
 
@@ -323,6 +392,57 @@ public class SpswBridgeHandler extends BaseBridgeHandler {
     private static final String PROTOCOL_FHT_PARAM = "protocolFHT";
     private static final String PROTOCOL_EVO_HOME_PARAM = "protocolEvoHome";
     private static final String LOG_SERIAL_PORT = "logSerialPort";
+    private static final String FHT_COALESCE_DELAY = "fhtCoalesceDelay";
+    private static final long DEFAULT_FHT_COALESCE_DELAY = 2;
+    private static final String DIAGNOSTICS = "diagnostics";
+    private static final String DIAGNOSTICS_INTERVAL = "diagnosticsInterval";
+    private static final long DEFAULT_DIAGNOSTICS_INTERVAL = 60;
+    private static final int DIAGNOSTICS_CAPACITY = 64;
+    private static final String RECEIVE_QUEUE_SIZE = "receiveQueueSize";
+    private static final String RECEIVE_QUEUE_OVERFLOW = "receiveQueueOverflow";
+    private static final String RECORD_SERIAL_PORT = "recordSerialPort";
+    private static final String RECORD_SEGMENT_SIZE = "recordSegmentSize";
+    private static final int DEFAULT_RECORD_SEGMENT_SIZE = 4;
+    private static final String RECORD_SEGMENTS = "recordSegments";
+    private static final int DEFAULT_RECORD_SEGMENTS = 16;
+    private static final String EVO_HOME_DIAGNOSTICS = "evoHomeDiagnostics";
+    private static final String EVO_HOME_DIAGNOSTICS_FILE_SIZE = "evoHomeDiagnosticsFileSize";
+    private static final int DEFAULT_EVO_HOME_DIAGNOSTICS_FILE_SIZE = 1;
+    private static final String EVO_HOME_DIAGNOSTICS_FILES = "evoHomeDiagnosticsFiles";
+    private static final int DEFAULT_EVO_HOME_DIAGNOSTICS_FILES = 4;
+    private static final int EVO_HOME_DIAGNOSTICS_CAPACITY = 4096;
+    private static final String BACKGROUND_DISCOVERY = "backgroundDiscovery";
+    private static final String BACKGROUND_DISCOVERY_INTERVAL = "backgroundDiscoveryInterval";
+    private static final long DEFAULT_BACKGROUND_DISCOVERY_INTERVAL = 24;
+    private static final String BACKGROUND_DISCOVERY_MIN_RSSI = "backgroundDiscoveryMinRssi";
+    private static final float DEFAULT_BACKGROUND_DISCOVERY_MIN_RSSI = -90;
+    private static final String FEDERATION = "federation";
+    private static final String FHT_TRANSMIT_WINDOWS = "fhtTransmitWindows";
+    private static final String MAINTENANCE_CRON = "maintenanceCron";
+    private static final String DEFAULT_MAINTENANCE_CRON = "0 0 0 ? * SUN *";
+    private static final String MAINTENANCE_WINDOW = "maintenanceWindow";
+    private static final long DEFAULT_MAINTENANCE_WINDOW = 60;
+    private static final String STATE_SNAPSHOT = "stateSnapshot";
+    private static final String STATE_SNAPSHOT_MAX_AGE = "stateSnapshotMaxAge";
+    private static final long DEFAULT_STATE_SNAPSHOT_MAX_AGE = 24;
+    private static final String RECEIVE_FILTER = "receiveFilter";
+    private static final String SLOW_RF_FLAGS = "slowRfFlags";
+    private static final Set<SlowRfFlag> DEFAULT_SLOW_RF_FLAGS = EnumSet.of(SlowRfFlag.REPORT_PACKAGE, SlowRfFlag.REPORT_FHT_PROTOCOL_MESSAGES,
+            SlowRfFlag.WITH_RSSI);
+    private static final String COMMAND_TIMEOUT = "commandTimeout";
+    private static final long DEFAULT_COMMAND_TIMEOUT = 30;
+    private static final int STATE_SNAPSHOT_SLOTS = 4096;
+    //the FHT buffer of the CUL has less than 1000 bytes
+    private static final int MAX_FHT_BUFFER_DIGITS = 3;
+    /**
+     * Repeated status queries within this time are answered from the last
+     * requests.
+     */
+    private static final long CUL_STATUS_TTL_NS = TimeUnit.SECONDS.toNanos(5);
+    /**
+     * A maintenance ping waits while more commands are queued.
+     */
+    private static final int MAX_MAINTENANCE_TX_DEPTH = 2;
 
     private static final Logger LOGGER = Logger.getLogger("d.i.o.f.h.SpswBridgeHandler");
 
@@ -332,17 +452,75 @@ public class SpswBridgeHandler extends BaseBridgeHandler {
     private boolean protocolEvoHome;
     private boolean protocolFHT;
     private boolean logSerialPort;
+    private long fhtCoalesceDelayNanos;
+    private long diagnosticsInterval;
+    private int receiveQueueSize;
+    private CulReceiveQueue.Overflow receiveQueueOverflow;
 
-    private CulAdapter culAdapter;
-    private final Object writeLock = new Object();
-    private final Map<Short, RadiatorFht80bHandler> fhtThingHandler = new HashMap<>();
-    private final Map<Integer, Fht80TfHandler> fht80TfThingHandler = new HashMap<>();
-    private final Map<Integer, EvoHomeHandler> evoHomeThingHandler = new HashMap<>();
-    private final Map<Short, Hms100TfHandler> hmsThingHandler = new HashMap<>();
-    private final Map<Short, Em1000EmHandler> emThingHandler = new HashMap<>();
-    private CulMessageListener discoveryListener;
+    /**
+     * Written while holding the {@link #writeLock}, volatile for the readers
+     * which do not write to the CUL.
+     */
+    private volatile CulAdapter culAdapter;
+    /**
+     * Not synchronized, a virtual writer thread blocked on the serial port
+     * must not pin its carrier thread.
+     */
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private volatile long commandTimeoutNanos;
+    private final CulTxQueue txQueue = new CulTxQueue(this::writeTx);
+    private final CulReconnectSupervisor reconnectSupervisor = new CulReconnectSupervisor(this::reconnect, scheduler);
+    private final IntCopyOnWriteMap<RadiatorFht80bHandler> fhtThingHandler = new IntCopyOnWriteMap<>();
+    private final IntCopyOnWriteMap<Fht80TfHandler> fht80TfThingHandler = new IntCopyOnWriteMap<>();
+    private final IntCopyOnWriteMap<EvoHomeHandler> evoHomeThingHandler = new IntCopyOnWriteMap<>();
+    private final IntCopyOnWriteMap<Hms100TfHandler> hmsThingHandler = new IntCopyOnWriteMap<>();
+    private final IntCopyOnWriteMap<Em1000EmHandler> emThingHandler = new IntCopyOnWriteMap<>();
+    private volatile CulMessageListener discoveryListener;
+    private volatile BackgroundDiscovery backgroundDiscovery;
+    private long backgroundDiscoveryPeriodNanos = TimeUnit.HOURS.toNanos(DEFAULT_BACKGROUND_DISCOVERY_INTERVAL);
+    private float backgroundDiscoveryMinSignalStrength = DEFAULT_BACKGROUND_DISCOVERY_MIN_RSSI;
     private LogExplainRead logExplainRead;
     private LogExplainWrite logExplainWrite;
+    private volatile CulDiagnostics diagnostics;
+    private CulReceiveQueue receiveQueue;
+    private CulFrameRecorder recorder;
+    private CulReceiveFilter receiveFilter;
+    private volatile CulFrameHash frameHash;
+    /**
+     * The running replay, guarded by this.
+     */
+    private CulReplay replay;
+    private Set<SlowRfFlag> slowRfFlags = DEFAULT_SLOW_RF_FLAGS;
+    private EvoHomeDiagnosticSink evoHomeDiagnostics;
+    private volatile CulFederation federation;
+    private final CulLatency latency = new CulLatency();
+    private ScheduledFuture<?> latencyJob;
+    private final ChannelUID messageRateChannel;
+    private final ChannelUID latencyP99Channel;
+    //guarded by this
+    private volatile CulStatus culStatus;
+    /**
+     * Held while the status requests are sent, not the monitor of the
+     * handler, which the framework uses.
+     */
+    private final ReentrantLock culStatusLock = new ReentrantLock();
+    private final FhtDeliveryTracker fhtDelivery = new FhtDeliveryTracker((hc, property, operation) -> submitFht(hc, property, operation),
+            this::remainingFhtBuffer);
+    private ScheduledFuture<?> fhtDeliveryJob;
+    private final FhtTransmitWindows fhtWindows = new FhtTransmitWindows();
+    private boolean fhtTransmitWindows;
+    private final FhtMaintenance fhtMaintenance = new FhtMaintenance(scheduler, this::pingFht, this::hasRoomForFht);
+    private ScheduledCompletableFuture maintenanceJob;
+    private String maintenanceCron;
+    private long maintenanceWindowNanos;
+    private volatile StateSnapshot stateSnapshot;
+    private long stateSnapshotMaxAgeMillis;
+    private ScheduledFuture<?> stateSnapshotJob;
+    /**
+     * The listener passed to the CulAdapter, either the {@link Listener} or
+     * the {@link CulReceiveQueue} in front of it.
+     */
+    private CulMessageListener culMessageListener;
 
     //DEBUG
     private final CronScheduler cronScheduler;
@@ -353,13 +531,18 @@ public class SpswBridgeHandler extends BaseBridgeHandler {
         this.serialPortSocketFactories = serialPortSocketFactories;
         this.cronScheduler = cronScheduler;
         protocolFHT = true;
+        messageRateChannel = new ChannelUID(bridge.getUID(), FHZ4JBindingConstants.CHANNEL_MESSAGE_RATE);
+        latencyP99Channel = new ChannelUID(bridge.getUID(), FHZ4JBindingConstants.CHANNEL_LATENCY_P99);
     }
 
     private SerialPortSocket createSerialPortSocket() throws IOException {
         final String opendString = DateTimeFormatter.ISO_INSTANT.format(Instant.now());
         for (SerialPortSocketFactory spsf : serialPortSocketFactories) {
             try {
-                final SerialPortSocket sps = spsf.open(port);
+                SerialPortSocket sps = spsf.open(port);
+                if (recorder != null) {
+                    sps = recorder.wrap(sps);
+                }
                 if (logSerialPort) {
                     LoggingSerialPortSocket result = LoggingSerialPortSocket.wrapWithCustomOutputStream(sps,
                             new SupressReadTimeoutExceptionLogWriter(new FileOutputStream("CUL_SpswBridgeHandler_" + opendString + ".log.txt"),
@@ -368,12 +551,21 @@ public class SpswBridgeHandler extends BaseBridgeHandler {
                                     true));
                     logExplainRead = result;
                     logExplainWrite = result;
-                    return result;
+                    sps = result;
                 } else {
                     logExplainRead = null;
                     logExplainWrite = null;
-                    return sps;
                 }
+                if (receiveFilter != null) {
+                    //after the recorder and the log, so both stay complete
+                    sps = receiveFilter.wrap(sps);
+                }
+                final CulFrameHash fh = frameHash;
+                if (fh != null) {
+                    //last, it must see the lines the adapter parses
+                    sps = fh.wrap(sps);
+                }
+                return sps;
             } catch (Exception e) {
                 LOGGER.log(Level.INFO, "Can't use spsw factory: " + spsf, e);
             }
@@ -397,6 +589,7 @@ public class SpswBridgeHandler extends BaseBridgeHandler {
             fht80TfThingHandler.put(fth.getAddress(), fth);
             LOGGER.log(Level.INFO, "Added FHT80 TF {0}", fth.getAddress());
         } else if (childHandler instanceof EvoHomeHandler ehh) {
+            ehh.setDiagnosticSink(evoHomeDiagnostics);
             evoHomeThingHandler.put(ehh.getDeviceId(), ehh);
             LOGGER.log(Level.INFO, "Added Evo Home device {0}", ehh.getDeviceId());
         } else if (childHandler instanceof Em1000EmHandler emh) {
@@ -415,10 +608,12 @@ public class SpswBridgeHandler extends BaseBridgeHandler {
         super.childHandlerDisposed(childHandler, childThing);
         if (childHandler instanceof RadiatorFht80bHandler rfh) {
             fhtThingHandler.remove(rfh.getHousecode());
+            fhtMaintenance.remove(rfh.getHousecode());
         } else if (childHandler instanceof Fht80TfHandler fth) {
             fht80TfThingHandler.remove(fth.getAddress());
         } else if (childHandler instanceof EvoHomeHandler ehh) {
             evoHomeThingHandler.remove(ehh.getDeviceId());
+            ehh.setDiagnosticSink(null);
         } else if (childHandler instanceof Em1000EmHandler emh) {
             emThingHandler.remove(emh.getAddress());
         } else if (childHandler instanceof Hms100TfHandler hmsh) {
@@ -428,20 +623,91 @@ public class SpswBridgeHandler extends BaseBridgeHandler {
         }
     }
 
-    private void initCulAdapter() throws IOException {
-        if (protocolEvoHome) {
-            synchronized (writeLock) {
-                culAdapter.initEvoHome();
+    /**
+     * A new listener, which dispatches into the thing handlers of this bridge.
+     * Used to benchmark the receive path without a CUL.
+     */
+    CulMessageListener createListener() {
+        return new Listener();
+    }
+
+    /**
+     * Called by the {@link CulReconnectSupervisor} on the scheduler.
+     */
+    private void reconnect() throws IOException {
+        final CulAdapter cul = new CulAdapter(createSerialPortSocket(), culMessageListener, speed);
+        try {
+            lockWriter();
+        } catch (IOException ioe) {
+            try {
+                cul.close();
+            } catch (Exception e) {
+                ioe.addSuppressed(e);
             }
-        } else if (protocolFHT) {
-            synchronized (writeLock) {
-                culAdapter.initFhz(housecode, EnumSet.of(SlowRfFlag.REPORT_PACKAGE, SlowRfFlag.REPORT_FHT_PROTOCOL_MESSAGES, SlowRfFlag.WITH_RSSI));
+            throw ioe;
+        }
+        try {
+            culAdapter = cul;
+        } finally {
+            writeLock.unlock();
+        }
+        try {
+            initCulAdapter();
+        } catch (IOException ioe) {
+            closeCulAdapter();
+            throw ioe;
+        }
+        updateStatus(ThingStatus.ONLINE);
+    }
+
+    /**
+     * Detach the current culAdapter, so the writers fail fast, and close it.
+     * If a writer hangs on the serial port, the adapter is detached without
+     * the lock, closing the port releases the writer.
+     */
+    private void closeCulAdapter() {
+        final CulAdapter cul;
+        boolean locked;
+        try {
+            lockWriter();
+            locked = true;
+        } catch (IOException ioe) {
+            LOGGER.log(Level.WARNING, "Close the CUL adapter while a writer holds it", ioe);
+            locked = false;
+        }
+        try {
+            cul = culAdapter;
+            culAdapter = null;
+        } finally {
+            if (locked) {
+                writeLock.unlock();
             }
-        } else {
-            //TODO fall back
-            synchronized (writeLock) {
+        }
+        if (cul != null) {
+            try {
+                cul.close();
+            } catch (Exception e) {
+                LOGGER.log(Level.SEVERE, "Could not shutdown fhzAdapter", e);
+            }
+        }
+    }
+
+    private void initCulAdapter() throws IOException {
+        lockWriter();
+        try {
+            if (culAdapter == null) {
+                throw new IOException("CUL adapter is not connected");
+            }
+            if (protocolEvoHome) {
+                culAdapter.initEvoHome();
+            } else if (protocolFHT) {
+                culAdapter.initFhz(housecode, slowRfFlags);
+            } else {
+                //TODO fall back
                 culAdapter.initFhz(housecode);
             }
+        } finally {
+            writeLock.unlock();
         }
     }
 
@@ -468,6 +734,120 @@ public class SpswBridgeHandler extends BaseBridgeHandler {
             logSerialPort = ((Boolean) config.get(LOG_SERIAL_PORT));
         }
 
+        if (config.get(FHT_COALESCE_DELAY) instanceof Number n) {
+            fhtCoalesceDelayNanos = TimeUnit.SECONDS.toNanos(n.longValue());
+        } else {
+            fhtCoalesceDelayNanos = TimeUnit.SECONDS.toNanos(DEFAULT_FHT_COALESCE_DELAY);
+        }
+
+        if (Boolean.TRUE.equals(config.get(DIAGNOSTICS))) {
+            if (config.get(DIAGNOSTICS_INTERVAL) instanceof Number n) {
+                diagnosticsInterval = n.longValue();
+            } else {
+                diagnosticsInterval = DEFAULT_DIAGNOSTICS_INTERVAL;
+            }
+            diagnostics = new CulDiagnostics(this::sendRequest, scheduler, DIAGNOSTICS_CAPACITY);
+        } else {
+            diagnostics = null;
+        }
+
+        if (config.get(RECEIVE_QUEUE_SIZE) instanceof Number n) {
+            receiveQueueSize = n.intValue();
+        } else {
+            receiveQueueSize = 0;
+        }
+        if (config.get(RECEIVE_QUEUE_OVERFLOW) instanceof String s) {
+            try {
+                receiveQueueOverflow = CulReceiveQueue.Overflow.valueOf(s);
+            } catch (IllegalArgumentException iae) {
+                LOGGER.log(Level.WARNING, "Unknown receiveQueueOverflow: {0}", s);
+                receiveQueueOverflow = CulReceiveQueue.Overflow.DROP_OLDEST;
+            }
+        } else {
+            receiveQueueOverflow = CulReceiveQueue.Overflow.DROP_OLDEST;
+        }
+
+        if (Boolean.TRUE.equals(config.get(RECORD_SERIAL_PORT))) {
+            final int segmentSize = config.get(RECORD_SEGMENT_SIZE) instanceof Number n ? n.intValue() : DEFAULT_RECORD_SEGMENT_SIZE;
+            final int segments = config.get(RECORD_SEGMENTS) instanceof Number n ? n.intValue() : DEFAULT_RECORD_SEGMENTS;
+            try {
+                recorder = new CulFrameRecorder(Path.of(OpenHAB.getUserDataFolder(), "fhz4j", "recordings"), getThing().getUID().getId(),
+                        segmentSize * 1024 * 1024, segments);
+            } catch (IOException | IllegalArgumentException e) {
+                LOGGER.log(Level.SEVERE, "Can't record serial port", e);
+                recorder = null;
+            }
+        } else {
+            recorder = null;
+        }
+
+        fhtTransmitWindows = !Boolean.FALSE.equals(config.get(FHT_TRANSMIT_WINDOWS));
+        slowRfFlags = parseSlowRfFlags(config.get(SLOW_RF_FLAGS));
+        if (Boolean.FALSE.equals(config.get(RECEIVE_FILTER))) {
+            receiveFilter = null;
+        } else {
+            receiveFilter = new CulReceiveFilter(this::isKnownDevice, this::isWantedByDiscovery);
+        }
+        if (config.get(COMMAND_TIMEOUT) instanceof Number n) {
+            commandTimeoutNanos = TimeUnit.SECONDS.toNanos(n.longValue());
+        } else {
+            commandTimeoutNanos = TimeUnit.SECONDS.toNanos(DEFAULT_COMMAND_TIMEOUT);
+        }
+        txQueue.setCommandTimeout(commandTimeoutNanos);
+        if (config.get(STATE_SNAPSHOT_MAX_AGE) instanceof Number n) {
+            stateSnapshotMaxAgeMillis = TimeUnit.HOURS.toMillis(n.longValue());
+        } else {
+            stateSnapshotMaxAgeMillis = TimeUnit.HOURS.toMillis(DEFAULT_STATE_SNAPSHOT_MAX_AGE);
+        }
+        if (!Boolean.FALSE.equals(config.get(STATE_SNAPSHOT))) {
+            try {
+                stateSnapshot = new StateSnapshot(Path.of(OpenHAB.getUserDataFolder(), "fhz4j", "state", getThing().getUID().getId() + StateSnapshot.SUFFIX),
+                        STATE_SNAPSHOT_SLOTS);
+                stateSnapshotJob = scheduler.scheduleWithFixedDelay(stateSnapshot::force, 1, 1, TimeUnit.MINUTES);
+            } catch (IOException ioe) {
+                LOGGER.log(Level.SEVERE, "Can't open the state snapshot", ioe);
+                stateSnapshot = null;
+            }
+        } else {
+            stateSnapshot = null;
+        }
+        if (config.get(MAINTENANCE_CRON) instanceof String cron && !cron.isBlank()) {
+            maintenanceCron = cron;
+        } else {
+            maintenanceCron = DEFAULT_MAINTENANCE_CRON;
+        }
+        if (config.get(MAINTENANCE_WINDOW) instanceof Number n) {
+            maintenanceWindowNanos = TimeUnit.MINUTES.toNanos(n.longValue());
+        } else {
+            maintenanceWindowNanos = TimeUnit.MINUTES.toNanos(DEFAULT_MAINTENANCE_WINDOW);
+        }
+
+        if (config.get(BACKGROUND_DISCOVERY_INTERVAL) instanceof Number n) {
+            backgroundDiscoveryPeriodNanos = TimeUnit.HOURS.toNanos(n.longValue());
+        } else {
+            backgroundDiscoveryPeriodNanos = TimeUnit.HOURS.toNanos(DEFAULT_BACKGROUND_DISCOVERY_INTERVAL);
+        }
+        if (config.get(BACKGROUND_DISCOVERY_MIN_RSSI) instanceof Number n) {
+            backgroundDiscoveryMinSignalStrength = n.floatValue();
+        } else {
+            backgroundDiscoveryMinSignalStrength = DEFAULT_BACKGROUND_DISCOVERY_MIN_RSSI;
+        }
+
+        if (Boolean.TRUE.equals(config.get(EVO_HOME_DIAGNOSTICS))) {
+            final int fileSize = config.get(EVO_HOME_DIAGNOSTICS_FILE_SIZE) instanceof Number n ? n.intValue() : DEFAULT_EVO_HOME_DIAGNOSTICS_FILE_SIZE;
+            final int files = config.get(EVO_HOME_DIAGNOSTICS_FILES) instanceof Number n ? n.intValue() : DEFAULT_EVO_HOME_DIAGNOSTICS_FILES;
+            try {
+                evoHomeDiagnostics = new EvoHomeDiagnosticSink(Path.of(OpenHAB.getUserDataFolder(), "fhz4j", "evohome"), getThing().getUID().getId(),
+                        EVO_HOME_DIAGNOSTICS_CAPACITY, fileSize * 1024L * 1024L, files);
+                evoHomeDiagnostics.start(getThing().getUID().getId());
+            } catch (IOException ioe) {
+                LOGGER.log(Level.SEVERE, "Can't log EvoHome diagnostics", ioe);
+                evoHomeDiagnostics = null;
+            }
+        } else {
+            evoHomeDiagnostics = null;
+        }
+
         Object protocol = config.get(PROTOCOL_FHT_PARAM);
         LOGGER.log(Level.INFO, "Read protocolFHT from config: {0}", protocol);
         if (protocol instanceof Boolean aBoolean) {
@@ -494,33 +874,78 @@ public class SpswBridgeHandler extends BaseBridgeHandler {
         hmsThingHandler.clear();
         evoHomeThingHandler.clear();
 
+        if (config.get(FEDERATION) instanceof String name && !name.isBlank()) {
+            try {
+                federation = CulFederation.join(name.trim(), this);
+                LOGGER.log(Level.INFO, "Joined CUL federation {0}", name);
+            } catch (IllegalStateException ise) {
+                LOGGER.log(Level.SEVERE, "Can't join CUL federation", ise);
+                federation = null;
+            }
+        } else {
+            federation = null;
+        }
+        frameHash = federation == null ? null : new CulFrameHash(slowRfFlags.contains(SlowRfFlag.WITH_RSSI));
+
+        if (receiveQueueSize > 0) {
+            receiveQueue = new CulReceiveQueue(createListener(), receiveQueueSize, receiveQueueOverflow, latency, frameHash);
+            receiveQueue.start(getThing().getUID().getId());
+            culMessageListener = receiveQueue;
+        } else {
+            receiveQueue = null;
+            culMessageListener = createListener();
+        }
+
+        boolean connected;
         try {
-            culAdapter = new CulAdapter(createSerialPortSocket(), new Listener(), speed);
+            lockWriter();
+            try {
+                culAdapter = new CulAdapter(createSerialPortSocket(), culMessageListener, speed);
+            } finally {
+                writeLock.unlock();
+            }
             initCulAdapter();
+            connected = true;
         } catch (IOException ioe) {
             updateStatus(ThingStatus.OFFLINE, ThingStatusDetail.COMMUNICATION_ERROR, ioe.getMessage());
             LOGGER.log(Level.SEVERE, "Got IOE in CUL Adapter during initialization", ioe);
-            try {
-                culAdapter.close();
-            } catch (Exception e) {
-                LOGGER.log(Level.SEVERE, "Could not shutdown fhzAdapter", e);
-            }
-            culAdapter = null;
-            return;
+            closeCulAdapter();
+            connected = false;
         }
 
         if (protocolFHT && logSerialPort) {
             refreshJob = cronScheduler.schedule(() -> {
+                final CulAdapter cul = culAdapter;
+                if (cul == null) {
+                    return;
+                }
                 try {
-                    culAdapter.gatherCulDebugInfos();
+                    cul.gatherCulDebugInfos();
                 } catch (IOException e) {
                     LOGGER.log(Level.SEVERE, "Could not init fht reporting for " + housecode, e);
                 }
             }, "0 0 * * * ? *");
 
         }
-        updateStatus(ThingStatus.ONLINE);
-        LOGGER.log(Level.INFO, "FhzAdapter initialized");
+        try {
+            maintenanceJob = cronScheduler.schedule(() -> fhtMaintenance.startRound(fhtThingHandler.keys(), maintenanceWindowNanos),
+                    maintenanceCron);
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.SEVERE, "Could not schedule FHT maintenance with: " + maintenanceCron, e);
+        }
+        txQueue.start(getThing().getUID().getId());
+        if (diagnostics != null) {
+            diagnostics.start(diagnosticsInterval);
+        }
+        reconnectSupervisor.start();
+        latencyJob = scheduler.scheduleWithFixedDelay(this::updateLatencyChannels, 1, 1, TimeUnit.MINUTES);
+        fhtDeliveryJob = scheduler.scheduleWithFixedDelay(fhtDelivery::check, 1, 1, TimeUnit.MINUTES);
+        if (connected) {
+            updateStatus(ThingStatus.ONLINE);
+            LOGGER.log(Level.INFO, "FhzAdapter initialized");
+        } else {
+            reconnectSupervisor.connectionLost();
+        }
     }
 
     @Override
@@ -531,22 +956,58 @@ public class SpswBridgeHandler extends BaseBridgeHandler {
             refreshJob.cancel(true);
             refreshJob = null;
         }
+        final CulReplay r;
+        synchronized (this) {
+            r = replay;
+            replay = null;
+        }
+        if (r != null) {
+            r.stop();
+        }
+        reconnectSupervisor.stop();
+        if (latencyJob != null) {
+            latencyJob.cancel(false);
+            latencyJob = null;
+        }
+        if (maintenanceJob != null) {
+            maintenanceJob.cancel(false);
+            maintenanceJob = null;
+        }
+        fhtMaintenance.stop();
+        if (fhtDeliveryJob != null) {
+            fhtDeliveryJob.cancel(false);
+            fhtDeliveryJob = null;
+        }
+        fhtDelivery.clear();
+        if (federation != null) {
+            federation.leave(this);
+            federation = null;
+        }
+        txQueue.stop();
+        if (diagnostics != null) {
+            diagnostics.stop();
+        }
 
-        if (culAdapter != null) {
-            FhzHandler cp = culAdapter;
-            culAdapter = null;
-            if (cp != null) {
-                try {
-                    cp.close();
-                } catch (Exception e) {
-                    LOGGER.log(Level.SEVERE, "Could not shutdown fhzAdapter", e);
-//Set cp to null, so the gc can collect it.
-//TODO How to suppress warning??                    @SuppressWarnings("Unused Assignment")
-                    cp = null;
-                    //Trigger gc to get rid of current cp ...
-                    System.gc();
-                }
-            }
+        //after the TX queue stopped, so no writer uses the adapter anymore
+        closeCulAdapter();
+        if (receiveQueue != null) {
+            receiveQueue.stop();
+        }
+        if (recorder != null) {
+            recorder.close();
+            recorder = null;
+        }
+        if (evoHomeDiagnostics != null) {
+            evoHomeDiagnostics.close();
+            evoHomeDiagnostics = null;
+        }
+        if (stateSnapshotJob != null) {
+            stateSnapshotJob.cancel(false);
+            stateSnapshotJob = null;
+        }
+        if (stateSnapshot != null) {
+            stateSnapshot.close();
+            stateSnapshot = null;
         }
         fhtThingHandler.clear();
         emThingHandler.clear();
@@ -560,93 +1021,625 @@ public class SpswBridgeHandler extends BaseBridgeHandler {
         return discoveryListener;
     }
 
+    /**
+     * @param discoveryListener gets the messages of all unknown devices while
+     * a scan is running, null if no scan is running.
+     */
     public void setDiscoveryListener(CulMessageListener discoveryListener) {
         this.discoveryListener = discoveryListener;
     }
 
-    public void sendFhtModeAutoMessage(short housecode) throws IOException, NullPointerException {
-        synchronized (writeLock) {
+    public BackgroundDiscovery getBackgroundDiscovery() {
+        return backgroundDiscovery;
+    }
+
+    /**
+     * @param backgroundDiscovery gets the messages of unknown devices, which
+     * are due, while no scan is running, null if it is stopped.
+     */
+    public void setBackgroundDiscovery(BackgroundDiscovery backgroundDiscovery) {
+        this.backgroundDiscovery = backgroundDiscovery;
+    }
+
+    /**
+     * @return the listener for the messages of unknown devices or null.
+     */
+    private CulMessageListener discovery() {
+        final CulMessageListener dl = discoveryListener;
+        return dl != null ? dl : backgroundDiscovery;
+    }
+
+    /**
+     * Read from the configuration of the thing, as the discovery service is
+     * activated before the handler is initialized.
+     *
+     * @return true if the background discovery is enabled for this bridge.
+     */
+    public boolean isBackgroundDiscoveryConfigured() {
+        return Boolean.TRUE.equals(getThing().getConfiguration().get(BACKGROUND_DISCOVERY));
+    }
+
+    /**
+     * @return the minimal time between two background discovery results of
+     * the same device.
+     */
+    public long getBackgroundDiscoveryPeriodNanos() {
+        return backgroundDiscoveryPeriodNanos;
+    }
+
+    /**
+     * @return the RSSI in dBm below which a device is rate limited by the
+     * background discovery.
+     */
+    public float getBackgroundDiscoveryMinSignalStrength() {
+        return backgroundDiscoveryMinSignalStrength;
+    }
+
+    /**
+     * The key to coalesce FHT writes of the same property to the same device.
+     */
+    private static int fhtCoalesceKey(short housecode, FhtProperty fhtProperty) {
+        return ((housecode & 0xffff) << 8) | fhtProperty.ordinal();
+    }
+
+    private static FhtProperty fhtTimesProperty(DayOfWeek dayOfWeek) {
+        return switch (dayOfWeek) {
+            case MONDAY ->
+                FhtProperty.MONDAY_TIMES;
+            case TUESDAY ->
+                FhtProperty.TUESDAY_TIMES;
+            case WEDNESDAY ->
+                FhtProperty.WEDNESDAY_TIMES;
+            case THURSDAY ->
+                FhtProperty.THURSDAY_TIMES;
+            case FRIDAY ->
+                FhtProperty.FRIDAY_TIMES;
+            case SATURDAY ->
+                FhtProperty.SATURDAYDAY_TIMES;
+            case SUNDAY ->
+                FhtProperty.SUNDAYDAY_TIMES;
+        };
+    }
+
+    /**
+     * @return the handler of this bridge only.
+     */
+    RadiatorFht80bHandler getFhtHandler(int housecode) {
+        return fhtThingHandler.get(housecode);
+    }
+
+    private RadiatorFht80bHandler findFhtHandler(int housecode) {
+        final RadiatorFht80bHandler result = fhtThingHandler.get(housecode);
+        final CulFederation f = federation;
+        return result != null || f == null ? result : f.getFhtHandler(housecode);
+    }
+
+    Fht80TfHandler getFht80TfHandler(int address) {
+        return fht80TfThingHandler.get(address);
+    }
+
+    private Fht80TfHandler findFht80TfHandler(int address) {
+        final Fht80TfHandler result = fht80TfThingHandler.get(address);
+        final CulFederation f = federation;
+        return result != null || f == null ? result : f.getFht80TfHandler(address);
+    }
+
+    Hms100TfHandler getHmsHandler(int housecode) {
+        return hmsThingHandler.get(housecode);
+    }
+
+    private Hms100TfHandler findHmsHandler(int housecode) {
+        final Hms100TfHandler result = hmsThingHandler.get(housecode);
+        final CulFederation f = federation;
+        return result != null || f == null ? result : f.getHmsHandler(housecode);
+    }
+
+    Em1000EmHandler getEmHandler(int address) {
+        return emThingHandler.get(address);
+    }
+
+    private Em1000EmHandler findEmHandler(int address) {
+        final Em1000EmHandler result = emThingHandler.get(address);
+        final CulFederation f = federation;
+        return result != null || f == null ? result : f.getEmHandler(address);
+    }
+
+    EvoHomeHandler getEvoHomeHandler(int deviceId) {
+        return evoHomeThingHandler.get(deviceId);
+    }
+
+    private EvoHomeHandler findEvoHomeHandler(int deviceId) {
+        final EvoHomeHandler result = evoHomeThingHandler.get(deviceId);
+        final CulFederation f = federation;
+        return result != null || f == null ? result : f.getEvoHomeHandler(deviceId);
+    }
+
+    /**
+     * Used by the {@link CulReceiveFilter} on the receive thread. A scan wants
+     * all unknown devices, the background discovery only those which are due.
+     */
+    private boolean isWantedByDiscovery(CulFederation.Kind kind, int address) {
+        if (discoveryListener != null) {
+            return true;
+        }
+        final BackgroundDiscovery bd = backgroundDiscovery;
+        return bd != null && bd.isDue(kind, address);
+    }
+
+    /**
+     * Used by the {@link CulReceiveFilter} on the receive thread.
+     */
+    private boolean isKnownDevice(CulFederation.Kind kind, int address) {
+        //the handlers are registered with the signed short housecodes and addresses
+        return switch (kind) {
+            case FHT ->
+                findFhtHandler((short) address) != null;
+            case FHT80_TF ->
+                findFht80TfHandler(address) != null;
+            case HMS ->
+                findHmsHandler((short) address) != null;
+            case EM ->
+                findEmHandler((short) address) != null;
+            case EVO_HOME ->
+                findEvoHomeHandler(address) != null;
+        };
+    }
+
+    /**
+     * @param value a comma separated list of {@link SlowRfFlag} names.
+     * @return the flags or the default, if the value can't be parsed.
+     */
+    private static Set<SlowRfFlag> parseSlowRfFlags(Object value) {
+        if (!(value instanceof String s) || s.isBlank()) {
+            return DEFAULT_SLOW_RF_FLAGS;
+        }
+        final Set<SlowRfFlag> result = EnumSet.noneOf(SlowRfFlag.class);
+        for (String name : s.split(",")) {
+            try {
+                result.add(SlowRfFlag.valueOf(name.trim()));
+            } catch (IllegalArgumentException iae) {
+                LOGGER.log(Level.WARNING, "Unknown slowRfFlag \"{0}\", use the default: {1}", new Object[]{name.trim(), DEFAULT_SLOW_RF_FLAGS});
+                return DEFAULT_SLOW_RF_FLAGS;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the receive filter or null if it is disabled.
+     */
+    public CulReceiveFilter getReceiveFilter() {
+        return receiveFilter;
+    }
+
+    /**
+     * @return the queue of the bridge, which heard the device best recently.
+     * Without a federation this is the own queue.
+     */
+    private CulTxQueue txQueueFor(CulFederation.Kind kind, int address) {
+        final CulFederation f = federation;
+        return f == null ? txQueue : f.route(kind, address, this).txQueue;
+    }
+
+    /**
+     * Queue a FHT write, only the latest value per housecode and property will
+     * be sent. Once written, the {@link #fhtDelivery} waits for the FHT80b to
+     * confirm it. If the write expires or fails, its place in the transmit
+     * window is released.
+     */
+    private CompletableFuture<Void> submitFht(short housecode, FhtProperty fhtProperty, CulTxQueue.TxOperation operation) {
+        final FhtTransmitWindows.Reservation reservation = new FhtTransmitWindows.Reservation(housecode, 1);
+        final CompletableFuture<Void> result = txQueueFor(CulFederation.Kind.FHT, housecode).submit(CulTxQueue.Priority.NORMAL,
+                fhtCoalesceKey(housecode, fhtProperty), () -> fhtReleaseDelayNanos(reservation), cul -> {
+                    operation.execute(cul);
+                    fhtDelivery.sent(housecode, fhtProperty, operation);
+                });
+        result.whenComplete((v, t) -> {
+            if (t != null) {
+                fhtWindows.release(reservation);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Called by the {@link CulTxQueue} only if the command is not coalesced
+     * into a queued one, so only then a window is reserved.
+     *
+     * @return the time to hold FHT commands back, up to shortly before the
+     * next transmit window of the device with room for them.
+     */
+    private long fhtReleaseDelayNanos(FhtTransmitWindows.Reservation reservation) {
+        return fhtTransmitWindows ? fhtWindows.releaseDelayNanos(reservation, fhtCoalesceDelayNanos) : fhtCoalesceDelayNanos;
+    }
+
+    /**
+     * Called with each message a FHT80b sent.
+     */
+    void fhtReceived(FhtMessage fhtMsg, long receivedNanos) {
+        fhtDelivery.confirmed(fhtMsg);
+        fhtWindows.heard(fhtMsg.housecode, receivedNanos);
+    }
+
+    /**
+     * @return the free bytes of the FHT buffer of the CUL or -1 if unknown.
+     */
+    private int remainingFhtBuffer() {
+        try {
+            final Response response = sendRequest(new CulRemainingFhtDeviceOutBufferSizeRequest()).get(1, TimeUnit.SECONDS);
+            final int result = parseRemainingFhtBuffer(String.valueOf(response));
+            if (result < 0) {
+                LOGGER.log(Level.WARNING, "Malformed reply of the remaining FHT buffer: \"{0}\"", response);
+            }
+            return result;
+        } catch (IOException | ExecutionException | TimeoutException e) {
+            LOGGER.log(Level.FINE, "Could not read the remaining FHT buffer", e);
+            return -1;
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            return -1;
+        }
+    }
+
+    /**
+     * The CUL answers with the free bytes in decimal and nothing else, culfw
+     * pads it with spaces.
+     *
+     * @param reply the reply of the CUL.
+     * @return the free bytes or -1 if the reply is malformed.
+     */
+    static int parseRemainingFhtBuffer(String reply) {
+        final String trimmed = reply.trim();
+        if (trimmed.isEmpty() || trimmed.length() > MAX_FHT_BUFFER_DIGITS) {
+            return -1;
+        }
+        int result = 0;
+        for (int i = 0; i < trimmed.length(); i++) {
+            final char c = trimmed.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            result = result * 10 + (c - '0');
+        }
+        return result;
+    }
+
+    public CompletableFuture<Void> sendFhtModeAutoMessage(short housecode) {
+        return submitFht(housecode, FhtProperty.MODE, cul -> {
             if (logExplainWrite != null) {
                 logExplainWrite.explainWrite("Set mode to auto of: %d", housecode);
             }
-            culAdapter.gatherCulDebugInfos();
-            culAdapter.writeFhtModeAuto(housecode);
-            culAdapter.gatherCulDebugInfos();
-        }
+            cul.writeFhtModeAuto(housecode);
+        });
+    }
+
+    public CompletableFuture<Void> sendFhtModeManuMessage(short housecode) {
+        return submitFht(housecode, FhtProperty.MODE, cul -> {
+            cul.writeFhtModeManu(housecode);
+        });
+    }
+
+    public CompletableFuture<Void> sendFhtMessage(short housecode, FhtProperty fhtProperty, float value) {
+        return submitFht(housecode, fhtProperty, cul -> {
+            cul.writeFht(housecode, fhtProperty, value);
+        });
+    }
+
+    public CompletableFuture<Void> sendFhtMessage(short housecode, DayOfWeek dayOfWeek, LocalTime from1, LocalTime to1, LocalTime from2,
+            LocalTime to2) {
+        return submitFht(housecode, fhtTimesProperty(dayOfWeek), cul -> {
+            cul.writeFhtCycle(housecode, dayOfWeek, from1, to1, from2, to2);
+        });
     }
 
-    public void sendFhtModeManuMessage(short housecode) throws IOException, NullPointerException {
-        synchronized (writeLock) {
-            culAdapter.gatherCulDebugInfos();
-            culAdapter.writeFhtModeManu(housecode);
-            culAdapter.gatherCulDebugInfos();
+    /**
+     * Send the switch times of several days together. Each day is queued
+     * under the coalesce key of its property, so it replaces the times of the
+     * same day still queued, and is confirmed by the {@link #fhtDelivery}.
+     *
+     * @param housecode the device.
+     * @param cycles the switch times of the days to change.
+     * @return completes when all days are written to the CUL.
+     */
+    CompletableFuture<Void> sendFhtWeekProgram(short housecode, Map<DayOfWeek, FhtDayCycle> cycles) {
+        final CompletableFuture<?>[] days = new CompletableFuture<?>[cycles.size()];
+        int i = 0;
+        for (Map.Entry<DayOfWeek, FhtDayCycle> day : new EnumMap<>(cycles).entrySet()) {
+            final FhtDayCycle cycle = day.getValue();
+            days[i++] = sendFhtMessage(housecode, day.getKey(), cycle.from1(), cycle.to1(), cycle.from2(), cycle.to2());
         }
+        return CompletableFuture.allOf(days);
     }
 
-    public void sendFhtMessage(short housecode, FhtProperty fhtProperty, float value) throws IOException, NullPointerException {
-        synchronized (writeLock) {
-            culAdapter.gatherCulDebugInfos();
-            culAdapter.writeFht(housecode, fhtProperty, value);
-            culAdapter.gatherCulDebugInfos();
+    public CompletableFuture<Void> sendFhtPartyMessage(short housecode, float temp, LocalDateTime to) {
+        return submitFht(housecode, FhtProperty.MODE, cul -> {
+            cul.writeFhtModeParty(housecode, temp, to);
+        });
+    }
+
+    public CompletableFuture<Void> sendFhtHolidayMessage(short housecode, float temp, LocalDate to) {
+        return submitFht(housecode, FhtProperty.MODE, cul -> {
+            cul.writeFhtModeHoliday(housecode, temp, to);
+        });
+    }
+
+    public CompletableFuture<Void> sendEvoHomeZoneSetpointPermanent(DeviceId deviceId, ZoneTemperature temperature) {
+        return txQueueFor(CulFederation.Kind.EVO_HOME, deviceId.id).submit(CulTxQueue.Priority.HIGH, cul -> cul.writeEvoHomeZoneSetpointPermanent(deviceId, temperature));
+    }
+
+    public CompletableFuture<Void> sendEvoHomeZoneSetpointUntil(DeviceId deviceId, ZoneTemperature temperature, LocalDateTime localDateTime) {
+        return txQueueFor(CulFederation.Kind.EVO_HOME, deviceId.id).submit(CulTxQueue.Priority.HIGH, cul -> cul.writeEvoHomeZoneSetpointUntil(deviceId, temperature, localDateTime));
+    }
+
+    public CompletableFuture<Void> initFhtReporting(short housecode) {
+        return txQueueFor(CulFederation.Kind.FHT, housecode).submit(CulTxQueue.Priority.LOW, cul -> {
+            cul.initFhtReporting(housecode);
+        });
+    }
+
+    /**
+     * The send budget of the {@link #fhtMaintenance}: the TX queue of the CUL
+     * is nearly idle and, if the transmit windows are used, the FHT buffer
+     * has room in the next window of the device.
+     */
+    private boolean hasRoomForFht(short housecode, int commands) {
+        if (txQueueFor(CulFederation.Kind.FHT, housecode).getDepth() > MAX_MAINTENANCE_TX_DEPTH) {
+            return false;
         }
+        return !fhtTransmitWindows || fhtWindows.hasRoom(housecode, commands);
+    }
+
+    /**
+     * Set the clock of the FHT80b and trigger its reporting, called by the
+     * {@link #fhtMaintenance}.
+     */
+    private CompletableFuture<Void> pingFht(short housecode) {
+        return setClock(housecode, LocalDateTime.now()).thenCompose(v -> initFhtReporting(housecode));
+    }
+
+    CompletableFuture<Void> setClock(short housecode, LocalDateTime localDateTime) {
+        return txQueueFor(CulFederation.Kind.FHT, housecode).submit(CulTxQueue.Priority.LOW, cul -> {
+            cul.writeFhtTimeAndDate(housecode, localDateTime);
+        });
     }
 
-    public void sendFhtMessage(short housecode, DayOfWeek dayOfWeek, LocalTime from1, LocalTime to1, LocalTime from2,
-            LocalTime to2) throws IOException, NullPointerException {
-        synchronized (writeLock) {
-            culAdapter.gatherCulDebugInfos();
-            culAdapter.writeFhtCycle(housecode, dayOfWeek, from1, to1, from2, to2);
-            culAdapter.gatherCulDebugInfos();
+    /**
+     * Take the {@link #writeLock} within the command timeout. A reconnect
+     * holds it while the CUL is initialized and a write may hang on the
+     * serial port.
+     *
+     * @throws IOException if the lock could not be taken in time.
+     */
+    private void lockWriter() throws IOException {
+        try {
+            if (commandTimeoutNanos <= 0) {
+                writeLock.lockInterruptibly();
+            } else if (!writeLock.tryLock(commandTimeoutNanos, TimeUnit.NANOSECONDS)) {
+                throw new IOException("CUL adapter is busy");
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the CUL adapter");
         }
     }
 
-    public void sendFhtPartyMessage(short housecode, float temp, LocalDateTime to) throws IOException, NullPointerException {
-        synchronized (writeLock) {
-            culAdapter.gatherCulDebugInfos();
-            culAdapter.writeFhtModeParty(housecode, temp, to);
-            culAdapter.gatherCulDebugInfos();
+    /**
+     * Runs on the writer thread of the {@link #txQueue}.
+     */
+    private void writeTx(CulTxQueue.TxOperation operation) throws IOException {
+        lockWriter();
+        try {
+            final CulAdapter cul = culAdapter;
+            if (cul == null) {
+                throw new IOException("CUL adapter is not connected");
+            }
+            operation.execute(cul);
+        } finally {
+            writeLock.unlock();
         }
     }
 
-    public void sendFhtHolidayMessage(short housecode, float temp, LocalDate to) throws IOException, NullPointerException {
-        synchronized (writeLock) {
-            culAdapter.gatherCulDebugInfos();
-            culAdapter.writeFhtModeHoliday(housecode, temp, to);
-            culAdapter.gatherCulDebugInfos();
+    public CulReconnectSupervisor getReconnectSupervisor() {
+        return reconnectSupervisor;
+    }
+
+    /**
+     * @return the time a command may take from its release until it is
+     * written.
+     */
+    long getCommandTimeoutNanos() {
+        return commandTimeoutNanos;
+    }
+
+    public CulTxQueue getTxQueue() {
+        return txQueue;
+    }
+
+    /**
+     * @return the recorder or null if the serial port is not recorded.
+     */
+    public CulFrameRecorder getRecorder() {
+        return recorder;
+    }
+
+    /**
+     * @return the snapshot of the states of the things or null if it is
+     * disabled.
+     */
+    public StateSnapshot getStateSnapshot() {
+        return stateSnapshot;
+    }
+
+    /**
+     * @return older states are not restored from the snapshot.
+     */
+    long getStateSnapshotMaxAgeMillis() {
+        return stateSnapshotMaxAgeMillis;
+    }
+
+    public FhtMaintenance getFhtMaintenance() {
+        return fhtMaintenance;
+    }
+
+    public FhtTransmitWindows getFhtTransmitWindows() {
+        return fhtWindows;
+    }
+
+    public FhtDeliveryTracker getFhtDelivery() {
+        return fhtDelivery;
+    }
+
+    public CulLatency getLatency() {
+        return latency;
+    }
+
+    private void updateLatencyChannels() {
+        if (isLinked(messageRateChannel)) {
+            updateState(messageRateChannel, new DecimalType(latency.getMessagesPerMinute()));
+        }
+        if (isLinked(latencyP99Channel)) {
+            updateState(latencyP99Channel, new DecimalType(latency.getP99Millis()));
         }
     }
 
-    public void sendEvoHomeZoneSetpointPermanent(DeviceId deviceId, ZoneTemperature temperature) throws IOException, NullPointerException {
-        synchronized (writeLock) {
-            culAdapter.writeEvoHomeZoneSetpointPermanent(deviceId, temperature);
+    /**
+     * @return the federation or null if this bridge is standalone.
+     */
+    public CulFederation getFederation() {
+        return federation;
+    }
+
+    /**
+     * @return the EvoHome diagnostic sink or null if it is disabled.
+     */
+    public EvoHomeDiagnosticSink getEvoHomeDiagnostics() {
+        return evoHomeDiagnostics;
+    }
+
+    /**
+     * Replay a recording of the {@link CulFrameRecorder} into the things of
+     * this bridge. The replay must be the only producer of the listener and
+     * the receive queue, so the CUL is detached until the replay is done and
+     * then reconnected.
+     *
+     * @param recording a segment or a directory with segments.
+     * @param speedFactor 1.0 for real time, 0 for as fast as possible.
+     * @return a future, which completes when the replay is done.
+     * @throws IOException if the replay could not be started or another
+     * replay is running.
+     */
+    public synchronized CompletableFuture<Void> replay(Path recording, double speedFactor) throws IOException {
+        if (replay != null) {
+            throw new IOException("A replay is already running");
+        }
+        final CulReplay r = new CulReplay(recording, speedFactor, culMessageListener, speed, frameHash);
+        reconnectSupervisor.stop();
+        closeCulAdapter();
+        updateStatus(ThingStatus.OFFLINE, ThingStatusDetail.COMMUNICATION_ERROR, "CUL detached for a replay");
+        replay = r;
+        final CompletableFuture<Void> result;
+        try {
+            result = r.start();
+        } catch (IOException | RuntimeException e) {
+            replayDone(r);
+            throw e;
         }
+        result.whenComplete((v, t) -> replayDone(r));
+        return result;
     }
 
-    public void sendEvoHomeZoneSetpointUntil(DeviceId deviceId, ZoneTemperature temperature, LocalDateTime localDateTime) throws IOException, NullPointerException {
-        synchronized (writeLock) {
-            culAdapter.writeEvoHomeZoneSetpointUntil(deviceId, temperature, localDateTime);
+    /**
+     * Reconnect the CUL after the replay, unless the bridge was disposed.
+     */
+    private synchronized void replayDone(CulReplay r) {
+        if (replay != r) {
+            return;
         }
+        replay = null;
+        reconnectSupervisor.start();
+        reconnectSupervisor.connectionLost();
+    }
+
+    /**
+     * @return the receive queue or null if the messages are dispatched on the
+     * reader thread.
+     */
+    public CulReceiveQueue getReceiveQueue() {
+        return receiveQueue;
+    }
+
+    /**
+     * @return the diagnostics or null if diagnostics are disabled.
+     */
+    public CulDiagnostics getDiagnostics() {
+        return diagnostics;
     }
 
-    public void initFhtReporting(short housecode) throws IOException, NullPointerException {
-        synchronized (writeLock) {
-            culAdapter.gatherCulDebugInfos();
-            culAdapter.initFhtReporting(housecode);
-            culAdapter.gatherCulDebugInfos();
+    public Future<Response> sendRequest(Request request) throws IOException {
+        lockWriter();
+        try {
+            final CulAdapter cul = culAdapter;
+            if (cul == null) {
+                throw new IOException("CUL adapter is not connected");
+            }
+            return cul.sendRequest(request);
+        } finally {
+            writeLock.unlock();
         }
     }
 
-    void setClock(short housecode, LocalDateTime localDateTime) throws IOException, NullPointerException {
-        synchronized (writeLock) {
-            culAdapter.gatherCulDebugInfos();
-            culAdapter.writeFhtTimeAndDate(housecode, localDateTime);
-            culAdapter.gatherCulDebugInfos();
+    /**
+     * Send the status requests to the CUL without waiting for the responses.
+     * Within a short time the last requests are returned, so repeated queries
+     * do not load the serial line. The requests are sent under one write lock
+     * taken within the command timeout. While another caller sends them, the
+     * last requests are returned at once.
+     */
+    public CulStatus requestCulStatus() {
+        final CulStatus last = culStatus;
+        if (last != null && last.getAgeNanos() < CUL_STATUS_TTL_NS) {
+            return last;
+        }
+        if (!culStatusLock.tryLock()) {
+            if (last != null) {
+                return last;
+            }
+            final CulStatus busy = new CulStatus();
+            busy.failed("Status", new IOException("CUL status is requested by another caller"));
+            return busy;
+        }
+        try {
+            final CulStatus result = new CulStatus();
+            try {
+                lockWriter();
+                try {
+                    final CulAdapter cul = culAdapter;
+                    if (cul == null) {
+                        throw new IOException("CUL adapter is not connected");
+                    }
+                    requestCulStatus(result, cul, "SlowRfSettings", new CulGetSlowRfSettingsRequest());
+                    requestCulStatus(result, cul, "FhtDeviceOutBufferContent", new CulFhtDeviceOutBufferContentRequest());
+                    requestCulStatus(result, cul, "RemainingFhtDeviceOutBufferSize", new CulRemainingFhtDeviceOutBufferSizeRequest());
+                    requestCulStatus(result, cul, "FirmwareVersion", new CulGetFirmwareVersionRequest());
+                    requestCulStatus(result, cul, "HardwareVersion", new CulGetHardwareVersionRequest());
+                } finally {
+                    writeLock.unlock();
+                }
+            } catch (IOException ioe) {
+                result.failed("Status", ioe);
+            }
+            culStatus = result;
+            return result;
+        } finally {
+            culStatusLock.unlock();
         }
     }
 
-    public Future<Response> sendRequest(Request request) throws IOException, NullPointerException {
-        synchronized (writeLock) {
-            return culAdapter.sendRequest(request);
+    private static void requestCulStatus(CulStatus status, CulAdapter cul, String name, Request request) {
+        try {
+            status.add(name, cul.sendRequest(request));
+        } catch (IOException ioe) {
+            status.failed(name, ioe);
         }
     }
 
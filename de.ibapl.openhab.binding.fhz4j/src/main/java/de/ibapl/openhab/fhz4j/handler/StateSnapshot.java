@@ -0,0 +1,283 @@
+/*
+ * ESH-IBAPL  - OpenHAB bindings for various IB APL drivers, https://github.com/aploese/esh-ibapl/
+ * Copyright (C) 2024-2025, Arne Plöse and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package de.ibapl.openhab.fhz4j.handler;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.openhab.core.library.types.DateTimeType;
+import org.openhab.core.library.types.DecimalType;
+import org.openhab.core.library.types.OnOffType;
+import org.openhab.core.library.types.OpenClosedType;
+import org.openhab.core.library.types.StringType;
+import org.openhab.core.thing.ChannelUID;
+import org.openhab.core.thing.ThingUID;
+import org.openhab.core.types.State;
+
+/**
+ * The {@link StateSnapshot} keeps the last state of each channel of the
+ * things of a bridge in a memory mapped file, so the states can be restored
+ * right after a restart.
+ *
+ * The file is a {@link CrcMappedFile} with magic "FHSS", its records are
+ * fixed size slots, one per channel, each state update rewrites the slot of
+ * its channel in place. A slot torn by a crash is ignored and the other slots
+ * stay valid.
+ *
+ * Slot content, big endian: long epoch millis, byte state type, the channel
+ * UID and the full string of the state, each as short length and UTF-8 bytes.
+ *
+ * @author aploese@gmx.de - Initial contribution
+ */
+public class StateSnapshot implements Closeable {
+
+    /**
+     * A restored state.
+     */
+    public record Entry(ChannelUID channelUID, State state, long epochMillis) {
+
+    }
+
+    static final int MAGIC = 0x46485353;
+    static final short VERSION = 1;
+    static final int SLOT_SIZE = 256;
+    static final String SUFFIX = ".state";
+
+    private final static byte DECIMAL = 1;
+    private final static byte STRING = 2;
+    private final static byte ON_OFF = 3;
+    private final static byte OPEN_CLOSED = 4;
+    private final static byte DATE_TIME = 5;
+
+    private final static Logger LOGGER = Logger.getLogger("d.i.o.f.h.StateSnapshot");
+
+    private final Path file;
+    private final int slots;
+    private final byte[] slotBuffer = new byte[SLOT_SIZE];
+    //guarded by this
+    private CrcMappedFile mapped;
+    private final Map<String, Integer> slotByKey = new HashMap<>();
+    private final long[] slotMillis;
+    private final String[] slotKeys;
+    private final Map<String, State> written = new HashMap<>();
+    private final Map<String, Entry> loaded = new HashMap<>();
+    private int nextFreeSlot;
+    private long writes;
+
+    /**
+     * Open or create the snapshot and read its valid slots.
+     *
+     * @param file the snapshot file.
+     * @param slots the maximal number of channels.
+     */
+    StateSnapshot(Path file, int slots) throws IOException {
+        this.file = file;
+        this.slots = slots;
+        slotMillis = new long[slots];
+        slotKeys = new String[slots];
+        mapped = new CrcMappedFile(file, MAGIC, VERSION, SLOT_SIZE, slots);
+        if (!mapped.isCreated()) {
+            load();
+        }
+    }
+
+    private void load() {
+        for (int i = 0; i < slots; i++) {
+            final int length = mapped.read(i, slotBuffer);
+            if (length < 0) {
+                continue;
+            }
+            try {
+                final Entry entry = decode(slotBuffer, length);
+                final String key = entry.channelUID().getAsString();
+                slotByKey.put(key, i);
+                slotKeys[i] = key;
+                slotMillis[i] = entry.epochMillis();
+                loaded.put(key, entry);
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Skip invalid slot " + i + " of " + file, e);
+            }
+        }
+    }
+
+    private static Entry decode(byte[] b, int length) {
+        final ByteBuffer bb = ByteBuffer.wrap(b, 0, length);
+        final long epochMillis = bb.getLong();
+        final byte type = bb.get();
+        final String key = readString(bb);
+        final String value = readString(bb);
+        final State state = switch (type) {
+            case DECIMAL ->
+                new DecimalType(value);
+            case STRING ->
+                new StringType(value);
+            case ON_OFF ->
+                OnOffType.valueOf(value);
+            case OPEN_CLOSED ->
+                OpenClosedType.valueOf(value);
+            case DATE_TIME ->
+                new DateTimeType(value);
+            default ->
+                throw new IllegalArgumentException("Unknown state type: " + type);
+        };
+        return new Entry(new ChannelUID(key), state, epochMillis);
+    }
+
+    private static String readString(ByteBuffer bb) {
+        final int length = bb.getShort() & 0xffff;
+        final String result = new String(bb.array(), bb.position(), length, StandardCharsets.UTF_8);
+        bb.position(bb.position() + length);
+        return result;
+    }
+
+    private static byte typeOf(State state) {
+        if (state instanceof DecimalType) {
+            return DECIMAL;
+        } else if (state instanceof StringType) {
+            return STRING;
+        } else if (state instanceof OnOffType) {
+            return ON_OFF;
+        } else if (state instanceof OpenClosedType) {
+            return OPEN_CLOSED;
+        } else if (state instanceof DateTimeType) {
+            return DATE_TIME;
+        } else {
+            return 0;
+        }
+    }
+
+    /**
+     * Store the state of the channel, if it changed since it was last
+     * stored.
+     */
+    synchronized void put(ChannelUID channelUID, State state) {
+        if (mapped == null) {
+            return;
+        }
+        final String key = channelUID.getAsString();
+        if (state.equals(written.get(key))) {
+            return;
+        }
+        final byte type = typeOf(state);
+        if (type == 0) {
+            return;
+        }
+        final byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        final byte[] valueBytes = state.toFullString().getBytes(StandardCharsets.UTF_8);
+        final int length = 8 + 1 + 2 + keyBytes.length + 2 + valueBytes.length;
+        if (length > mapped.getMaxLength()) {
+            LOGGER.log(Level.FINE, "State of {0} is too long for the snapshot", key);
+            return;
+        }
+        Integer slot = slotByKey.get(key);
+        if (slot == null) {
+            slot = allocateSlot();
+            slotByKey.put(key, slot);
+            slotKeys[slot] = key;
+        }
+        final long now = System.currentTimeMillis();
+        final ByteBuffer bb = ByteBuffer.wrap(slotBuffer);
+        bb.putLong(now).put(type);
+        bb.putShort((short) keyBytes.length).put(keyBytes);
+        bb.putShort((short) valueBytes.length).put(valueBytes);
+        mapped.write(slot, slotBuffer, length);
+        slotMillis[slot] = now;
+        written.put(key, state);
+        loaded.put(key, new Entry(channelUID, state, now));
+        writes++;
+    }
+
+    /**
+     * @return a free slot or, if all are used, the one of the channel
+     * updated longest ago.
+     */
+    private int allocateSlot() {
+        while (nextFreeSlot < slots) {
+            final int slot = nextFreeSlot++;
+            if (slotMillis[slot] == 0) {
+                return slot;
+            }
+        }
+        int oldest = 0;
+        for (int i = 1; i < slots; i++) {
+            if (slotMillis[i] < slotMillis[oldest]) {
+                oldest = i;
+            }
+        }
+        slotByKey.remove(slotKeys[oldest]);
+        written.remove(slotKeys[oldest]);
+        loaded.remove(slotKeys[oldest]);
+        return oldest;
+    }
+
+    /**
+     * @param thingUID the thing.
+     * @param maxAgeMillis older states are not returned.
+     * @return the last stored states of the thing.
+     */
+    synchronized List<Entry> restore(ThingUID thingUID, long maxAgeMillis) {
+        final String prefix = thingUID.getAsString() + ":";
+        final long oldest = System.currentTimeMillis() - maxAgeMillis;
+        final List<Entry> result = new ArrayList<>();
+        for (Map.Entry<String, Entry> e : loaded.entrySet()) {
+            if (e.getKey().startsWith(prefix) && e.getValue().epochMillis() >= oldest) {
+                result.add(e.getValue());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @see CrcMappedFile#force()
+     */
+    synchronized void force() {
+        if (mapped != null) {
+            mapped.force();
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (mapped != null) {
+            try {
+                mapped.close();
+            } catch (IOException ioe) {
+                LOGGER.log(Level.WARNING, "Could not close state snapshot", ioe);
+            }
+            mapped = null;
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("file: %s, channels: %d/%d, stored: %d, writes: %d", file, slotByKey.size(), slots, loaded.size(), writes);
+    }
+
+}
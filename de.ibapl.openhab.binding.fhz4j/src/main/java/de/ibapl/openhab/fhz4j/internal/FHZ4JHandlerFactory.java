@@ -79,7 +79,7 @@ public class FHZ4JHandlerFactory extends BaseThingHandlerFactory {
 
         return switch (thingType) {
             case RADIATOR_FHT80B ->
-                new RadiatorFht80bHandler(thing, cronScheduler);
+                new RadiatorFht80bHandler(thing);
             case FHT80_TF ->
                 new Fht80TfHandler(thing);
             case RADIATOR_EVO_HOME ->
@@ -103,6 +103,7 @@ public class FHZ4JHandlerFactory extends BaseThingHandlerFactory {
         FHZ4JDiscoveryService discoveryService = new FHZ4JDiscoveryService(spswBridgeHandler);
         this.discoveryServiceRegs.put(spswBridgeHandler.getThing().getUID(),
                 bundleContext.registerService(DiscoveryService.class.getName(), discoveryService, new Hashtable<>()));
+        discoveryService.activate();
         return spswBridgeHandler;
     }
 
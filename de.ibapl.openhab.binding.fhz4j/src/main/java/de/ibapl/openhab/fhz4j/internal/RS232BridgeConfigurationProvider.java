@@ -21,6 +21,7 @@
  */
 package de.ibapl.openhab.fhz4j.internal;
 
+import de.ibapl.openhab.fhz4j.handler.CulReceiveQueue;
 import de.ibapl.spsw.api.SerialPortSocketFactory;
 import de.ibapl.spsw.api.Speed;
 import java.net.URI;
@@ -127,6 +128,171 @@ public class RS232BridgeConfigurationProvider implements ConfigDescriptionProvid
                         withLabel("Log Serial Port Data").
                         withDescription("Log IO and settings on the serial port");
                 configBuilder.withParameter(paramBuilder.build());
+
+                paramBuilder = ConfigDescriptionParameterBuilder.create("fhtCoalesceDelay", Type.INTEGER).
+                        withDefault("2").
+                        withRequired(false).
+                        withLabel("FHT coalesce delay").
+                        withDescription("Seconds a FHT command is held back. If a newer value of the same property of the same FHT 80b arrives meanwhile, only the newer one is sent.");
+                configBuilder.withParameter(paramBuilder.build());
+
+                paramBuilder = ConfigDescriptionParameterBuilder.create("diagnostics", Type.BOOLEAN).
+                        withDefault(String.valueOf(false)).
+                        withRequired(false).
+                        withLabel("CUL Diagnostics").
+                        withDescription("Take snapshots of the CUL state periodically and on LOVF/EOB, show them with the console command \"fhz4j diag\"");
+                configBuilder.withParameter(paramBuilder.build());
+
+                paramBuilder = ConfigDescriptionParameterBuilder.create("diagnosticsInterval", Type.INTEGER).
+                        withDefault("60").
+                        withRequired(false).
+                        withLabel("CUL Diagnostics Interval").
+                        withDescription("Minutes between two scheduled CUL snapshots, 0 for snapshots on LOVF/EOB only");
+                configBuilder.withParameter(paramBuilder.build());
+
+                paramBuilder = ConfigDescriptionParameterBuilder.create("receiveQueueSize", Type.INTEGER).
+                        withDefault("0").
+                        withRequired(false).
+                        withLabel("Receive Queue Size").
+                        withDescription("Number of received messages buffered between the serial port reader and the state updates, 0 to update the states on the reader thread");
+                configBuilder.withParameter(paramBuilder.build());
+
+                paramBuilder = ConfigDescriptionParameterBuilder.create("receiveQueueOverflow", Type.TEXT).
+                        withDefault(CulReceiveQueue.Overflow.DROP_OLDEST.name()).
+                        withRequired(false).
+                        withLabel("Receive Queue Overflow").
+                        withDescription("What to do if the receive queue is full").
+                        withOptions(List.of(
+                                new ParameterOption(CulReceiveQueue.Overflow.DROP_OLDEST.name(), "Drop the oldest message"),
+                                new ParameterOption(CulReceiveQueue.Overflow.BLOCK.name(), "Wait until there is room")));
+                configBuilder.withParameter(paramBuilder.build());
+
+                paramBuilder = ConfigDescriptionParameterBuilder.create("recordSerialPort", Type.BOOLEAN).
+                        withDefault(String.valueOf(false)).
+                        withRequired(false).
+                        withLabel("Record Serial Port").
+                        withDescription("Record the raw CUL frames in a binary format to userdata/fhz4j/recordings, a recording can be replayed with the console command \"fhz4j replay\"");
+                configBuilder.withParameter(paramBuilder.build());
+
+                paramBuilder = ConfigDescriptionParameterBuilder.create("recordSegmentSize", Type.INTEGER).
+                        withDefault("4").
+                        withRequired(false).
+                        withLabel("Record Segment Size").
+                        withDescription("Size of one recording segment in MiB");
+                configBuilder.withParameter(paramBuilder.build());
+
+                paramBuilder = ConfigDescriptionParameterBuilder.create("recordSegments", Type.INTEGER).
+                        withDefault("16").
+                        withRequired(false).
+                        withLabel("Record Segments").
+                        withDescription("Number of recording segments to keep, the oldest are deleted");
+                configBuilder.withParameter(paramBuilder.build());
+
+                paramBuilder = ConfigDescriptionParameterBuilder.create("evoHomeDiagnostics", Type.BOOLEAN).
+                        withDefault(String.valueOf(false)).
+                        withRequired(false).
+                        withLabel("EvoHome Diagnostics").
+                        withDescription("Log the EvoHome messages, which are not mapped to channels, to userdata/fhz4j/evohome");
+                configBuilder.withParameter(paramBuilder.build());
+
+                paramBuilder = ConfigDescriptionParameterBuilder.create("evoHomeDiagnosticsFileSize", Type.INTEGER).
+                        withDefault("1").
+                        withRequired(false).
+                        withLabel("EvoHome Diagnostics File Size").
+                        withDescription("Size in MiB at which the EvoHome diagnostics log is rotated");
+                configBuilder.withParameter(paramBuilder.build());
+
+                paramBuilder = ConfigDescriptionParameterBuilder.create("evoHomeDiagnosticsFiles", Type.INTEGER).
+                        withDefault("4").
+                        withRequired(false).
+                        withLabel("EvoHome Diagnostics Files").
+                        withDescription("Number of rotated EvoHome diagnostics logs to keep");
+                configBuilder.withParameter(paramBuilder.build());
+
+                paramBuilder = ConfigDescriptionParameterBuilder.create("backgroundDiscovery", Type.BOOLEAN).
+                        withDefault(String.valueOf(false)).
+                        withRequired(false).
+                        withLabel("Background Discovery").
+                        withDescription("Report unknown devices without a discovery scan; takes effect when the bridge is recreated");
+                configBuilder.withParameter(paramBuilder.build());
+
+                paramBuilder = ConfigDescriptionParameterBuilder.create("backgroundDiscoveryInterval", Type.INTEGER).
+                        withDefault("24").
+                        withRequired(false).
+                        withLabel("Background Discovery Interval").
+                        withDescription("Hours until the background discovery reports an unknown device again");
+                configBuilder.withParameter(paramBuilder.build());
+
+                paramBuilder = ConfigDescriptionParameterBuilder.create("backgroundDiscoveryMinRssi", Type.INTEGER).
+                        withDefault("-90").
+                        withRequired(false).
+                        withLabel("Background Discovery Min RSSI").
+                        withDescription("Devices received with a lower signal strength (dBm) must be received several times and are reported less often by the background discovery");
+                configBuilder.withParameter(paramBuilder.build());
+
+                paramBuilder = ConfigDescriptionParameterBuilder.create("fhtTransmitWindows", Type.BOOLEAN).
+                        withDefault(String.valueOf(true)).
+                        withRequired(false).
+                        withLabel("FHT Transmit Windows").
+                        withDescription("Learn when each FHT 80b transmits and hold its commands back until shortly before its next transmit window, so the FHT buffer of the CUL does not overflow");
+                configBuilder.withParameter(paramBuilder.build());
+
+                paramBuilder = ConfigDescriptionParameterBuilder.create("maintenanceCron", Type.TEXT).
+                        withDefault("0 0 0 ? * SUN *").
+                        withRequired(false).
+                        withLabel("FHT Maintenance Cron Pattern").
+                        withDescription("The cron pattern to start setting the clock and triggering the reporting of all FHT 80b of this bridge");
+                configBuilder.withParameter(paramBuilder.build());
+
+                paramBuilder = ConfigDescriptionParameterBuilder.create("maintenanceWindow", Type.INTEGER).
+                        withDefault("60").
+                        withRequired(false).
+                        withLabel("FHT Maintenance Window").
+                        withDescription("Minutes to spread the FHT 80b maintenance over, the devices are at least 30 seconds apart");
+                configBuilder.withParameter(paramBuilder.build());
+
+                paramBuilder = ConfigDescriptionParameterBuilder.create("stateSnapshot", Type.BOOLEAN).
+                        withDefault(String.valueOf(true)).
+                        withRequired(false).
+                        withLabel("State Snapshot").
+                        withDescription("Keep the last state of each channel in userdata/fhz4j/state and restore it when the thing is initialized");
+                configBuilder.withParameter(paramBuilder.build());
+
+                paramBuilder = ConfigDescriptionParameterBuilder.create("stateSnapshotMaxAge", Type.INTEGER).
+                        withDefault("24").
+                        withRequired(false).
+                        withLabel("State Snapshot Max Age").
+                        withDescription("Hours after which a state in the snapshot is too old to be restored");
+                configBuilder.withParameter(paramBuilder.build());
+
+                paramBuilder = ConfigDescriptionParameterBuilder.create("commandTimeout", Type.INTEGER).
+                        withDefault("30").
+                        withRequired(false).
+                        withLabel("Command Timeout").
+                        withDescription("Seconds a command may take from its release until it is written to the CUL, 0 to wait forever");
+                configBuilder.withParameter(paramBuilder.build());
+
+                paramBuilder = ConfigDescriptionParameterBuilder.create("slowRfFlags", Type.TEXT).
+                        withDefault("REPORT_PACKAGE,REPORT_FHT_PROTOCOL_MESSAGES,WITH_RSSI").
+                        withRequired(false).
+                        withAdvanced(true).
+                        withLabel("SlowRF Report Flags").
+                        withDescription("Comma separated report flags set in the CUL firmware with the FHT protocol");
+                configBuilder.withParameter(paramBuilder.build());
+
+                paramBuilder = ConfigDescriptionParameterBuilder.create("receiveFilter", Type.BOOLEAN).
+                        withDefault(String.valueOf(true)).
+                        withRequired(false).
+                        withLabel("Receive Filter").
+                        withDescription("Drop FS20, LaCrosse and the frames of unknown devices before they are parsed; frames of unknown devices pass while a discovery scan runs or the background discovery wants them");
+                configBuilder.withParameter(paramBuilder.build());
+
+                paramBuilder = ConfigDescriptionParameterBuilder.create("federation", Type.TEXT).
+                        withDefault("").
+                        withRequired(false).
+                        withLabel("Federation").
+                        withDescription("Bridges with the same federation name share their things: a message received by several CULs is processed once and commands are sent by the CUL which receives the device best. All bridges of a federation must use the same housecode. Leave empty for a standalone bridge");
+                configBuilder.withParameter(paramBuilder.build());
             }
         }
         return configBuilder.build();
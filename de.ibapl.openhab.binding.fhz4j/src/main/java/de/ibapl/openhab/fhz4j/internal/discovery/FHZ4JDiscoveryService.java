@@ -33,14 +33,19 @@ import de.ibapl.fhz4j.protocol.fs20.FS20Message;
 import de.ibapl.fhz4j.protocol.hms.HmsMessage;
 import de.ibapl.fhz4j.protocol.lacrosse.tx2.LaCrosseTx2Message;
 import de.ibapl.openhab.fhz4j.FHZ4JBindingConstants;
+import de.ibapl.openhab.fhz4j.handler.CulFederation;
 import de.ibapl.openhab.fhz4j.handler.SpswBridgeHandler;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.openhab.core.config.discovery.AbstractDiscoveryService;
 import org.openhab.core.config.discovery.DiscoveryResult;
 import org.openhab.core.config.discovery.DiscoveryResultBuilder;
+import org.openhab.core.config.discovery.DiscoveryService;
 import org.openhab.core.thing.ThingTypeUID;
 import org.openhab.core.thing.ThingUID;
 
@@ -48,19 +53,37 @@ import org.openhab.core.thing.ThingUID;
  *
  * @author aploese@gmx.de - Initial contribution
  */
-public class FHZ4JDiscoveryService extends AbstractDiscoveryService implements CulMessageListener {
+public class FHZ4JDiscoveryService extends AbstractDiscoveryService implements SpswBridgeHandler.BackgroundDiscovery {
 
     private final static Logger logger = Logger.getLogger("d.i.o.f.i.d.FHZ4JDiscoveryService");
 
     private final static int SEARCH_TIME = 15 * 60; // 15 minutes FHT80 sends all 120 sec, HMS 100 TF all 10 min.
+    private final static int RECENT_DEVICES_CAPACITY = 256;
 
     private final SpswBridgeHandler spswBridgeHandler;
+    private volatile SeenDevices seenDevices = new SeenDevices();
+    private final RecentDevices recentDevices = new RecentDevices(RECENT_DEVICES_CAPACITY);
+    private volatile boolean scanRunning;
+    /**
+     * The CUL reports the RSSI before the message, only accessed by the
+     * receive thread.
+     */
+    private float lastSignalStrength = Float.NaN;
 
     public FHZ4JDiscoveryService(SpswBridgeHandler spswBridgeHandler) {
         super(SpswBridgeHandler.SUPPORTED_THING_TYPES_UIDS, SEARCH_TIME, false);
         this.spswBridgeHandler = spswBridgeHandler;
     }
 
+    /**
+     * Registered by the handler factory and not by DS, so the factory must
+     * activate it. The background discovery is enabled by the bridge
+     * parameter backgroundDiscovery.
+     */
+    public void activate() {
+        super.activate(Map.of(DiscoveryService.CONFIG_PROPERTY_BACKGROUND_DISCOVERY, spswBridgeHandler.isBackgroundDiscoveryConfigured()));
+    }
+
     @Override
     public Set<ThingTypeUID> getSupportedThingTypes() {
         return SpswBridgeHandler.SUPPORTED_THING_TYPES_UIDS;
@@ -68,21 +91,76 @@ public class FHZ4JDiscoveryService extends AbstractDiscoveryService implements C
 
     @Override
     public void startScan() {
+        seenDevices = new SeenDevices();
+        scanRunning = true;
         spswBridgeHandler.setDiscoveryListener(this);
     }
 
     @Override
     protected synchronized void stopScan() {
         super.stopScan();
+        scanRunning = false;
         spswBridgeHandler.setDiscoveryListener(null);
         removeOlderResults(getTimestampOfLastScan());
     }
 
+    /**
+     * The bridge passes only the messages of unknown devices, which are
+     * {@link #isDue due}, so the background discovery does not make the
+     * bridge parse all frames.
+     */
+    @Override
+    protected synchronized void startBackgroundDiscovery() {
+        spswBridgeHandler.setBackgroundDiscovery(this);
+    }
+
+    @Override
+    protected synchronized void stopBackgroundDiscovery() {
+        spswBridgeHandler.setBackgroundDiscovery(null);
+    }
+
+    @Override
+    public boolean isDue(CulFederation.Kind kind, int address) {
+        return recentDevices.isDue(kind, address, spswBridgeHandler.getBackgroundDiscoveryPeriodNanos());
+    }
+
     @Override
     public void deactivate() {
+        stopBackgroundDiscovery();
         stopScan();
     }
 
+    /**
+     * A manual scan publishes each device once, the background discovery
+     * publishes a device at most once per backgroundDiscoveryInterval.
+     */
+    private boolean shouldPublish(CulFederation.Kind kind, int address) {
+        final float signalStrength = lastSignalStrength;
+        lastSignalStrength = Float.NaN;
+        if (scanRunning) {
+            return seenDevices.hit(kind, address);
+        }
+        return recentDevices.hit(kind, address, signalStrength, spswBridgeHandler.getBackgroundDiscoveryMinSignalStrength(),
+                spswBridgeHandler.getBackgroundDiscoveryPeriodNanos());
+    }
+
+    /**
+     * @return the devices seen in the current or last scan, with the number of
+     * messages received from each.
+     */
+    public List<String> getSeenDevices() {
+        final List<String> result = new ArrayList<>();
+        for (SeenDevices.Hits hits : seenDevices.getAll()) {
+            result.add(switch (hits.kind()) {
+                case FHT80_TF, EVO_HOME ->
+                    String.format("%s 0x%06x: %d", hits.kind(), hits.address(), hits.hits());
+                default ->
+                    String.format("%s %d: %d", hits.kind(), (short) hits.address(), hits.hits());
+            });
+        }
+        return result;
+    }
+
     private void addHms100TfDevice(short housecode) {
         final ThingUID bridgeUID = spswBridgeHandler.getThing().getUID();
         final String deviceIdStr = Short.toString(housecode);
@@ -209,7 +287,9 @@ public class FHZ4JDiscoveryService extends AbstractDiscoveryService implements C
     public void emDataParsed(EmMessage emMsg) {
         switch (emMsg.emDeviceType) {
             case EM_1000_EM:
-                addEm1000EmDevice(emMsg.address);
+                if (shouldPublish(CulFederation.Kind.EM, emMsg.address)) {
+                    addEm1000EmDevice(emMsg.address);
+                }
                 break;
             default:
                 throw new RuntimeException("EM 1000 TYpe " + emMsg.emDeviceType + " not implemented yet");
@@ -224,12 +304,16 @@ public class FHZ4JDiscoveryService extends AbstractDiscoveryService implements C
 
     @Override
     public void fhtDataParsed(FhtMessage fhtMsg) {
-        addFhtDevice(fhtMsg.housecode);
+        if (shouldPublish(CulFederation.Kind.FHT, fhtMsg.housecode)) {
+            addFhtDevice(fhtMsg.housecode);
+        }
     }
 
     @Override
     public void fht80TfDataParsed(Fht80TfMessage fht80TfMsg) {
-        addFht80TfDevice(fht80TfMsg.address);
+        if (shouldPublish(CulFederation.Kind.FHT80_TF, fht80TfMsg.address)) {
+            addFht80TfDevice(fht80TfMsg.address);
+        }
     }
 
     @Override
@@ -248,7 +332,9 @@ public class FHZ4JDiscoveryService extends AbstractDiscoveryService implements C
     public void hmsDataParsed(HmsMessage hmsMsg) {
         switch (hmsMsg.hmsDeviceType) {
             case HMS_100_TF:
-                addHms100TfDevice(hmsMsg.housecode);
+                if (shouldPublish(CulFederation.Kind.HMS, hmsMsg.housecode)) {
+                    addHms100TfDevice(hmsMsg.housecode);
+                }
                 break;
             default:
                 throw new RuntimeException("HMS TYpe " + hmsMsg.hmsDeviceType + " not implemented yet");
@@ -270,6 +356,9 @@ public class FHZ4JDiscoveryService extends AbstractDiscoveryService implements C
     @Override
     public void evoHomeParsed(EvoHomeMessage evoHomeMsg) {
         if (evoHomeMsg instanceof EvoHomeDeviceMessage devMsg) {
+            if (!shouldPublish(CulFederation.Kind.EVO_HOME, devMsg.deviceId1.id)) {
+                return;
+            }
             switch (devMsg.deviceId1.type) {
                 case MULTI_ZONE_CONTROLLER ->
                     addMultiZoneControllerEvoHomeDevice(devMsg.deviceId1.id);
@@ -285,7 +374,7 @@ public class FHZ4JDiscoveryService extends AbstractDiscoveryService implements C
 
     @Override
     public void signalStrength(float signalStrength) {
-        //no-op
+        lastSignalStrength = signalStrength;
     }
 
     @Override
@@ -0,0 +1,121 @@
+/*
+ * ESH-IBAPL  - OpenHAB bindings for various IB APL drivers, https://github.com/aploese/esh-ibapl/
+ * Copyright (C) 2024-2025, Arne Plöse and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package de.ibapl.openhab.fhz4j.internal.discovery;
+
+import de.ibapl.openhab.fhz4j.handler.CulFederation;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The {@link RecentDevices} decides during background discovery, if a
+ * result for an unknown device is published. A device is published at most
+ * once per period. A device received with a signal strength below the
+ * threshold is likely a neighbour's, it must be received several times
+ * before it is published and is published less often.
+ *
+ * Only the least recently seen devices are remembered, so noise on the band
+ * can not grow the index.
+ *
+ * @author aploese@gmx.de - Initial contribution
+ */
+final class RecentDevices {
+
+    /**
+     * Number of messages needed before a weak device is published.
+     */
+    final static int WEAK_MIN_HITS = 3;
+    /**
+     * A weak device is published at most once per this many periods.
+     */
+    final static int WEAK_PERIOD_FACTOR = 4;
+
+    private static class Entry {
+
+        long publishedNanos;
+        boolean published;
+        int hits;
+    }
+
+    private final Map<Integer, Entry> devices;
+
+    RecentDevices(int capacity) {
+        devices = new LinkedHashMap<>(capacity * 4 / 3 + 1, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Entry> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * Count a message of an unknown device.
+     *
+     * @param kind the kind of device.
+     * @param address the housecode, address or device id.
+     * @param signalStrength the RSSI in dBm or NaN if unknown.
+     * @param minSignalStrength devices below this RSSI are weak.
+     * @param periodNanos the minimal time between two results of the same
+     * device.
+     * @return true if a result should be published now.
+     */
+    synchronized boolean hit(CulFederation.Kind kind, int address, float signalStrength, float minSignalStrength, long periodNanos) {
+        final long now = System.nanoTime();
+        final Integer key = kind.key(address);
+        Entry entry = devices.get(key);
+        if (entry == null) {
+            entry = new Entry();
+            devices.put(key, entry);
+        }
+        if (entry.hits != Integer.MAX_VALUE) {
+            entry.hits++;
+        }
+        final boolean weak = signalStrength < minSignalStrength;
+        if (weak && entry.hits < WEAK_MIN_HITS) {
+            return false;
+        }
+        final long period = weak ? periodNanos * WEAK_PERIOD_FACTOR : periodNanos;
+        if (entry.published && now - entry.publishedNanos < period) {
+            return false;
+        }
+        entry.published = true;
+        entry.publishedNanos = now;
+        return true;
+    }
+
+    /**
+     * Look up an unknown device without counting it.
+     *
+     * @param kind the kind of device.
+     * @param address the housecode, address or device id.
+     * @param periodNanos the minimal time between two results of the same
+     * device.
+     * @return false if the device was published within the period.
+     */
+    synchronized boolean isDue(CulFederation.Kind kind, int address, long periodNanos) {
+        final Entry entry = devices.get(kind.key(address));
+        return entry == null || !entry.published || System.nanoTime() - entry.publishedNanos >= periodNanos;
+    }
+
+    synchronized int size() {
+        return devices.size();
+    }
+}
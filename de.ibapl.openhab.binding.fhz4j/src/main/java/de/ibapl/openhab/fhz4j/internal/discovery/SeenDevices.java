@@ -0,0 +1,134 @@
+/*
+ * ESH-IBAPL  - OpenHAB bindings for various IB APL drivers, https://github.com/aploese/esh-ibapl/
+ * Copyright (C) 2024-2025, Arne Plöse and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package de.ibapl.openhab.fhz4j.internal.discovery;
+
+import de.ibapl.openhab.fhz4j.handler.CulFederation;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The {@link SeenDevices} remembers the addresses seen during a scan and how
+ * often each one was received. The devices of all kinds are counted in one
+ * open addressing table of primitive ints, keyed by
+ * {@link CulFederation.Kind#key(int)}, so a lookup does not box.
+ *
+ * @author aploese@gmx.de - Initial contribution
+ */
+final class SeenDevices {
+
+    record Hits(CulFederation.Kind kind, int address, int hits) {
+
+    }
+
+    private final static int INITIAL_CAPACITY = 64;
+
+    /**
+     * The key of the device, 0 marks a free slot.
+     */
+    private int[] keys = new int[INITIAL_CAPACITY];
+    private int[] hits = new int[INITIAL_CAPACITY];
+    private int size;
+
+    private static int indexOf(int key, int mask) {
+        final int h = key * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    /**
+     * Count a message of the device.
+     *
+     * @param kind the kind of device.
+     * @param address the housecode, address or device id.
+     * @return true if the device was not seen before.
+     */
+    synchronized boolean hit(CulFederation.Kind kind, int address) {
+        return increment(kind.key(address)) == 1;
+    }
+
+    private int increment(int key) {
+        int i = indexOf(key, keys.length - 1);
+        while (keys[i] != 0) {
+            if (keys[i] == key) {
+                if (hits[i] != Integer.MAX_VALUE) {
+                    hits[i]++;
+                }
+                return hits[i];
+            }
+            i = (i + 1) & (keys.length - 1);
+        }
+        keys[i] = key;
+        hits[i] = 1;
+        if (++size * 2 > keys.length) {
+            grow();
+        }
+        return 1;
+    }
+
+    private void grow() {
+        final int[] oldKeys = keys;
+        final int[] oldHits = hits;
+        keys = new int[oldKeys.length * 2];
+        hits = new int[oldKeys.length * 2];
+        final int mask = keys.length - 1;
+        for (int j = 0; j < oldKeys.length; j++) {
+            if (oldKeys[j] != 0) {
+                int i = indexOf(oldKeys[j], mask);
+                while (keys[i] != 0) {
+                    i = (i + 1) & mask;
+                }
+                keys[i] = oldKeys[j];
+                hits[i] = oldHits[j];
+            }
+        }
+    }
+
+    /**
+     * @return the number of messages received from the device, 0 if it was
+     * not seen.
+     */
+    synchronized int getHits(CulFederation.Kind kind, int address) {
+        final int key = kind.key(address);
+        int i = indexOf(key, keys.length - 1);
+        while (keys[i] != 0) {
+            if (keys[i] == key) {
+                return hits[i];
+            }
+            i = (i + 1) & (keys.length - 1);
+        }
+        return 0;
+    }
+
+    synchronized List<Hits> getAll() {
+        final CulFederation.Kind[] kinds = CulFederation.Kind.values();
+        final List<Hits> result = new ArrayList<>(size);
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != 0) {
+                result.add(new Hits(kinds[(keys[i] >>> 24) - 1], keys[i] & 0xffffff, hits[i]));
+            }
+        }
+        return result;
+    }
+
+    synchronized int size() {
+        return size;
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * ESH-IBAPL  - OpenHAB bindings for various IB APL drivers, https://github.com/aploese/esh-ibapl/
+ * Copyright (C) 2024-2025, Arne Plöse and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package de.ibapl.openhab.fhz4j.handler;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ *
+ * @author aploese@gmx.de - Initial contribution
+ */
+public class CrcMappedFileTest {
+
+    private final static int MAGIC = 0x54455354;
+    private final static short VERSION = 1;
+    private final static int RECORD_SIZE = 32;
+    private final static int RECORDS = 3;
+
+    @TempDir
+    Path tempDir;
+
+    private Path file() {
+        return tempDir.resolve("test.crc");
+    }
+
+    private CrcMappedFile open() throws IOException {
+        return new CrcMappedFile(file(), MAGIC, VERSION, RECORD_SIZE, RECORDS);
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String read(CrcMappedFile mapped, int record) {
+        final byte[] content = new byte[mapped.getMaxLength()];
+        final int length = mapped.read(record, content);
+        return length < 0 ? null : new String(content, 0, length, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Overwrite bytes of the record as a crash in the middle of a write
+     * would.
+     */
+    private void writeRecord(int record, int offset, byte[] bytes) throws IOException {
+        try (FileChannel channel = FileChannel.open(file(), StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(bytes), CrcMappedFile.HEADER_SIZE + record * RECORD_SIZE + offset);
+        }
+    }
+
+    private void writeThreeRecords() throws IOException {
+        try (CrcMappedFile mapped = open()) {
+            assertTrue(mapped.isCreated());
+            mapped.write(0, bytes("zero"), 4);
+            mapped.write(1, bytes("one"), 3);
+            mapped.write(2, bytes("two"), 3);
+        }
+    }
+
+    @Test
+    public void testReadWritten() throws Exception {
+        writeThreeRecords();
+        try (CrcMappedFile mapped = open()) {
+            assertFalse(mapped.isCreated());
+            assertEquals("zero", read(mapped, 0));
+            assertEquals("one", read(mapped, 1));
+            assertEquals("two", read(mapped, 2));
+            //rewrite in place
+            mapped.write(1, bytes("eins"), 4);
+            assertEquals("eins", read(mapped, 1));
+        }
+    }
+
+    @Test
+    public void testTornRecordIsEmpty() throws Exception {
+        writeThreeRecords();
+        //the content of record 1 no longer matches its crc
+        writeRecord(1, CrcMappedFile.RECORD_HEADER_SIZE + 1, new byte[]{0x55});
+        try (CrcMappedFile mapped = open()) {
+            assertEquals("zero", read(mapped, 0));
+            assertNull(read(mapped, 1));
+            assertEquals("two", read(mapped, 2));
+        }
+    }
+
+    @Test
+    public void testTornLengthIsEmpty() throws Exception {
+        writeThreeRecords();
+        writeRecord(2, 4, new byte[]{(byte) 0xff, (byte) 0xff});
+        try (CrcMappedFile mapped = open()) {
+            assertEquals("one", read(mapped, 1));
+            assertNull(read(mapped, 2));
+        }
+    }
+
+    @Test
+    public void testInvalidatedRecordIsEmpty() throws Exception {
+        writeThreeRecords();
+        //the crash happened after the record was invalidated
+        writeRecord(0, 0, new byte[4]);
+        try (CrcMappedFile mapped = open()) {
+            assertNull(read(mapped, 0));
+            assertEquals("one", read(mapped, 1));
+        }
+    }
+
+    @Test
+    public void testUnknownFileStartsEmpty() throws Exception {
+        final byte[] garbage = new byte[CrcMappedFile.HEADER_SIZE + RECORDS * RECORD_SIZE];
+        Arrays.fill(garbage, (byte) 0x55);
+        Files.write(file(), garbage);
+        try (CrcMappedFile mapped = open()) {
+            assertTrue(mapped.isCreated());
+            for (int i = 0; i < RECORDS; i++) {
+                assertNull(read(mapped, i));
+            }
+            mapped.write(0, bytes("zero"), 4);
+        }
+        try (CrcMappedFile mapped = open()) {
+            assertFalse(mapped.isCreated());
+            assertEquals("zero", read(mapped, 0));
+        }
+    }
+
+    @Test
+    public void testOtherRecordSizeStartsEmpty() throws Exception {
+        writeThreeRecords();
+        try (CrcMappedFile mapped = new CrcMappedFile(file(), MAGIC, VERSION, RECORD_SIZE + 8, RECORDS)) {
+            assertTrue(mapped.isCreated());
+            assertNull(read(mapped, 0));
+        }
+    }
+
+    @Test
+    public void testEmptyContent() throws Exception {
+        try (CrcMappedFile mapped = open()) {
+            mapped.write(0, new byte[0], 0);
+            assertEquals("", read(mapped, 0));
+        }
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * ESH-IBAPL  - OpenHAB bindings for various IB APL drivers, https://github.com/aploese/esh-ibapl/
+ * Copyright (C) 2024-2025, Arne Plöse and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package de.ibapl.openhab.fhz4j.handler;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+import java.nio.charset.StandardCharsets;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ *
+ * @author aploese@gmx.de - Initial contribution
+ */
+public class CulFederationTest {
+
+    private final CulFrameHash frameHash = new CulFrameHash(true);
+    private SpswBridgeHandler first;
+    private SpswBridgeHandler second;
+    private CulFederation federation;
+
+    @BeforeEach
+    public void setUp() {
+        first = mock(SpswBridgeHandler.class);
+        second = mock(SpswBridgeHandler.class);
+        federation = CulFederation.join("test", first);
+        CulFederation.join("test", second);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        federation.leave(first);
+        federation.leave(second);
+    }
+
+    private int hash(String line) {
+        final byte[] b = line.getBytes(StandardCharsets.US_ASCII);
+        return frameHash.hash(b, b.length);
+    }
+
+    @Test
+    public void testCopyIsDropped() {
+        assertTrue(federation.accept(first, CulFederation.Kind.FHT, 0x1234, hash("T1234422A69F3\r\n"), -60f));
+        //the same frame heard by the other stick with another RSSI
+        assertFalse(federation.accept(second, CulFederation.Kind.FHT, 0x1234, hash("T1234422A6921\r\n"), -70f));
+    }
+
+    @Test
+    public void testDifferentFramesPass() {
+        //two zone temperatures of one EvoHome controller within the window
+        assertTrue(federation.accept(first, CulFederation.Kind.EVO_HOME, 0x0412ab, hash("--- I --- 01:123456 --:------ 01:123456 30C9 003 0107D0\r\n"), Float.NaN));
+        assertTrue(federation.accept(first, CulFederation.Kind.EVO_HOME, 0x0412ab, hash("--- I --- 01:123456 --:------ 01:123456 30C9 003 0207E4\r\n"), Float.NaN));
+        //two properties of one FHT80b, which have no typed value
+        assertTrue(federation.accept(first, CulFederation.Kind.FHT, 0x1234, hash("T12340069A600\r\n"), -60f));
+        assertTrue(federation.accept(second, CulFederation.Kind.FHT, 0x1234, hash("T12340069A700\r\n"), -60f));
+    }
+
+    @Test
+    public void testSameFrameOfOtherDevicePasses() {
+        final int h = hash("T1234422A69F3\r\n");
+        assertTrue(federation.accept(first, CulFederation.Kind.FHT, 0x1234, h, -60f));
+        assertTrue(federation.accept(first, CulFederation.Kind.FHT, 0x4321, h, -60f));
+        assertTrue(federation.accept(first, CulFederation.Kind.HMS, 0x1234, h, -60f));
+    }
+}
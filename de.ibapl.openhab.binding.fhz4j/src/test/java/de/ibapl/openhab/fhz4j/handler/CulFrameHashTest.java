@@ -0,0 +1,86 @@
+/*
+ * ESH-IBAPL  - OpenHAB bindings for various IB APL drivers, https://github.com/aploese/esh-ibapl/
+ * Copyright (C) 2024-2025, Arne Plöse and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package de.ibapl.openhab.fhz4j.handler;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import org.junit.jupiter.api.Test;
+
+/**
+ *
+ * @author aploese@gmx.de - Initial contribution
+ */
+public class CulFrameHashTest {
+
+    private static int hash(CulFrameHash frameHash, String line) {
+        final byte[] b = line.getBytes(StandardCharsets.US_ASCII);
+        return frameHash.hash(b, b.length);
+    }
+
+    @Test
+    public void testPayloadIsHashed() {
+        final CulFrameHash frameHash = new CulFrameHash(true);
+        //two temperatures of the same FHT80b
+        assertNotEquals(hash(frameHash, "T1234422A6900\r\n"), hash(frameHash, "T1234422A6A00\r\n"));
+    }
+
+    @Test
+    public void testRssiIsNotHashed() {
+        final CulFrameHash frameHash = new CulFrameHash(true);
+        assertEquals(hash(frameHash, "T1234422A69F3\r\n"), hash(frameHash, "T1234422A6921\r\n"));
+        assertEquals(hash(frameHash, "T1234422A69F3\n"), hash(frameHash, "T1234422A69F3\r\n"));
+        //without the RSSI the last byte is payload
+        final CulFrameHash noRssi = new CulFrameHash(false);
+        assertNotEquals(hash(noRssi, "T1234422A69\r\n"), hash(noRssi, "T1234422A6A\r\n"));
+    }
+
+    @Test
+    public void testOneLinePerRead() throws Exception {
+        final CulFrameHash frameHash = new CulFrameHash(true);
+        final String first = "T1234422A6900\r\n";
+        final String second = "H12340101650342F0\r\n";
+        final InputStream in = frameHash.wrap(new ByteArrayInputStream((first + second).getBytes(StandardCharsets.US_ASCII)));
+        final byte[] b = new byte[256];
+
+        assertEquals(first.length(), in.read(b, 0, b.length));
+        assertEquals(first, new String(b, 0, first.length(), StandardCharsets.US_ASCII));
+        assertEquals(hash(frameHash, first), frameHash.getLineHash());
+        assertEquals(hash(frameHash, first), frameHash.get());
+        //only the held back line is available
+        assertEquals(second.length(), in.available());
+
+        assertEquals(second.length(), in.read(b, 0, b.length));
+        assertEquals(hash(frameHash, second), frameHash.getLineHash());
+        assertEquals(-1, in.read(b, 0, b.length));
+    }
+
+    @Test
+    public void testQueuedHash() {
+        final CulFrameHash frameHash = new CulFrameHash(true);
+        frameHash.queued(42);
+        assertEquals(42, frameHash.get());
+    }
+}
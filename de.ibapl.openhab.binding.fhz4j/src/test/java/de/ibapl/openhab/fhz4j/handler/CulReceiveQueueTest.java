@@ -0,0 +1,189 @@
+/*
+ * ESH-IBAPL  - OpenHAB bindings for various IB APL drivers, https://github.com/aploese/esh-ibapl/
+ * Copyright (C) 2024-2025, Arne Plöse and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package de.ibapl.openhab.fhz4j.handler;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import de.ibapl.fhz4j.cul.CulMessageListener;
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ *
+ * @author aploese@gmx.de - Initial contribution
+ */
+public class CulReceiveQueueTest {
+
+    private final BlockingQueue<String> dispatched = new LinkedBlockingQueue<>();
+    private final List<Thread> dispatchThreads = new ArrayList<>();
+    private CountDownLatch releaseDispatcher = new CountDownLatch(0);
+    private CulReceiveQueue receiveQueue;
+
+    @AfterEach
+    public void tearDown() {
+        if (receiveQueue != null) {
+            receiveQueue.stop();
+        }
+    }
+
+    /**
+     * Records the name of the called method and its argument.
+     */
+    private CulMessageListener createDelegate() {
+        return (CulMessageListener) Proxy.newProxyInstance(CulMessageListener.class.getClassLoader(), new Class<?>[]{CulMessageListener.class},
+                (proxy, method, args) -> {
+                    if (method.getDeclaringClass() == Object.class) {
+                        return method.invoke(this, args);
+                    }
+                    releaseDispatcher.await();
+                    synchronized (dispatchThreads) {
+                        dispatchThreads.add(Thread.currentThread());
+                    }
+                    dispatched.add(method.getName() + ":" + (args == null ? "" : args[0]));
+                    return null;
+                });
+    }
+
+    private CulReceiveQueue createQueue(int capacity, CulReceiveQueue.Overflow overflow) {
+        receiveQueue = new CulReceiveQueue(createDelegate(), capacity, overflow, new CulLatency(), null);
+        return receiveQueue;
+    }
+
+    private List<String> take(int count) throws InterruptedException {
+        final List<String> result = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            final String s = dispatched.poll(5, TimeUnit.SECONDS);
+            if (s == null) {
+                break;
+            }
+            result.add(s);
+        }
+        return result;
+    }
+
+    @Test
+    public void testOrder() throws Exception {
+        final CulReceiveQueue queue = createQueue(8, CulReceiveQueue.Overflow.DROP_OLDEST);
+        for (int i = 0; i < 5; i++) {
+            queue.helpParsed(Integer.toString(i));
+        }
+        queue.signalStrength(-72.5f);
+        assertEquals(6, queue.getDepth());
+        assertEquals(6, queue.getMaxDepth());
+        queue.start("test");
+        assertEquals(List.of("helpParsed:0", "helpParsed:1", "helpParsed:2", "helpParsed:3", "helpParsed:4", "signalStrength:-72.5"),
+                take(6));
+        assertEquals(0, queue.getDropped());
+        //a single dispatcher, which is not the reader thread
+        synchronized (dispatchThreads) {
+            assertEquals(1, dispatchThreads.stream().distinct().count());
+            assertTrue(dispatchThreads.get(0) != Thread.currentThread());
+        }
+    }
+
+    @Test
+    public void testDropOldest() throws Exception {
+        final CulReceiveQueue queue = createQueue(4, CulReceiveQueue.Overflow.DROP_OLDEST);
+        releaseDispatcher = new CountDownLatch(1);
+        queue.start("test");
+        queue.helpParsed("0");
+        //wait until the dispatcher holds the first message
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (queue.getDepth() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        for (int i = 1; i < 7; i++) {
+            queue.helpParsed(Integer.toString(i));
+        }
+        assertEquals(4, queue.getDepth());
+        assertEquals(2, queue.getDropped());
+        releaseDispatcher.countDown();
+        assertEquals(List.of("helpParsed:0", "helpParsed:3", "helpParsed:4", "helpParsed:5", "helpParsed:6"), take(5));
+    }
+
+    @Test
+    public void testCapacityIsRoundedUp() {
+        final CulReceiveQueue queue = createQueue(5, CulReceiveQueue.Overflow.DROP_OLDEST);
+        for (int i = 0; i < 8; i++) {
+            queue.helpParsed(Integer.toString(i));
+        }
+        assertEquals(8, queue.getDepth());
+        assertEquals(0, queue.getDropped());
+    }
+
+    @Test
+    public void testRingWrapsAround() throws Exception {
+        final CulReceiveQueue queue = createQueue(4, CulReceiveQueue.Overflow.DROP_OLDEST);
+        queue.start("test");
+        for (int i = 0; i < 100; i++) {
+            queue.helpParsed(Integer.toString(i));
+            assertEquals("helpParsed:" + i, dispatched.poll(5, TimeUnit.SECONDS));
+        }
+        assertEquals(0, queue.getDropped());
+    }
+
+    @Test
+    public void testBlock() throws Exception {
+        final CulReceiveQueue queue = createQueue(2, CulReceiveQueue.Overflow.BLOCK);
+        releaseDispatcher = new CountDownLatch(1);
+        queue.start("test");
+        final Thread reader = new Thread(() -> {
+            for (int i = 0; i < 10; i++) {
+                queue.helpParsed(Integer.toString(i));
+            }
+        });
+        reader.start();
+        reader.join(200);
+        //the dispatcher holds one message, the ring is full
+        assertTrue(reader.isAlive());
+        releaseDispatcher.countDown();
+        reader.join(5000);
+        final List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            expected.add("helpParsed:" + i);
+        }
+        assertEquals(expected, take(10));
+        assertEquals(0, queue.getDropped());
+    }
+
+    @Test
+    public void testIOExceptionIsNotQueued() throws Exception {
+        final CulReceiveQueue queue = createQueue(4, CulReceiveQueue.Overflow.DROP_OLDEST);
+        final IOException ioe = new IOException("test");
+        queue.onIOException(ioe);
+        assertEquals(0, queue.getDepth());
+        assertEquals("onIOException:" + ioe, dispatched.poll());
+        synchronized (dispatchThreads) {
+            assertSame(Thread.currentThread(), dispatchThreads.get(0));
+        }
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * ESH-IBAPL  - OpenHAB bindings for various IB APL drivers, https://github.com/aploese/esh-ibapl/
+ * Copyright (C) 2024-2025, Arne Plöse and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package de.ibapl.openhab.fhz4j.handler;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ *
+ * @author aploese@gmx.de - Initial contribution
+ */
+public class CulTxQueueTest {
+
+    private final static long HOLD_BACK_NS = TimeUnit.MILLISECONDS.toNanos(200);
+
+    private final List<String> written = new CopyOnWriteArrayList<>();
+    private final CountDownLatch writerBlocked = new CountDownLatch(1);
+    private final CountDownLatch releaseWriter = new CountDownLatch(1);
+    private CulTxQueue txQueue;
+
+    @BeforeEach
+    public void setUp() {
+        txQueue = new CulTxQueue(operation -> operation.execute(null));
+        txQueue.start("test");
+    }
+
+    @AfterEach
+    public void tearDown() {
+        txQueue.stop();
+    }
+
+    private CulTxQueue.TxOperation write(String command) {
+        return culAdapter -> written.add(command);
+    }
+
+    /**
+     * Hold the writer in its first command, so the following commands queue
+     * up.
+     */
+    private CompletableFuture<Void> blockWriter() throws InterruptedException {
+        final CompletableFuture<Void> result = txQueue.submit(CulTxQueue.Priority.HIGH, culAdapter -> {
+            writerBlocked.countDown();
+            try {
+                releaseWriter.await();
+            } catch (InterruptedException ie) {
+                throw new IOException(ie);
+            }
+            written.add("blocker");
+        });
+        assertTrue(writerBlocked.await(5, TimeUnit.SECONDS));
+        return result;
+    }
+
+    @Test
+    public void testLastWriteWins() throws Exception {
+        final CompletableFuture<Void> first = txQueue.submit(CulTxQueue.Priority.NORMAL, 1, HOLD_BACK_NS, write("a"));
+        final CompletableFuture<Void> second = txQueue.submit(CulTxQueue.Priority.NORMAL, 1, HOLD_BACK_NS, write("b"));
+        second.get(5, TimeUnit.SECONDS);
+        //the first caller is told, when the command superseding its command was written
+        first.get(5, TimeUnit.SECONDS);
+        assertEquals(List.of("b"), written);
+        assertEquals(2, txQueue.getSubmitted());
+        assertEquals(1, txQueue.getCoalesced());
+        assertEquals(1, txQueue.getSent());
+    }
+
+    @Test
+    public void testCoalescedKeepsPosition() throws Exception {
+        final CompletableFuture<Void> blocker = blockWriter();
+        txQueue.submit(CulTxQueue.Priority.NORMAL, 1, 0, write("a"));
+        txQueue.submit(CulTxQueue.Priority.NORMAL, 2, 0, write("c"));
+        final CompletableFuture<Void> last = txQueue.submit(CulTxQueue.Priority.NORMAL, 1, 0, write("b"));
+        assertEquals(2, txQueue.getDepth());
+        releaseWriter.countDown();
+        blocker.get(5, TimeUnit.SECONDS);
+        last.get(5, TimeUnit.SECONDS);
+        assertEquals(List.of("blocker", "b", "c"), written);
+    }
+
+    @Test
+    public void testNoCoalesceKey() throws Exception {
+        final CompletableFuture<Void> blocker = blockWriter();
+        txQueue.submit(CulTxQueue.Priority.NORMAL, write("a"));
+        final CompletableFuture<Void> last = txQueue.submit(CulTxQueue.Priority.NORMAL, write("b"));
+        releaseWriter.countDown();
+        blocker.get(5, TimeUnit.SECONDS);
+        last.get(5, TimeUnit.SECONDS);
+        assertEquals(List.of("blocker", "a", "b"), written);
+        assertEquals(0, txQueue.getCoalesced());
+    }
+
+    @Test
+    public void testPriority() throws Exception {
+        final CompletableFuture<Void> blocker = blockWriter();
+        final CompletableFuture<Void> low = txQueue.submit(CulTxQueue.Priority.LOW, write("low"));
+        txQueue.submit(CulTxQueue.Priority.NORMAL, write("normal"));
+        txQueue.submit(CulTxQueue.Priority.HIGH, write("high"));
+        releaseWriter.countDown();
+        blocker.get(5, TimeUnit.SECONDS);
+        low.get(5, TimeUnit.SECONDS);
+        assertEquals(List.of("blocker", "high", "normal", "low"), written);
+    }
+
+    @Test
+    public void testStopped() {
+        txQueue.stop();
+        final CompletableFuture<Void> result = txQueue.submit(CulTxQueue.Priority.NORMAL, 1, 0, write("a"));
+        final ExecutionException ee = assertThrows(ExecutionException.class, () -> result.get(5, TimeUnit.SECONDS));
+        assertTrue(ee.getCause() instanceof CulTxQueue.StoppedException);
+        assertEquals(List.of(), written);
+    }
+
+    @Test
+    public void testStopFailsPending() throws Exception {
+        final CompletableFuture<Void> blocker = blockWriter();
+        final CompletableFuture<Void> pending = txQueue.submit(CulTxQueue.Priority.NORMAL, write("a"));
+        txQueue.stop();
+        //the interrupted write and the queued one are cancelled, not failed
+        ExecutionException ee = assertThrows(ExecutionException.class, () -> blocker.get(5, TimeUnit.SECONDS));
+        assertTrue(ee.getCause() instanceof CulTxQueue.StoppedException);
+        ee = assertThrows(ExecutionException.class, () -> pending.get(5, TimeUnit.SECONDS));
+        assertTrue(ee.getCause() instanceof CulTxQueue.StoppedException);
+        assertEquals(List.of(), written);
+    }
+}
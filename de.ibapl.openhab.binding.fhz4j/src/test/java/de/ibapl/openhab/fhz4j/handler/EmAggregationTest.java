@@ -0,0 +1,75 @@
+/*
+ * ESH-IBAPL  - OpenHAB bindings for various IB APL drivers, https://github.com/aploese/esh-ibapl/
+ * Copyright (C) 2024-2025, Arne Plöse and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package de.ibapl.openhab.fhz4j.handler;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.time.ZoneOffset;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+/**
+ *
+ * @author aploese@gmx.de - Initial contribution
+ */
+public class EmAggregationTest {
+
+    //2025-01-01T00:00:00Z
+    private final static long T0 = 1735689600000L;
+    private final static long MINUTE = TimeUnit.MINUTES.toMillis(1);
+
+    @Test
+    public void testBuckets() throws Exception {
+        try (EmAggregation aggregation = new EmAggregation(null, ZoneOffset.UTC)) {
+            //the first message has nothing to compare with
+            aggregation.update(T0, 100, 3);
+            aggregation.update(T0 + MINUTE, 110, 9);
+            aggregation.update(T0 + 5 * MINUTE, 125, 4);
+            assertEquals(15, aggregation.getEnergy(EmAggregation.Resolution.FIVE_MINUTES, 0));
+            assertEquals(10, aggregation.getEnergy(EmAggregation.Resolution.FIVE_MINUTES, 1));
+            assertEquals(25, aggregation.getEnergy(EmAggregation.Resolution.HOUR, 0));
+            assertEquals(25, aggregation.getEnergy(EmAggregation.Resolution.DAY, 0));
+            assertEquals(4, aggregation.getPeakPower(EmAggregation.Resolution.FIVE_MINUTES, 0));
+            assertEquals(9, aggregation.getPeakPower(EmAggregation.Resolution.HOUR, 0));
+
+            //a skipped bucket is cleared
+            aggregation.update(T0 + 15 * MINUTE, 135, 1);
+            assertEquals(10, aggregation.getEnergy(EmAggregation.Resolution.FIVE_MINUTES, 0));
+            assertEquals(0, aggregation.getEnergy(EmAggregation.Resolution.FIVE_MINUTES, 1));
+            assertEquals(15, aggregation.getEnergy(EmAggregation.Resolution.FIVE_MINUTES, 2));
+        }
+    }
+
+    @Test
+    public void testCounterOverflowAndReset() throws Exception {
+        try (EmAggregation aggregation = new EmAggregation(null, ZoneOffset.UTC)) {
+            aggregation.update(T0, 0xfffa, 0);
+            //the 16 bit counter wraps around
+            aggregation.update(T0 + MINUTE, 4, 0);
+            assertEquals(10, aggregation.getEnergy(EmAggregation.Resolution.FIVE_MINUTES, 0));
+            //the meter started again at 0
+            aggregation.update(T0 + 2 * MINUTE, 2000, 0);
+            aggregation.update(T0 + 3 * MINUTE, 3, 0);
+            assertEquals(10 + 1996 + 3, aggregation.getEnergy(EmAggregation.Resolution.FIVE_MINUTES, 0));
+        }
+    }
+}
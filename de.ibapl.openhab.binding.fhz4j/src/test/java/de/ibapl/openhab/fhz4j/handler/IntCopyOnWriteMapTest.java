@@ -0,0 +1,152 @@
+/*
+ * ESH-IBAPL  - OpenHAB bindings for various IB APL drivers, https://github.com/aploese/esh-ibapl/
+ * Copyright (C) 2024-2025, Arne Plöse and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package de.ibapl.openhab.fhz4j.handler;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.lang.management.ManagementFactory;
+import org.junit.jupiter.api.Test;
+
+/**
+ *
+ * @author aploese@gmx.de - Initial contribution
+ */
+public class IntCopyOnWriteMapTest {
+
+    @Test
+    public void testGetPutRemove() {
+        final IntCopyOnWriteMap<String> map = new IntCopyOnWriteMap<>();
+        assertNull(map.get(0));
+        assertEquals(0, map.size());
+
+        map.put(0x1234, "a");
+        map.put(-1, "b");
+        map.put(Short.MIN_VALUE, "c");
+        assertEquals("a", map.get(0x1234));
+        assertEquals("b", map.get(-1));
+        assertEquals("c", map.get(Short.MIN_VALUE));
+        assertNull(map.get(0x1235));
+        assertEquals(3, map.size());
+
+        map.put(0x1234, "d");
+        assertEquals("d", map.get(0x1234));
+        assertEquals(3, map.size());
+
+        map.remove(-1);
+        assertNull(map.get(-1));
+        assertEquals("c", map.get(Short.MIN_VALUE));
+        assertEquals(2, map.size());
+        //not there
+        map.remove(-1);
+        assertEquals(2, map.size());
+
+        map.clear();
+        assertNull(map.get(0x1234));
+        assertEquals(0, map.size());
+    }
+
+    @Test
+    public void testManyKeys() {
+        final IntCopyOnWriteMap<Integer> map = new IntCopyOnWriteMap<>();
+        //many keys collide in the small tables
+        for (int i = 0; i < 1000; i++) {
+            map.put(i << 16, i);
+        }
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(i, map.get(i << 16));
+        }
+        for (int i = 0; i < 1000; i += 2) {
+            map.remove(i << 16);
+        }
+        for (int i = 0; i < 1000; i++) {
+            if (i % 2 == 0) {
+                assertNull(map.get(i << 16));
+            } else {
+                assertEquals(i, map.get(i << 16));
+            }
+        }
+        assertEquals(500, map.size());
+    }
+
+    @Test
+    public void testKeysAreSorted() {
+        final IntCopyOnWriteMap<String> map = new IntCopyOnWriteMap<>();
+        map.put(7, "7");
+        map.put(-3, "-3");
+        map.put(2, "2");
+        assertArrayEquals(new int[]{-3, 2, 7}, map.keys());
+    }
+
+    @Test
+    public void testPutIfAbsent() {
+        final IntCopyOnWriteMap<String> map = new IntCopyOnWriteMap<>();
+        final String first = new String("first");
+        assertSame(first, map.putIfAbsent(1, first));
+        assertSame(first, map.putIfAbsent(1, "second"));
+        assertSame(first, map.get(1));
+    }
+
+    @Test
+    public void testNullValue() {
+        final IntCopyOnWriteMap<String> map = new IntCopyOnWriteMap<>();
+        assertThrows(IllegalArgumentException.class, () -> map.put(1, null));
+    }
+
+    /**
+     * The lookup of the thing handler on the receive thread must not produce
+     * garbage, not even for missing keys. This covers the lookup only, not the
+     * dispatch of a message: fhz4j allocates the parsed message and the
+     * handlers allocate the states they post.
+     */
+    @Test
+    public void testGetDoesNotAllocate() {
+        final com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        final long threadId = Thread.currentThread().threadId();
+        final IntCopyOnWriteMap<String> map = new IntCopyOnWriteMap<>();
+        for (int i = 0; i < 64; i++) {
+            map.put(i * 31, Integer.toString(i));
+        }
+        int found = 0;
+        //warm up, so neither the JIT nor the lookup of the bean is measured
+        for (int i = 0; i < 100_000; i++) {
+            found += lookup(map, i);
+        }
+        long before = threadMXBean.getThreadAllocatedBytes(threadId);
+        final long overhead = threadMXBean.getThreadAllocatedBytes(threadId) - before;
+
+        before = threadMXBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < 100_000; i++) {
+            found += lookup(map, i);
+        }
+        final long allocated = threadMXBean.getThreadAllocatedBytes(threadId) - before - overhead;
+        assertEquals(0, allocated, "bytes allocated by 100000 lookups");
+        assertEquals(2 * 64, found, "keys found");
+    }
+
+    private static int lookup(IntCopyOnWriteMap<String> map, int key) {
+        return map.get(key) == null ? 0 : 1;
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * ESH-IBAPL  - OpenHAB bindings for various IB APL drivers, https://github.com/aploese/esh-ibapl/
+ * Copyright (C) 2024-2025, Arne Plöse and individual contributors as indicated
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package de.ibapl.openhab.fhz4j.handler;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.openhab.core.library.types.OnOffType;
+import org.openhab.core.library.types.StringType;
+import org.openhab.core.thing.ChannelUID;
+import org.openhab.core.thing.ThingUID;
+import org.openhab.core.types.State;
+
+/**
+ *
+ * @author aploese@gmx.de - Initial contribution
+ */
+public class StateSnapshotTest {
+
+    private final static long MAX_AGE = TimeUnit.DAYS.toMillis(1);
+    private final static ThingUID THING_A = new ThingUID("fhz4j:fht80b:cul:a");
+    private final static ThingUID THING_B = new ThingUID("fhz4j:fht80b:cul:b");
+
+    @TempDir
+    Path tempDir;
+
+    private Path file() {
+        return tempDir.resolve("cul" + StateSnapshot.SUFFIX);
+    }
+
+    private static Map<String, State> restore(StateSnapshot snapshot, ThingUID thingUID) {
+        final Map<String, State> result = new TreeMap<>();
+        for (StateSnapshot.Entry entry : snapshot.restore(thingUID, MAX_AGE)) {
+            result.put(entry.channelUID().getId(), entry.state());
+        }
+        return result;
+    }
+
+    private void writeThreeChannels() throws IOException {
+        try (StateSnapshot snapshot = new StateSnapshot(file(), 8)) {
+            //slot 0, 1 and 2
+            snapshot.put(new ChannelUID(THING_A, "mode"), new StringType("auto"));
+            snapshot.put(new ChannelUID(THING_A, "window"), OnOffType.ON);
+            snapshot.put(new ChannelUID(THING_B, "mode"), new StringType("manual"));
+        }
+    }
+
+    @Test
+    public void testRestore() throws Exception {
+        writeThreeChannels();
+        try (StateSnapshot snapshot = new StateSnapshot(file(), 8)) {
+            assertEquals(Map.of("mode", new StringType("auto"), "window", OnOffType.ON), restore(snapshot, THING_A));
+            assertEquals(Map.of("mode", new StringType("manual")), restore(snapshot, THING_B));
+        }
+    }
+
+    @Test
+    public void testLatestStateWins() throws Exception {
+        try (StateSnapshot snapshot = new StateSnapshot(file(), 8)) {
+            snapshot.put(new ChannelUID(THING_A, "mode"), new StringType("auto"));
+            snapshot.put(new ChannelUID(THING_A, "mode"), new StringType("manual"));
+            assertEquals(Map.of("mode", new StringType("manual")), restore(snapshot, THING_A));
+        }
+        try (StateSnapshot snapshot = new StateSnapshot(file(), 8)) {
+            assertEquals(Map.of("mode", new StringType("manual")), restore(snapshot, THING_A));
+        }
+    }
+
+    @Test
+    public void testOldestSlotIsReused() throws Exception {
+        try (StateSnapshot snapshot = new StateSnapshot(file(), 2)) {
+            snapshot.put(new ChannelUID(THING_A, "mode"), new StringType("auto"));
+            snapshot.put(new ChannelUID(THING_A, "window"), OnOffType.ON);
+            snapshot.put(new ChannelUID(THING_B, "mode"), new StringType("manual"));
+            assertEquals(Map.of("window", OnOffType.ON), restore(snapshot, THING_A));
+        }
+        try (StateSnapshot snapshot = new StateSnapshot(file(), 2)) {
+            assertEquals(Map.of("window", OnOffType.ON), restore(snapshot, THING_A));
+            assertEquals(Map.of("mode", new StringType("manual")), restore(snapshot, THING_B));
+        }
+    }
+}